@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.bench;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acocco.java8.map.counter.ConcurrentCounterMap;
+
+
+/**
+ * Counting skewed keys from several threads: ConcurrentHashMap.merge against ConcurrentCounterMap.increment. Run with
+ * -t 1, -t 4, ... to see how each one scales with the threads.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2)
+@Threads(Threads.MAX)
+public class CounterMapBenchmark
+{
+    private static final int KEYS = 1_024;
+
+    @State(Scope.Benchmark)
+    public static class Maps
+    {
+        ConcurrentHashMap<Integer, Long> concurrentHashMap;
+
+        ConcurrentCounterMap<Integer> counterMap;
+
+        @Setup(Level.Iteration)
+        public void setUp()
+        {
+            concurrentHashMap = new ConcurrentHashMap<>();
+            counterMap = new ConcurrentCounterMap<>();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys
+    {
+        /** Exponent of the skew, 1 is uniform, 4 sends about 18% of the events to key 0 */
+        @Param({ "1", "4" })
+        public int skew;
+
+        Integer[] keys;
+
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            Random random = new Random(Thread.currentThread().getId());
+            keys = new Integer[1 << 16];
+            for (int i = 0; i < keys.length; i++)
+            {
+                keys[i] = (int) (Math.pow(random.nextDouble(), skew) * KEYS);
+            }
+        }
+
+        Integer next()
+        {
+            return keys[next++ & (keys.length - 1)];
+        }
+    }
+
+    @Benchmark
+    public Long concurrentHashMapMerge(Maps maps, Keys keys)
+    {
+        return maps.concurrentHashMap.merge(keys.next(), 1L, Long::sum);
+    }
+
+    @Benchmark
+    public void counterMapIncrement(Maps maps, Keys keys)
+    {
+        maps.counterMap.increment(keys.next());
+    }
+}
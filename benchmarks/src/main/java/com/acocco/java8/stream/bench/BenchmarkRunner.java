@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.bench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Entry point of benchmarks.jar.
+ *
+ * Accepts the usual JMH command line (benchmark regexp, -p size=..., -p parallelism=..., -f, -wi, -i, -l, -lp, -h)
+ * and, when no -prof is given, attaches the GC profiler, so every result comes with gc.alloc.rate.norm (bytes
+ * allocated per operation) next to the throughput.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class BenchmarkRunner
+{
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException
+    {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp())
+        {
+            commandLine.showHelp();
+            return;
+        }
+        if (commandLine.shouldListProfilers())
+        {
+            commandLine.listProfilers();
+            return;
+        }
+        if (commandLine.shouldListResultFormats())
+        {
+            commandLine.listResultFormats();
+            return;
+        }
+
+        Runner runner;
+        if (commandLine.getProfilers().isEmpty())
+        {
+            runner = new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build());
+        }
+        else
+        {
+            runner = new Runner(commandLine);
+        }
+        if (commandLine.shouldList())
+        {
+            runner.list();
+        }
+        else if (commandLine.shouldListWithParams())
+        {
+            runner.listWithParams(commandLine);
+        }
+        else
+        {
+            runner.run();
+        }
+    }
+}
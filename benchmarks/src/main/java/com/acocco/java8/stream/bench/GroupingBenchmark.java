@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acocco.java8.stream.collector.IntCollectors;
+import com.acocco.java8.stream.collector.IntGroups;
+import com.acocco.java8.stream.model.Person;
+
+
+/**
+ * Collectors.groupingBy(p -> p.age) against IntCollectors.groupingByInt(p -> p.age).
+ *
+ * @author acocco
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class GroupingBenchmark
+{
+    @Param({ "100000", "1000000" })
+    public int size;
+
+    /** Number of distinct ages */
+    @Param({ "100", "100000" })
+    public int keys;
+
+    private List<Person> persons;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Random random = new Random(42);
+        persons = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            persons.add(new Person("P" + i, random.nextInt(keys)));
+        }
+    }
+
+    @Benchmark
+    public Map<Integer, List<Person>> groupingBy()
+    {
+        return persons.stream().collect(Collectors.groupingBy(p -> p.age));
+    }
+
+    @Benchmark
+    public IntGroups<Person> groupingByInt()
+    {
+        return persons.stream().collect(IntCollectors.groupingByInt(p -> p.age));
+    }
+
+    @Benchmark
+    public Map<Integer, List<Person>> parallelGroupingByConcurrent()
+    {
+        return persons.parallelStream().collect(Collectors.groupingByConcurrent(p -> p.age));
+    }
+
+    @Benchmark
+    public IntGroups<Person> parallelGroupingByIntConcurrent()
+    {
+        return persons.parallelStream().collect(IntCollectors.groupingByIntConcurrent(p -> p.age));
+    }
+}
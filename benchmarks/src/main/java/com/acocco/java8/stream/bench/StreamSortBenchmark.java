@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Sequential versus parallel sort of UUID strings, the same pipeline used by
+ * StreamTest.testDifferencesBetweenSequentialAndParallelalStream.
+ *
+ * The parallel benchmarks run inside a dedicated ForkJoinPool sized by the parallelism parameter: a parallel stream
+ * started from a ForkJoinPool task executes in that pool instead of the common pool.
+ *
+ * Note that since Java 9 sorted().count() does not sort at all when the source is SIZED, so the *SortedCount
+ * benchmarks only mirror the test, the *SortedToList benchmarks measure the real sort.
+ *
+ * gc.alloc.rate.norm only accounts the benchmark thread: for the parallel benchmarks the allocations made by the
+ * pool workers are missing, so compare their heap cost through gc.count and gc.time instead.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class StreamSortBenchmark
+{
+    @State(Scope.Benchmark)
+    public static class Data
+    {
+        @Param({ "10000", "100000", "1000000" })
+        public int size;
+
+        public List<String> values;
+
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            // fixed seed, every fork sorts the same input
+            Random random = new Random(42);
+            values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+            {
+                values.add(new UUID(random.nextLong(), random.nextLong()).toString());
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pool
+    {
+        @Param({ "1", "2", "4", "8" })
+        public int parallelism;
+
+        public ForkJoinPool pool;
+
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            pool = new ForkJoinPool(parallelism);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long sequentialSortedCount(Data data)
+    {
+        return data.values.stream().sorted().count();
+    }
+
+    @Benchmark
+    public long parallelSortedCount(Data data, Pool pool) throws InterruptedException, ExecutionException
+    {
+        return pool.pool.submit(() -> data.values.parallelStream().sorted().count()).get();
+    }
+
+    @Benchmark
+    public List<String> sequentialSortedToList(Data data)
+    {
+        return data.values.stream().sorted().collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<String> parallelSortedToList(Data data, Pool pool) throws InterruptedException, ExecutionException
+    {
+        return pool.pool.submit(() -> data.values.parallelStream().sorted().collect(Collectors.toList())).get();
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acocco.java8.stream.sort.UuidArray;
+
+
+/**
+ * parallelStream().sorted() over UUID strings against the radix sort of UuidArray, both in a ForkJoinPool of the
+ * given parallelism. Each invocation sorts a fresh copy of the input.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class UuidSortBenchmark
+{
+    @Param({ "100000", "1000000" })
+    public int size;
+
+    @Param({ "1", "4" })
+    public int parallelism;
+
+    private List<String> strings;
+
+    private long[] msb;
+
+    private long[] lsb;
+
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Random random = new Random(42);
+        strings = new ArrayList<>(size);
+        msb = new long[size];
+        lsb = new long[size];
+        for (int i = 0; i < size; i++)
+        {
+            msb[i] = random.nextLong();
+            lsb[i] = random.nextLong();
+            strings.add(new UUID(msb[i], lsb[i]).toString());
+        }
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<String> stringParallelStreamSorted() throws InterruptedException, ExecutionException
+    {
+        return pool.submit(() -> strings.parallelStream().sorted().collect(Collectors.toList())).get();
+    }
+
+    @Benchmark
+    public UuidArray uuidArrayParallelSort()
+    {
+        UuidArray uuids = new UuidArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            uuids.add(msb[i], lsb[i]);
+        }
+        uuids.parallelSort(pool);
+        return uuids;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.files;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * What a GroupCommitWriter did in one commit: the records it wrote together, the time spent writing and forcing them,
+ * and the latency of every record from its append to the end of the commit.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class Commit
+{
+    private final int records;
+
+    private final long bytes;
+
+    private final long position;
+
+    private final long writeNanos;
+
+    private final long forceNanos;
+
+    /**
+     * Sorted.
+     */
+    private final long[] latencies;
+
+    Commit(int records, long bytes, long position, long writeNanos, long forceNanos, long[] latencies)
+    {
+        this.records = records;
+        this.bytes = bytes;
+        this.position = position;
+        this.writeNanos = writeNanos;
+        this.forceNanos = forceNanos;
+        this.latencies = latencies;
+    }
+
+    public int records()
+    {
+        return records;
+    }
+
+    public long bytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Size of the file after the commit.
+     */
+    public long position()
+    {
+        return position;
+    }
+
+    public long writeTime(TimeUnit unit)
+    {
+        return unit.convert(writeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time of FileChannel.force, 0 when the writer does not force.
+     */
+    public long forceTime(TimeUnit unit)
+    {
+        return unit.convert(forceNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Latency from append to commit below which the given percentage of the records of the commit fall, nearest
+     * rank: latency(50, MICROSECONDS) is the median, latency(100, ...) the slowest record.
+     */
+    public long latency(double percentile, TimeUnit unit)
+    {
+        if (percentile < 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("percentile out of [0, 100]: " + percentile);
+        }
+        if (latencies.length == 0)
+        {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+        return unit.convert(latencies[Math.max(0, rank - 1)], TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Commit[records=" + records + ", bytes=" + bytes + ", p50=" + latency(50, TimeUnit.MICROSECONDS)
+            + "us, p99=" + latency(99, TimeUnit.MICROSECONDS) + "us, max=" + latency(100, TimeUnit.MICROSECONDS)
+            + "us, write=" + writeTime(TimeUnit.MICROSECONDS) + "us, force=" + forceTime(TimeUnit.MICROSECONDS)
+            + "us]";
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.files;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+
+/**
+ * Rewrites a file as a list of edits over its bytes, the replacement of the readAllLines, add, write copy of
+ * FileTest when only a few regions of a large file change.
+ *
+ * The unchanged ranges are copied with FileChannel.transferTo, a copy inside the kernel that never decodes, nor even
+ * reaches, the heap; only the inserted and replacing bytes are written. The result goes to a temporary file next to
+ * the target, optionally forced to the disk, then renamed over the target: readers see the old file or the new one,
+ * never a partial copy, and the source may be the target itself.
+ *
+ * <pre>
+ * FileTransform.of(Paths.get("src/test.js"))
+ *     .appendLine("print('end reading files');")
+ *     .writeTo(Paths.get("src/test-modified.js"));
+ * </pre>
+ *
+ * Positions are byte offsets in the source; edits must not overlap, and inserts at the same position are written in
+ * call order. A FileTransform is not thread-safe.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class FileTransform
+{
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final Path source;
+
+    private final List<Edit> edits = new ArrayList<>();
+
+    private final List<byte[]> appended = new ArrayList<>();
+
+    private boolean appendsLine;
+
+    private boolean force;
+
+    private FileTransform(Path source)
+    {
+        this.source = source;
+    }
+
+    public static FileTransform of(Path source)
+    {
+        return new FileTransform(Objects.requireNonNull(source));
+    }
+
+    /**
+     * Inserts the bytes before the byte at position.
+     */
+    public FileTransform insert(long position, byte[] bytes)
+    {
+        return replace(position, 0, bytes);
+    }
+
+    /**
+     * Replaces length bytes from position with the bytes, of any length.
+     */
+    public FileTransform replace(long position, long length, byte[] bytes)
+    {
+        if (position < 0 || length < 0)
+        {
+            throw new IllegalArgumentException("position " + position + ", length " + length);
+        }
+        edits.add(new Edit(position, length, bytes.clone(), edits.size()));
+        return this;
+    }
+
+    public FileTransform delete(long position, long length)
+    {
+        return replace(position, length, new byte[0]);
+    }
+
+    /**
+     * Adds the bytes after the end of the source.
+     */
+    public FileTransform append(byte[] bytes)
+    {
+        appended.add(bytes.clone());
+        return this;
+    }
+
+    public FileTransform append(String s)
+    {
+        return append(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends the line and a line separator, as Files.write does; a separator is added first if the edited source
+     * does not end with one.
+     */
+    public FileTransform appendLine(String line)
+    {
+        if (appended.isEmpty())
+        {
+            appendsLine = true;
+        }
+        append(line);
+        return append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Forces the new file to the disk before the rename, so that after a crash the target is the old file or the
+     * complete new one.
+     */
+    public FileTransform force(boolean force)
+    {
+        this.force = force;
+        return this;
+    }
+
+    /**
+     * Rewrites the source in place.
+     */
+    public long apply() throws IOException
+    {
+        return writeTo(source);
+    }
+
+    /**
+     * Writes the transformed source to the target, atomically replacing it, and returns the bytes written. On
+     * failure the target is left as it was.
+     */
+    public long writeTo(Path target) throws IOException
+    {
+        Path absolute = target.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try
+        {
+            long written;
+            copyPermissions(Files.exists(absolute) ? absolute : source, temporary);
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                written = copy(in, out);
+                if (force)
+                {
+                    out.force(true);
+                }
+            }
+            move(temporary, absolute);
+            return written;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    private long copy(FileChannel in, FileChannel out) throws IOException
+    {
+        long size = in.size();
+        List<Edit> sorted = new ArrayList<>(edits);
+        sorted.sort(Comparator.comparingLong((Edit edit) -> edit.position).thenComparingInt(edit -> edit.order));
+
+        long position = 0;
+        for (Edit edit : sorted)
+        {
+            if (edit.position < position || edit.position + edit.length > size)
+            {
+                throw new IllegalArgumentException("edit of " + edit.length + " bytes at " + edit.position
+                    + " overlaps another one or ends after " + size + " bytes");
+            }
+            transfer(in, position, edit.position - position, out);
+            write(out, edit.bytes);
+            position = edit.position + edit.length;
+        }
+        transfer(in, position, size - position, out);
+
+        if (appendsLine && out.position() > 0 && !endsWithNewline(out))
+        {
+            write(out, LINE_SEPARATOR);
+        }
+        for (byte[] bytes : appended)
+        {
+            write(out, bytes);
+        }
+        return out.position();
+    }
+
+    /**
+     * transferTo may copy less than asked, by the kernel's own limit per call.
+     */
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException
+    {
+        long done = 0;
+        while (done < count)
+        {
+            long transferred = in.transferTo(position + done, count - done, out);
+            if (transferred <= 0)
+            {
+                throw new IOException("source truncated while copying at " + (position + done));
+            }
+            done += transferred;
+        }
+    }
+
+    private static void write(FileChannel out, byte[] bytes) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining())
+        {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Whether the output written so far, the edited source, ends a line.
+     */
+    private static boolean endsWithNewline(FileChannel out) throws IOException
+    {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        out.read(last, out.position() - 1);
+        return last.get(0) == '\n';
+    }
+
+    /**
+     * createTempFile makes the file readable by its owner only: the renamed file keeps the permissions of the file it
+     * replaces, or of the source.
+     */
+    private static void copyPermissions(Path from, Path to) throws IOException
+    {
+        if (Files.getFileAttributeView(to, PosixFileAttributeView.class) != null)
+        {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        }
+    }
+
+    private static void move(Path temporary, Path target) throws IOException
+    {
+        try
+        {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static final class Edit
+    {
+        final long position;
+
+        final long length;
+
+        final byte[] bytes;
+
+        final int order;
+
+        Edit(long position, long length, byte[] bytes, int order)
+        {
+            this.position = position;
+            this.length = length;
+            this.bytes = bytes;
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.files;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+
+/**
+ * The copy of FileTest done with a FileTransform.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class FileTransformTest
+{
+    private static final int LINE_SEPARATOR = System.lineSeparator().length();
+
+    @Test
+    public void testAppendLine_SameAsReadAllLines() throws IOException
+    {
+        Path directory = Files.createTempDirectory("transform");
+        try
+        {
+            Path expected = directory.resolve("expected.js");
+            List<String> lines = Files.readAllLines(Paths.get("src/test.js"));
+            lines.add("print('end reading files');");
+            Files.write(expected, lines);
+
+            Path target = directory.resolve("test-modified.js");
+            long written = FileTransform.of(Paths.get("src/test.js"))
+                .appendLine("print('end reading files');")
+                .force(true)
+                .writeTo(target);
+            Assert.assertEquals(Files.readAllBytes(target), Files.readAllBytes(expected));
+            Assert.assertEquals(written, Files.size(target));
+
+            // without a final newline in the source, the separator is added first
+            Files.write(target, "print('a');".getBytes(StandardCharsets.UTF_8));
+            FileTransform.of(target).appendLine("print('b');").apply();
+            Assert.assertEquals(Files.readAllLines(target), Arrays.asList("print('a');", "print('b');"));
+
+            // nor if an edit removed the last newline
+            long size = Files.size(target);
+            FileTransform.of(target).delete(size - LINE_SEPARATOR, LINE_SEPARATOR).appendLine("print('c');").apply();
+            Assert.assertEquals(Files.readAllLines(target), Arrays.asList("print('a');", "print('b');", "print('c');"));
+        }
+        finally
+        {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testPermissionsKept() throws IOException
+    {
+        Path directory = Files.createTempDirectory("transform");
+        try
+        {
+            if (Files.getFileAttributeView(directory, PosixFileAttributeView.class) == null)
+            {
+                throw new SkipException("no POSIX permissions on this file system");
+            }
+            Path file = directory.resolve("shared.js");
+            Files.write(file, Arrays.asList("print('x');"));
+            Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r--r--");
+            Files.setPosixFilePermissions(file, permissions);
+
+            FileTransform.of(file).appendLine("print('y');").apply();
+            Assert.assertEquals(Files.getPosixFilePermissions(file), permissions);
+
+            Path copy = directory.resolve("copy.js");
+            FileTransform.of(file).writeTo(copy);
+            Assert.assertEquals(Files.getPosixFilePermissions(copy), permissions);
+        }
+        finally
+        {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testEdits() throws IOException
+    {
+        Path directory = Files.createTempDirectory("transform");
+        try
+        {
+            Path file = directory.resolve("edits.txt");
+            Files.write(file, "0123456789".getBytes(StandardCharsets.US_ASCII));
+            FileTransform.of(file)
+                .replace(2, 3, bytes("abc"))
+                .insert(0, bytes("<"))
+                .delete(8, 1)
+                .insert(0, bytes("<"))
+                .append("!")
+                .apply();
+            Assert.assertEquals(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII), "<<01abc5679!");
+
+            try
+            {
+                FileTransform.of(file).replace(2, 4, bytes("x")).delete(4, 1).apply();
+                Assert.fail("overlapping edits");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+            try
+            {
+                FileTransform.of(file).delete(10, 5).apply();
+                Assert.fail("edit after the end");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+            // the target is untouched and no temporary file is left behind
+            Assert.assertEquals(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII), "<<01abc5679!");
+            try (Stream<Path> files = Files.list(directory))
+            {
+                Assert.assertEquals(files.count(), 1);
+            }
+        }
+        finally
+        {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testLargeFile_CopiedByTheKernel() throws IOException
+    {
+        Path directory = Files.createTempDirectory("transform");
+        try
+        {
+            Path source = directory.resolve("large.bin");
+            byte[] block = new byte[1 << 20];
+            new Random(42).nextBytes(block);
+            try (OutputStream out = Files.newOutputStream(source))
+            {
+                for (int i = 0; i < 64; i++)
+                {
+                    out.write(block);
+                }
+            }
+
+            Path target = directory.resolve("large-modified.bin");
+            FileTransform.of(source)
+                .replace(10L << 20, 4, bytes("ABCD"))
+                .append("tail")
+                .writeTo(target);
+            Assert.assertEquals(Files.size(target), Files.size(source) + 4);
+
+            byte[] expected = block.clone();
+            System.arraycopy(bytes("ABCD"), 0, expected, 0, 4);
+            byte[] all = Files.readAllBytes(target);
+            Assert.assertEquals(Arrays.copyOfRange(all, 10 << 20, 11 << 20), expected);
+            Assert.assertEquals(Arrays.copyOfRange(all, 63 << 20, 64 << 20), block);
+            Assert.assertEquals(new String(all, 64 << 20, 4, StandardCharsets.US_ASCII), "tail");
+        }
+        finally
+        {
+            deleteAll(directory);
+        }
+    }
+
+    private static byte[] bytes(String s)
+    {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void deleteAll(Path directory) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for (Path file : (Iterable<Path>) files::iterator)
+            {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
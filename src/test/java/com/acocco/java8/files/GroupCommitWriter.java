@@ -0,0 +1,538 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.files;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+
+/**
+ * Append-only file shared by many threads, the replacement of a BufferedWriter per thread, or of one writer synced
+ * under a lock, for services that append small records.
+ *
+ * Producers claim a slot of a ring buffer with a compare-and-set on its tail, store the record and publish the slot;
+ * they never take a lock and only wait when the ring is full. A single writer thread takes the published records in
+ * order and commits them as a group: copied into a direct buffer, written with a few large writes, forced to the disk
+ * if asked, then the future of every record of the group is completed with the file position after it.
+ *
+ * A group is committed when it holds batchSize records, or when its oldest record has waited maxDelay; with no delay
+ * (the default) the writer commits whatever was appended while it was busy with the previous group, so the groups
+ * grow with the load. Every commit is reported to the onCommit listener, on the writer thread, with the latency
+ * percentiles of its records, see Commit.
+ *
+ * <pre>
+ * try (GroupCommitWriter writer = GroupCommitWriter.builder(path).batchSize(256).maxDelay(200, TimeUnit.MICROSECONDS)
+ *     .force(true).onCommit(commit -&gt; log(commit)).open())
+ * {
+ *     writer.appendLine("print('end reading files');").join();
+ * }
+ * </pre>
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class GroupCommitWriter implements AutoCloseable
+{
+    /**
+     * Set in tail by close: no slot can be claimed any more.
+     */
+    private static final long CLOSED = 1L << 62;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final FileChannel channel;
+
+    private final int mask;
+
+    private final byte[][] records;
+
+    private final long[] appendNanos;
+
+    private final CompletableFuture<Long>[] futures;
+
+    /**
+     * Sequence stored in each slot once its record is published, -1 before the first.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * Next sequence to claim, with the CLOSED bit.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Sequences below are committed and their slots free, written by the writer thread only.
+     */
+    private volatile long consumed;
+
+    private volatile boolean sleeping;
+
+    private volatile long commits;
+
+    private final int batchSize;
+
+    private final long maxDelayNanos;
+
+    private final boolean force;
+
+    private final ByteBuffer buffer;
+
+    private final Consumer<? super Commit> listener;
+
+    private final Thread writer;
+
+    private long position;
+
+    private IOException failure;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private GroupCommitWriter(Builder builder, FileChannel channel) throws IOException
+    {
+        this.channel = channel;
+        this.mask = builder.capacity - 1;
+        this.records = new byte[builder.capacity][];
+        this.appendNanos = new long[builder.capacity];
+        this.futures = new CompletableFuture[builder.capacity];
+        this.published = new AtomicLongArray(builder.capacity);
+        for (int i = 0; i < builder.capacity; i++)
+        {
+            published.set(i, -1);
+        }
+        this.batchSize = builder.batchSize;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.force = builder.force;
+        this.buffer = ByteBuffer.allocateDirect(builder.bufferSize);
+        this.listener = builder.listener;
+        this.position = channel.size();
+        this.writer = new Thread(this::run, "group-commit " + builder.path.getFileName());
+        writer.setDaemon(true);
+    }
+
+    public static Builder builder(Path path)
+    {
+        return new Builder(Objects.requireNonNull(path));
+    }
+
+    /**
+     * Appends the record, the future completes with the file position after it once it is committed, or
+     * exceptionally with an UncheckedIOException if the writes failed. Waits only while the ring is full.
+     */
+    public CompletableFuture<Long> append(byte[] record)
+    {
+        Objects.requireNonNull(record);
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        long sequence = claim();
+        int index = (int) sequence & mask;
+        records[index] = record;
+        futures[index] = future;
+        appendNanos[index] = System.nanoTime();
+        // a volatile store, not lazySet: this thread writes published then reads sleeping, the writer writes sleeping
+        // then reads published, and only volatile on both sides guarantees that one of them sees the other
+        published.set(index, sequence);
+        if (sleeping)
+        {
+            LockSupport.unpark(writer);
+        }
+        return future;
+    }
+
+    /**
+     * Appends the UTF-8 bytes of the line and a line separator.
+     */
+    public CompletableFuture<Long> appendLine(String line)
+    {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        byte[] record = Arrays.copyOf(bytes, bytes.length + LINE_SEPARATOR.length);
+        System.arraycopy(LINE_SEPARATOR, 0, record, bytes.length, LINE_SEPARATOR.length);
+        return append(record);
+    }
+
+    /**
+     * Completes once everything appended before is committed.
+     */
+    public CompletableFuture<Long> flush()
+    {
+        return append(new byte[0]);
+    }
+
+    /**
+     * Number of commits so far.
+     */
+    public long commits()
+    {
+        return commits;
+    }
+
+    /**
+     * Number of records committed so far.
+     */
+    public long committed()
+    {
+        return consumed;
+    }
+
+    /**
+     * Refuses new records, commits the ones already appended and closes the file.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        long previous = tail.getAndUpdate(t -> t | CLOSED);
+        if ((previous & CLOSED) != 0)
+        {
+            return;
+        }
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive())
+        {
+            try
+            {
+                writer.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private long claim()
+    {
+        while (true)
+        {
+            long sequence = tail.get();
+            if ((sequence & CLOSED) != 0)
+            {
+                throw new IllegalStateException("writer closed");
+            }
+            if (sequence - consumed > mask)
+            {
+                // full: wait for the writer to free a slot
+                if (sleeping)
+                {
+                    LockSupport.unpark(writer);
+                }
+                LockSupport.parkNanos(this, 1_000);
+            }
+            else if (tail.compareAndSet(sequence, sequence + 1))
+            {
+                return sequence;
+            }
+        }
+    }
+
+    private void start()
+    {
+        writer.start();
+    }
+
+    private void run()
+    {
+        long next = 0;
+        while (true)
+        {
+            int available = available(next);
+            if (available == 0)
+            {
+                long end = tail.get();
+                if ((end & CLOSED) != 0 && next == (end & ~CLOSED))
+                {
+                    return;
+                }
+                sleep(next, 0, Long.MAX_VALUE);
+                continue;
+            }
+            if (available < batchSize && maxDelayNanos > 0)
+            {
+                long deadline = appendNanos[(int) next & mask] + maxDelayNanos;
+                long wait;
+                while (available < batchSize && (tail.get() & CLOSED) == 0
+                    && (wait = deadline - System.nanoTime()) > 0)
+                {
+                    sleep(next, available, wait);
+                    available = available(next);
+                }
+            }
+            commit(next, available);
+            next += available;
+        }
+    }
+
+    /**
+     * Number of records published in order from sequence next, at most batchSize.
+     */
+    private int available(long next)
+    {
+        int count = 0;
+        while (count < batchSize && published.get((int) (next + count) & mask) == next + count)
+        {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Parks until a producer publishes after the known ones, close or the timeout; the flag is set before the check
+     * so that a producer publishing in between sees it and unparks.
+     */
+    private void sleep(long next, int known, long nanos)
+    {
+        sleeping = true;
+        if (available(next) == known && (tail.get() & CLOSED) == 0)
+        {
+            if (nanos == Long.MAX_VALUE)
+            {
+                LockSupport.park(this);
+            }
+            else
+            {
+                LockSupport.parkNanos(this, nanos);
+            }
+        }
+        else if ((tail.get() & CLOSED) != 0 && known == 0)
+        {
+            // closed with claimed slots not published yet
+            Thread.yield();
+        }
+        sleeping = false;
+    }
+
+    private void commit(long next, int count)
+    {
+        long start = System.nanoTime();
+        long before = position;
+        long written = start;
+        long bytes = 0;
+        if (failure == null)
+        {
+            try
+            {
+                for (int i = 0; i < count; i++)
+                {
+                    byte[] record = records[(int) (next + i) & mask];
+                    bytes += record.length;
+                    if (record.length > buffer.remaining())
+                    {
+                        drain();
+                        if (record.length > buffer.capacity())
+                        {
+                            writeFully(ByteBuffer.wrap(record));
+                            continue;
+                        }
+                    }
+                    buffer.put(record);
+                }
+                drain();
+                written = System.nanoTime();
+                if (force)
+                {
+                    // the data and the size of the file, not its other metadata
+                    channel.force(false);
+                }
+                position = before + bytes;
+            }
+            catch (IOException e)
+            {
+                failure = e;
+                buffer.clear();
+            }
+        }
+        long end = System.nanoTime();
+
+        long[] latencies = new long[count];
+        long[] positions = new long[count];
+        CompletableFuture<?>[] completed = new CompletableFuture<?>[count];
+        long after = before;
+        for (int i = 0; i < count; i++)
+        {
+            int index = (int) (next + i) & mask;
+            after += records[index].length;
+            positions[i] = after;
+            latencies[i] = end - appendNanos[index];
+            completed[i] = futures[index];
+            records[index] = null;
+            futures[index] = null;
+        }
+        consumed = next + count;
+        commits++;
+
+        for (int i = 0; i < count; i++)
+        {
+            @SuppressWarnings("unchecked")
+            CompletableFuture<Long> future = (CompletableFuture<Long>) completed[i];
+            if (failure == null)
+            {
+                future.complete(positions[i]);
+            }
+            else
+            {
+                future.completeExceptionally(new UncheckedIOException(failure));
+            }
+        }
+        if (listener != null && failure == null)
+        {
+            Arrays.sort(latencies);
+            try
+            {
+                listener.accept(new Commit(count, bytes, position, written - start, end - written, latencies));
+            }
+            catch (RuntimeException e)
+            {
+                // the writer thread must survive a failing listener
+            }
+        }
+    }
+
+    private void drain() throws IOException
+    {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException
+    {
+        while (source.hasRemaining())
+        {
+            channel.write(source);
+        }
+    }
+
+    public static final class Builder
+    {
+        private final Path path;
+
+        private int capacity = 1 << 16;
+
+        private int batchSize = 1_024;
+
+        private long maxDelayNanos;
+
+        private boolean force;
+
+        private int bufferSize = 1 << 20;
+
+        private Consumer<? super Commit> listener;
+
+        private Builder(Path path)
+        {
+            this.path = path;
+        }
+
+        /**
+         * Slots of the ring, rounded up to a power of two: the records appended and not yet committed.
+         */
+        public Builder capacity(int capacity)
+        {
+            if (capacity <= 0 || capacity > 1 << 30)
+            {
+                throw new IllegalArgumentException("capacity out of range: " + capacity);
+            }
+            this.capacity = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+            return this;
+        }
+
+        /**
+         * Most records committed together.
+         */
+        public Builder batchSize(int batchSize)
+        {
+            if (batchSize <= 0)
+            {
+                throw new IllegalArgumentException("batch size must be positive: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * How long the oldest record of a group waits for the group to fill, 0 by default.
+         */
+        public Builder maxDelay(long delay, TimeUnit unit)
+        {
+            if (delay < 0)
+            {
+                throw new IllegalArgumentException("delay must not be negative: " + delay);
+            }
+            this.maxDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * Forces every commit to the disk before completing its futures.
+         */
+        public Builder force(boolean force)
+        {
+            this.force = force;
+            return this;
+        }
+
+        /**
+         * Bytes of the direct buffer the records are copied into, 1 MB by default; larger records are written
+         * directly.
+         */
+        public Builder bufferSize(int bufferSize)
+        {
+            if (bufferSize <= 0)
+            {
+                throw new IllegalArgumentException("buffer size must be positive: " + bufferSize);
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Called on the writer thread after every successful commit; it delays the next commit while it runs, and
+         * what it throws is ignored.
+         */
+        public Builder onCommit(Consumer<? super Commit> listener)
+        {
+            this.listener = Objects.requireNonNull(listener);
+            return this;
+        }
+
+        /**
+         * Opens the file for appending, creating it if needed, and starts the writer thread.
+         */
+        public GroupCommitWriter open() throws IOException
+        {
+            if (batchSize > capacity)
+            {
+                throw new IllegalStateException("batch size " + batchSize + " larger than capacity " + capacity);
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+            try
+            {
+                GroupCommitWriter writer = new GroupCommitWriter(this, channel);
+                writer.start();
+                return writer;
+            }
+            catch (IOException | RuntimeException e)
+            {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+}
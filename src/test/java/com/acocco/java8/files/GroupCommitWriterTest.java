@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.files;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * Many threads appending lines to one file, committed in groups.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class GroupCommitWriterTest
+{
+    @Test
+    public void testConcurrentAppends() throws Exception
+    {
+        Path path = Files.createTempFile("group-commit", ".log");
+        ConcurrentLinkedQueue<Commit> commits = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<CompletableFuture<Long>> last = new ArrayList<>();
+            // a small ring: the producers also wait for free slots
+            try (GroupCommitWriter writer = GroupCommitWriter.builder(path).capacity(1_024).batchSize(128)
+                .bufferSize(4_096).onCommit(commits::add).open())
+            {
+                List<CompletableFuture<Void>> producers = new ArrayList<>();
+                for (int t = 0; t < 4; t++)
+                {
+                    int thread = t;
+                    CompletableFuture<Long> end = new CompletableFuture<>();
+                    last.add(end);
+                    producers.add(CompletableFuture.runAsync(() ->
+                    {
+                        CompletableFuture<Long> future = null;
+                        for (int i = 0; i < 25_000; i++)
+                        {
+                            future = writer.appendLine(thread + " " + i);
+                        }
+                        future.whenComplete((position, e) -> end.complete(position));
+                    }, executor));
+                }
+                CompletableFuture.allOf(producers.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+                writer.flush().get(60, TimeUnit.SECONDS);
+                Assert.assertEquals(writer.committed(), 100_001);
+            }
+
+            // every thread's lines are in its order
+            int[] next = new int[4];
+            for (String line : Files.readAllLines(path))
+            {
+                String[] fields = line.split(" ");
+                int thread = Integer.parseInt(fields[0]);
+                Assert.assertEquals(Integer.parseInt(fields[1]), next[thread]++);
+            }
+            Assert.assertEquals(next, new int[] { 25_000, 25_000, 25_000, 25_000 });
+            for (CompletableFuture<Long> end : last)
+            {
+                Assert.assertTrue(end.get() <= Files.size(path));
+            }
+
+            Assert.assertEquals(commits.stream().mapToInt(Commit::records).sum(), 100_001);
+            Assert.assertEquals(commits.stream().mapToLong(Commit::bytes).sum(), Files.size(path));
+            for (Commit commit : commits)
+            {
+                Assert.assertTrue(commit.records() <= 128);
+                Assert.assertTrue(commit.latency(50, TimeUnit.NANOSECONDS)
+                    <= commit.latency(99, TimeUnit.NANOSECONDS));
+                Assert.assertTrue(commit.latency(99, TimeUnit.NANOSECONDS)
+                    <= commit.latency(100, TimeUnit.NANOSECONDS));
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testMaxDelay_GroupsAndForces() throws Exception
+    {
+        Path path = Files.createTempFile("group-commit", ".log");
+        ConcurrentLinkedQueue<Commit> commits = new ConcurrentLinkedQueue<>();
+        try
+        {
+            Files.write(path, "existing\n".getBytes());
+            try (GroupCommitWriter writer = GroupCommitWriter.builder(path).batchSize(1_000)
+                .maxDelay(50, TimeUnit.MILLISECONDS).force(true).onCommit(commits::add).open())
+            {
+                long start = System.nanoTime();
+                writer.append("a".getBytes());
+                writer.append("bc".getBytes());
+                CompletableFuture<Long> third = writer.append("def".getBytes());
+                Assert.assertEquals(third.get(10, TimeUnit.SECONDS).longValue(), 15);
+                Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+
+                // a record larger than the buffer is written directly
+                byte[] large = new byte[3 << 20];
+                Assert.assertEquals(writer.append(large).get(10, TimeUnit.SECONDS).longValue(), 15 + large.length);
+            }
+            Commit first = commits.peek();
+            Assert.assertEquals(first.records(), 3);
+            Assert.assertEquals(first.bytes(), 6);
+            Assert.assertEquals(first.position(), 15);
+            Assert.assertTrue(first.latency(100, TimeUnit.MILLISECONDS) >= 40);
+            Assert.assertEquals(Files.size(path), 15 + (3 << 20));
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testAppendAfterClose() throws IOException
+    {
+        Path path = Files.createTempFile("group-commit", ".log");
+        try
+        {
+            GroupCommitWriter writer = GroupCommitWriter.builder(path).open();
+            writer.close();
+            writer.appendLine("late");
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.files;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * A line of a MappedLineReader: a view over the mapped bytes of the file, without its line terminator, valid until
+ * the reader is closed.
+ *
+ * Nothing is copied until asked: bytes() is a read-only slice of the mapping, contains and startsWith compare bytes
+ * in place, and the CharSequence methods read the bytes directly while the line is ASCII. A line with other UTF-8
+ * characters is decoded once, on the first char access, and toString returns that String.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class Line implements CharSequence
+{
+    private final ByteBuffer buffer;
+
+    private final int start;
+
+    private final int length;
+
+    private final long offset;
+
+    /**
+     * 0 not checked yet, 1 ASCII, 2 decoded; volatile and written after decoded, so that a thread seeing 2 sees the
+     * decoded String too.
+     */
+    private volatile byte state;
+
+    private String decoded;
+
+    Line(ByteBuffer buffer, int start, int length, long offset)
+    {
+        this.buffer = buffer;
+        this.start = start;
+        this.length = length;
+        this.offset = offset;
+    }
+
+    /**
+     * Position of the first byte of the line in the file.
+     */
+    public long offset()
+    {
+        return offset;
+    }
+
+    /**
+     * Number of bytes of the line.
+     */
+    public int byteLength()
+    {
+        return length;
+    }
+
+    public byte byteAt(int index)
+    {
+        if (index < 0 || index >= length)
+        {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return buffer.get(start + index);
+    }
+
+    /**
+     * Read-only view of the bytes of the line, sharing the mapping.
+     */
+    public ByteBuffer bytes()
+    {
+        ByteBuffer view = buffer.duplicate();
+        view.position(start).limit(start + length);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    public boolean isEmpty()
+    {
+        return length == 0;
+    }
+
+    /**
+     * True if the UTF-8 bytes of s occur in the line, compared in place: UTF-8 never matches in the middle of a
+     * character.
+     */
+    public boolean contains(String s)
+    {
+        return indexOf(s.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    public boolean startsWith(String prefix)
+    {
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= length && regionMatches(0, bytes);
+    }
+
+    /**
+     * Byte index of the first occurrence of the needle, -1 if absent.
+     */
+    public int indexOf(byte[] needle)
+    {
+        for (int i = 0; i + needle.length <= length; i++)
+        {
+            if (regionMatches(i, needle))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int from, byte[] bytes)
+    {
+        for (int i = 0; i < bytes.length; i++)
+        {
+            if (buffer.get(start + from + i) != bytes[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length()
+    {
+        return isAscii() ? length : decoded.length();
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        if (isAscii())
+        {
+            return (char) byteAt(index);
+        }
+        return decoded.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to)
+    {
+        if (isAscii())
+        {
+            if (from < 0 || to > length || from > to)
+            {
+                throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", length " + length);
+            }
+            return new Line(buffer, start + from, to - from, offset + from);
+        }
+        return decoded.subSequence(from, to);
+    }
+
+    /**
+     * Decodes the UTF-8 bytes, the only copy of the line.
+     */
+    @Override
+    public String toString()
+    {
+        if (decoded == null)
+        {
+            byte[] bytes = new byte[length];
+            bytes().get(bytes);
+            decoded = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return decoded;
+    }
+
+    private boolean isAscii()
+    {
+        byte current = state;
+        if (current == 0)
+        {
+            current = 1;
+            for (int i = 0; i < length; i++)
+            {
+                if (buffer.get(start + i) < 0)
+                {
+                    toString();
+                    current = 2;
+                    break;
+                }
+            }
+            // published only once known: another thread must not take a line being checked for ASCII
+            state = current;
+        }
+        return current == 1;
+    }
+}
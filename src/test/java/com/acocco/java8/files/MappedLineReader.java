@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.files;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Reads the lines of a file through FileChannel.map, the replacement of Files.readAllLines for files that do not fit
+ * comfortably in the heap.
+ *
+ * The file is mapped in regions of at most 1 GB, each ending after a newline so that no line straddles two mappings.
+ * The lines are Line views over the mapping, decoded to a String only when asked, and lines() streams them through a
+ * spliterator that splits between regions and then inside a region on a newline, so that a parallel scan of a large
+ * file uses every core and reads the page cache directly, leaving the heap flat.
+ *
+ * Lines end with \n or \r\n, the terminator is not part of the line; a last line without terminator is returned, an
+ * empty file has no line. A line longer than a region is rejected.
+ *
+ * <pre>
+ * try (MappedLineReader reader = MappedLineReader.open(path))
+ * {
+ *     long errors = reader.lines().parallel().filter(line -> line.contains("ERROR")).count();
+ * }
+ * </pre>
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class MappedLineReader implements AutoCloseable
+{
+    private static final int DEFAULT_REGION_SIZE = 1 << 30;
+
+    /**
+     * Below this many bytes a region is not split any further.
+     */
+    static final int MIN_SPLIT = 1 << 13;
+
+    private final FileChannel channel;
+
+    private final List<Region> regions;
+
+    private final long size;
+
+    private MappedLineReader(FileChannel channel, List<Region> regions, long size)
+    {
+        this.channel = channel;
+        this.regions = regions;
+        this.size = size;
+    }
+
+    public static MappedLineReader open(Path path) throws IOException
+    {
+        return open(path, DEFAULT_REGION_SIZE);
+    }
+
+    static MappedLineReader open(Path path, int regionSize) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            long size = channel.size();
+            List<Region> regions = new ArrayList<>();
+            long start = 0;
+            while (start < size)
+            {
+                long length = Math.min(regionSize, size - start);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                int limit = (int) length;
+                if (start + length < size)
+                {
+                    limit = lastNewline(mapped, limit) + 1;
+                    if (limit == 0)
+                    {
+                        throw new IOException("line longer than " + regionSize + " bytes at offset " + start
+                            + " of " + path);
+                    }
+                }
+                regions.add(new Region(mapped, limit, start));
+                start += limit;
+            }
+            return new MappedLineReader(channel, Collections.unmodifiableList(regions), size);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Size of the file in bytes.
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * The lines in file order, sequential; parallel() splits them on newlines.
+     */
+    public Stream<Line> lines()
+    {
+        if (regions.isEmpty())
+        {
+            return Stream.empty();
+        }
+        Region last = regions.get(regions.size() - 1);
+        return StreamSupport.stream(new LineSpliterator(regions, 0, 0, regions.size() - 1, last.limit), false);
+    }
+
+    /**
+     * Calls the action for every line, in file order.
+     */
+    public void forEach(Consumer<? super Line> action)
+    {
+        lines().forEach(action);
+    }
+
+    /**
+     * Number of lines, counted in parallel.
+     */
+    public long lineCount()
+    {
+        return lines().parallel().count();
+    }
+
+    /**
+     * Closes the file. Java 8 has no way to unmap: the mappings, and the lines still referencing them, remain
+     * readable until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private static int lastNewline(ByteBuffer buffer, int limit)
+    {
+        for (int i = limit - 1; i >= 0; i--)
+        {
+            if (buffer.get(i) == '\n')
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A mapping, its bytes up to limit belong to whole lines.
+     */
+    static final class Region
+    {
+        final ByteBuffer buffer;
+
+        final int limit;
+
+        final long offset;
+
+        Region(ByteBuffer buffer, int limit, long offset)
+        {
+            this.buffer = buffer;
+            this.limit = limit;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * The lines from position of region first to end of region last.
+     */
+    static final class LineSpliterator implements Spliterator<Line>
+    {
+        private final List<Region> regions;
+
+        private int region;
+
+        private int position;
+
+        private final int lastRegion;
+
+        private int lastEnd;
+
+        LineSpliterator(List<Region> regions, int region, int position, int lastRegion, int lastEnd)
+        {
+            this.regions = regions;
+            this.region = region;
+            this.position = position;
+            this.lastRegion = lastRegion;
+            this.lastEnd = lastEnd;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Line> action)
+        {
+            while (region <= lastRegion)
+            {
+                Region current = regions.get(region);
+                int end = region == lastRegion ? lastEnd : current.limit;
+                if (position < end)
+                {
+                    ByteBuffer buffer = current.buffer;
+                    int newline = position;
+                    while (newline < end && buffer.get(newline) != '\n')
+                    {
+                        newline++;
+                    }
+                    int lineEnd = newline > position && newline < end && buffer.get(newline - 1) == '\r'
+                        ? newline - 1 : newline;
+                    Line line = new Line(buffer, position, lineEnd - position, current.offset + position);
+                    position = newline + 1;
+                    action.accept(line);
+                    return true;
+                }
+                region++;
+                position = 0;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<Line> trySplit()
+        {
+            if (region < lastRegion)
+            {
+                // whole regions go to the prefix
+                int middle = (region + lastRegion + 1) >>> 1;
+                LineSpliterator prefix = new LineSpliterator(regions, region, position, middle - 1,
+                    regions.get(middle - 1).limit);
+                region = middle;
+                position = 0;
+                return prefix;
+            }
+            if (region > lastRegion || lastEnd - position < 2 * MIN_SPLIT)
+            {
+                return null;
+            }
+            ByteBuffer buffer = regions.get(region).buffer;
+            int split = position + (lastEnd - position) / 2;
+            while (split < lastEnd && buffer.get(split - 1) != '\n')
+            {
+                split++;
+            }
+            if (split >= lastEnd)
+            {
+                return null;
+            }
+            LineSpliterator prefix = new LineSpliterator(regions, region, position, region, split);
+            position = split;
+            return prefix;
+        }
+
+        /**
+         * Remaining bytes, lines are not counted until read.
+         */
+        @Override
+        public long estimateSize()
+        {
+            long bytes = 0;
+            for (int i = region; i <= lastRegion; i++)
+            {
+                int start = i == region ? position : 0;
+                int end = i == lastRegion ? lastEnd : regions.get(i).limit;
+                bytes += Math.max(0, end - start);
+            }
+            return bytes;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.files;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * The file of FileTest read through a MappedLineReader, and larger files scanned in parallel.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class MappedLineReaderTest
+{
+    @Test
+    public void testSameLinesAsReadAllLines() throws IOException
+    {
+        Path path = Paths.get("src/test.js");
+        try (MappedLineReader reader = MappedLineReader.open(path))
+        {
+            List<String> lines = reader.lines().map(Line::toString).collect(Collectors.toList());
+            Assert.assertEquals(lines, Files.readAllLines(path));
+            Assert.assertEquals(reader.size(), Files.size(path));
+            Assert.assertEquals(reader.lineCount(), lines.size());
+        }
+    }
+
+    @Test
+    public void testTerminatorsAndUtf8() throws IOException
+    {
+        Path path = Files.createTempFile("mapped", ".txt");
+        try
+        {
+            Files.write(path, "first\r\n\nzo\u00eb \u2713\r\nlast".getBytes(StandardCharsets.UTF_8));
+            try (MappedLineReader reader = MappedLineReader.open(path))
+            {
+                List<Line> lines = reader.lines().collect(Collectors.toList());
+                Assert.assertEquals(lines.stream().map(Line::toString).collect(Collectors.toList()),
+                    Arrays.asList("first", "", "zo\u00eb \u2713", "last"));
+
+                Line first = lines.get(0);
+                Assert.assertEquals(first.offset(), 0);
+                Assert.assertEquals(first.length(), 5);
+                Assert.assertEquals(first.charAt(1), 'i');
+                Assert.assertEquals(first.subSequence(1, 3).toString(), "ir");
+                Assert.assertTrue(first.startsWith("fir"));
+                Assert.assertTrue(lines.get(1).isEmpty());
+
+                Line utf8 = lines.get(2);
+                Assert.assertEquals(utf8.offset(), 8);
+                Assert.assertEquals(utf8.byteLength(), 8);
+                Assert.assertEquals(utf8.length(), 5);
+                Assert.assertEquals(utf8.charAt(2), '\u00eb');
+                Assert.assertTrue(utf8.contains("\u2713"));
+                Assert.assertFalse(utf8.contains("zoe"));
+                Assert.assertEquals(utf8.bytes().remaining(), 8);
+                Assert.assertTrue(utf8.bytes().isReadOnly());
+            }
+
+            Files.write(path, new byte[0]);
+            try (MappedLineReader reader = MappedLineReader.open(path))
+            {
+                Assert.assertEquals(reader.lines().count(), 0);
+            }
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testParallelScan_SmallRegions() throws IOException
+    {
+        Path path = Files.createTempFile("mapped", ".log");
+        try
+        {
+            List<String> expected = new ArrayList<>();
+            try (BufferedWriter writer = Files.newBufferedWriter(path))
+            {
+                for (int i = 0; i < 200_000; i++)
+                {
+                    String line = (i % 7 == 0 ? "ERROR " : "INFO ") + "event " + i;
+                    expected.add(line);
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+
+            // regions of 64 KB: the file is mapped in about 50 pieces, then split inside them
+            try (MappedLineReader reader = MappedLineReader.open(path, 1 << 16))
+            {
+                Assert.assertEquals(reader.lineCount(), expected.size());
+                Assert.assertEquals(reader.lines().parallel().filter(line -> line.startsWith("ERROR")).count(),
+                    (expected.size() + 6) / 7);
+                Assert.assertEquals(reader.lines().parallel().map(Line::toString).collect(Collectors.toList()),
+                    expected);
+                long[] offsets = reader.lines().parallel().mapToLong(Line::offset).toArray();
+                Assert.assertEquals(offsets[1], expected.get(0).length() + System.lineSeparator().length());
+            }
+
+            try (MappedLineReader reader = MappedLineReader.open(path))
+            {
+                Assert.assertEquals(reader.lines().parallel().mapToLong(Line::byteLength).sum(),
+                    reader.size() - expected.size() * (long) System.lineSeparator().length());
+            }
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testLineLongerThanRegion() throws IOException
+    {
+        Path path = Files.createTempFile("mapped", ".txt");
+        try
+        {
+            Files.write(path, Collections.nCopies(2, String.join("", Collections.nCopies(100, "x"))));
+            MappedLineReader.open(path, 64).close();
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+}
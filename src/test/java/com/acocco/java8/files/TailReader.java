@@ -0,0 +1,377 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.files;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Follows a growing text file like tail -F, the replacement of reading the whole of src/test.js again every time it
+ * changes: the reader remembers the byte offset it consumed and every poll reads only what was appended since, so
+ * the cost follows the size of the change and not the size of the file.
+ *
+ * Only complete lines are returned, a line still being written is kept until its newline arrives. When the file
+ * shrinks below the offset it was truncated and is read again from the start; when another file takes its name (a
+ * log rotation, detected by its file key) the rest of the old file is read first, its unterminated last line included,
+ * then the new file from the start. A missing file is waited for.
+ *
+ * follow streams the lines as they arrive, without end: it waits on a WatchService of the directory, and polls
+ * every interval as well since file systems without native notifications only report changes late.
+ *
+ * <pre>
+ * try (TailReader reader = TailReader.openAtEnd(path); Stream&lt;String&gt; lines = reader.follow(1, TimeUnit.SECONDS))
+ * {
+ *     lines.filter(line -&gt; line.contains("ERROR")).forEach(System.out::println);
+ * }
+ * </pre>
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class TailReader implements AutoCloseable
+{
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final Path path;
+
+    private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    private final List<WatchService> watchers = new ArrayList<>();
+
+    private FileChannel channel;
+
+    private Object fileKey;
+
+    /**
+     * Bytes read from the current file, pending included.
+     */
+    private long position;
+
+    private boolean closed;
+
+    private TailReader(Path path, long position)
+    {
+        this.path = path;
+        this.position = position;
+    }
+
+    /**
+     * Reader of the whole file, then of what is appended.
+     */
+    public static TailReader open(Path path)
+    {
+        return open(path, 0);
+    }
+
+    /**
+     * Reader resuming at an offset returned by offset(), read again from the start if the file is now shorter.
+     */
+    public static TailReader open(Path path, long offset)
+    {
+        if (offset < 0)
+        {
+            throw new IllegalArgumentException("negative offset: " + offset);
+        }
+        return new TailReader(Objects.requireNonNull(path), offset);
+    }
+
+    /**
+     * Reader of what is appended from now on.
+     */
+    public static TailReader openAtEnd(Path path) throws IOException
+    {
+        return open(path, Files.exists(path) ? Files.size(path) : 0);
+    }
+
+    /**
+     * End of the last complete line returned, in the current file.
+     */
+    public synchronized long offset()
+    {
+        return position - pending.size();
+    }
+
+    /**
+     * The lines completed since the last poll, possibly none.
+     */
+    public synchronized List<String> poll() throws IOException
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("reader closed");
+        }
+        List<String> lines = new ArrayList<>();
+        BasicFileAttributes attributes = attributes();
+        if (channel != null && (attributes == null || !Objects.equals(attributes.fileKey(), fileKey)))
+        {
+            // rotated or deleted: what was appended to the old file before, then the new one
+            read(lines);
+            if (pending.size() > 0)
+            {
+                lines.add(decode(pending.toByteArray(), pending.size()));
+            }
+            reset();
+        }
+        if (channel == null)
+        {
+            if (attributes == null)
+            {
+                return lines;
+            }
+            try
+            {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+            catch (NoSuchFileException e)
+            {
+                return lines;
+            }
+            fileKey = attributes.fileKey();
+        }
+        if (channel.size() < position)
+        {
+            // truncated: the content read is gone, including the incomplete line
+            position = 0;
+            pending.reset();
+        }
+        read(lines);
+        return lines;
+    }
+
+    /**
+     * Endless stream of the lines, as poll returns them, waiting for the file to change; it ends when the reader is
+     * closed or the thread interrupted. Closing the stream releases its WatchService.
+     */
+    public Stream<String> follow(long interval, TimeUnit unit)
+    {
+        long intervalNanos = unit.toNanos(interval);
+        if (intervalNanos <= 0)
+        {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+        }
+        WatchService watcher = watch();
+        Iterator<String> iterator = new Iterator<String>()
+        {
+            private final Deque<String> lines = new ArrayDeque<>();
+
+            @Override
+            public boolean hasNext()
+            {
+                while (lines.isEmpty())
+                {
+                    try
+                    {
+                        synchronized (TailReader.this)
+                        {
+                            if (closed)
+                            {
+                                return false;
+                            }
+                            lines.addAll(poll());
+                        }
+                        if (lines.isEmpty() && !await(watcher, intervalNanos))
+                        {
+                            return false;
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public String next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return lines.poll();
+            }
+        };
+        Stream<String> stream = StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+            Spliterator.ORDERED | Spliterator.NONNULL), false);
+        return watcher == null ? stream : stream.onClose(() -> unwatch(watcher));
+    }
+
+    /**
+     * Closes the file and ends the streams of follow.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        closed = true;
+        for (WatchService watcher : watchers)
+        {
+            watcher.close();
+        }
+        watchers.clear();
+        reset();
+    }
+
+    private void read(List<String> lines) throws IOException
+    {
+        while (true)
+        {
+            chunk.clear();
+            int read = channel.read(chunk, position);
+            if (read <= 0)
+            {
+                return;
+            }
+            position += read;
+            byte[] bytes = chunk.array();
+            int start = 0;
+            for (int i = 0; i < read; i++)
+            {
+                if (bytes[i] == '\n')
+                {
+                    if (pending.size() == 0)
+                    {
+                        lines.add(decode(bytes, start, i));
+                    }
+                    else
+                    {
+                        pending.write(bytes, start, i - start);
+                        lines.add(decode(pending.toByteArray(), pending.size()));
+                        pending.reset();
+                    }
+                    start = i + 1;
+                }
+            }
+            pending.write(bytes, start, read - start);
+        }
+    }
+
+    private static String decode(byte[] bytes, int length)
+    {
+        return decode(bytes, 0, length);
+    }
+
+    private static String decode(byte[] bytes, int from, int to)
+    {
+        int end = to > from && bytes[to - 1] == '\r' ? to - 1 : to;
+        return new String(bytes, from, end - from, StandardCharsets.UTF_8);
+    }
+
+    private void reset() throws IOException
+    {
+        if (channel != null)
+        {
+            channel.close();
+        }
+        channel = null;
+        fileKey = null;
+        position = 0;
+        pending.reset();
+    }
+
+    private BasicFileAttributes attributes() throws IOException
+    {
+        try
+        {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * WatchService of the directory of the file, null if the file system has none: follow then only polls.
+     */
+    private synchronized WatchService watch()
+    {
+        Path directory = path.toAbsolutePath().getParent();
+        try
+        {
+            WatchService watcher = directory.getFileSystem().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+            watchers.add(watcher);
+            return watcher;
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            return null;
+        }
+    }
+
+    private synchronized void unwatch(WatchService watcher)
+    {
+        watchers.remove(watcher);
+        try
+        {
+            watcher.close();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits for a change of the directory or the interval, false if the wait was ended by close or an interrupt.
+     */
+    private static boolean await(WatchService watcher, long intervalNanos)
+    {
+        try
+        {
+            if (watcher == null)
+            {
+                TimeUnit.NANOSECONDS.sleep(intervalNanos);
+                return true;
+            }
+            WatchKey key = watcher.poll(intervalNanos, TimeUnit.NANOSECONDS);
+            if (key != null)
+            {
+                // any event of the directory is a reason to poll, which files changed does not matter
+                key.pollEvents();
+                key.reset();
+            }
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        catch (ClosedWatchServiceException e)
+        {
+            return false;
+        }
+    }
+}
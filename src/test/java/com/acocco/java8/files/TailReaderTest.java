@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.files;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * A growing copy of src/test.js followed line by line.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class TailReaderTest
+{
+    @Test
+    public void testAppendTruncateRotate() throws IOException
+    {
+        Path directory = Files.createTempDirectory("tail");
+        Path path = directory.resolve("test-modified.js");
+        try (TailReader reader = TailReader.open(path))
+        {
+            Assert.assertEquals(reader.poll(), Collections.emptyList());
+
+            Files.write(path, Files.readAllLines(Paths.get("src/test.js")));
+            Assert.assertEquals(reader.poll(), Files.readAllLines(path));
+            Assert.assertEquals(reader.offset(), Files.size(path));
+            Assert.assertEquals(reader.poll(), Collections.emptyList());
+
+            // only the appended lines, the incomplete one when its newline arrives
+            append(path, "print('one');\r\nprint('tw");
+            Assert.assertEquals(reader.poll(), Collections.singletonList("print('one');"));
+            append(path, "o');\n");
+            Assert.assertEquals(reader.poll(), Collections.singletonList("print('two');"));
+
+            // truncated: read again from the start
+            Files.write(path, Arrays.asList("print('restarted');"));
+            Assert.assertEquals(reader.poll(), Collections.singletonList("print('restarted');"));
+
+            // rotated: the end of the old file, then the new one
+            append(path, "print('last of old');\nprint('unterminated')");
+            Files.move(path, directory.resolve("test-modified.js.1"));
+            Files.write(path, Arrays.asList("print('new');"));
+            Assert.assertEquals(reader.poll(),
+                Arrays.asList("print('last of old');", "print('unterminated')", "print('new');"));
+
+            // deleted, then created again
+            Files.delete(path);
+            Assert.assertEquals(reader.poll(), Collections.emptyList());
+            Files.write(path, Arrays.asList("print('again');"));
+            Assert.assertEquals(reader.poll(), Collections.singletonList("print('again');"));
+        }
+        finally
+        {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testResumeAtOffset() throws IOException
+    {
+        Path path = Files.createTempFile("tail", ".log");
+        try
+        {
+            Files.write(path, Arrays.asList("a", "b"));
+            long offset;
+            try (TailReader reader = TailReader.open(path))
+            {
+                Assert.assertEquals(reader.poll(), Arrays.asList("a", "b"));
+                append(path, "c\nd");
+                Assert.assertEquals(reader.poll(), Collections.singletonList("c"));
+                offset = reader.offset();
+            }
+            append(path, "\ne\n");
+            try (TailReader reader = TailReader.open(path, offset))
+            {
+                Assert.assertEquals(reader.poll(), Arrays.asList("d", "e"));
+            }
+            try (TailReader reader = TailReader.openAtEnd(path))
+            {
+                append(path, "f\n");
+                Assert.assertEquals(reader.poll(), Collections.singletonList("f"));
+            }
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testFollow() throws Exception
+    {
+        Path path = Files.createTempFile("tail", ".log");
+        try
+        {
+            try (TailReader reader = TailReader.openAtEnd(path))
+            {
+                CompletableFuture<List<String>> followed = CompletableFuture.supplyAsync(() ->
+                {
+                    try (Stream<String> lines = reader.follow(20, TimeUnit.MILLISECONDS))
+                    {
+                        return lines.limit(5).collect(Collectors.toList());
+                    }
+                });
+                for (int i = 0; i < 5; i++)
+                {
+                    append(path, "line " + i + "\n");
+                    Thread.sleep(30);
+                }
+                Assert.assertEquals(followed.get(10, TimeUnit.SECONDS),
+                    Arrays.asList("line 0", "line 1", "line 2", "line 3", "line 4"));
+            }
+
+            // close ends a stream waiting for lines: closed here once, not by a try with resources
+            TailReader reader = TailReader.openAtEnd(path);
+            CompletableFuture<Long> counted = CompletableFuture.supplyAsync(
+                () -> reader.follow(20, TimeUnit.MILLISECONDS).count());
+            try
+            {
+                Thread.sleep(100);
+            }
+            finally
+            {
+                reader.close();
+            }
+            Assert.assertEquals(counted.get(10, TimeUnit.SECONDS).longValue(), 0);
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    private static void append(Path path, String s) throws IOException
+    {
+        Files.write(path, s.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private static void deleteAll(Path directory) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for (Path file : (Iterable<Path>) files::iterator)
+            {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
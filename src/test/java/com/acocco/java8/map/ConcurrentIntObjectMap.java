@@ -0,0 +1,484 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+
+/**
+ * Thread safe IntObjectMap, a drop-in for ConcurrentHashMap&lt;Integer, V&gt;.
+ *
+ * The keys are spread over a fixed number of IntObjectMap stripes, each guarded by its own lock: threads working on
+ * different stripes never contend, and every single-key operation, compute functions included, is atomic. As in
+ * ConcurrentHashMap the compute functions run under the lock of their stripe, so they must be short and must not
+ * touch the map.
+ *
+ * Bulk operations (size, forEach, iteration) lock one stripe at a time: they are weakly consistent, never fail
+ * with ConcurrentModificationException and may or may not see updates made meanwhile.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class ConcurrentIntObjectMap<V> extends AbstractMap<Integer, V> implements ConcurrentMap<Integer, V>
+{
+    private final IntObjectMap<V>[] stripes;
+
+    private final int shift;
+
+    private Set<Map.Entry<Integer, V>> entrySet;
+
+    public ConcurrentIntObjectMap()
+    {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ConcurrentIntObjectMap(int concurrency)
+    {
+        int count = IntObjectMap.tableSizeFor(Math.max(2, concurrency));
+        stripes = new IntObjectMap[count];
+        for (int i = 0; i < count; i++)
+        {
+            stripes[i] = new IntObjectMap<>();
+        }
+        shift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    private IntObjectMap<V> stripe(int key)
+    {
+        // the high bits pick the stripe, the table inside the stripe uses the low bits
+        return stripes[IntObjectMap.hash(key) >>> shift];
+    }
+
+    // --- primitive API
+
+    public V get(int key)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.get(key);
+        }
+    }
+
+    public V getOrDefault(int key, V defaultValue)
+    {
+        V value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public boolean containsKey(int key)
+    {
+        return get(key) != null;
+    }
+
+    public V put(int key, V value)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.put(key, value);
+        }
+    }
+
+    public V putIfAbsent(int key, V value)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.putIfAbsent(key, value);
+        }
+    }
+
+    public V remove(int key)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.remove(key);
+        }
+    }
+
+    public boolean remove(int key, Object value)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.remove(key, value);
+        }
+    }
+
+    public V replace(int key, V value)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.replace(key, value);
+        }
+    }
+
+    public boolean replace(int key, V oldValue, V newValue)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.replace(key, oldValue, newValue);
+        }
+    }
+
+    public V computeIfAbsent(int key, IntFunction<? extends V> mappingFunction)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.computeIfAbsent(key, mappingFunction);
+        }
+    }
+
+    public V computeIfPresent(int key, IntObjFunction<? super V, ? extends V> remappingFunction)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.computeIfPresent(key, remappingFunction);
+        }
+    }
+
+    public V compute(int key, IntObjFunction<? super V, ? extends V> remappingFunction)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.compute(key, remappingFunction);
+        }
+    }
+
+    public V merge(int key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        IntObjectMap<V> stripe = stripe(key);
+        synchronized (stripe)
+        {
+            return stripe.merge(key, value, remappingFunction);
+        }
+    }
+
+    /**
+     * Calls the action for every entry, stripe by stripe. The action runs under the lock of the stripe.
+     */
+    public void forEachEntry(IntObjConsumer<? super V> action)
+    {
+        Objects.requireNonNull(action);
+        for (IntObjectMap<V> stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                stripe.forEachEntry(action);
+            }
+        }
+    }
+
+    // --- Map API
+
+    @Override
+    public int size()
+    {
+        long size = 0;
+        for (IntObjectMap<V> stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                size += stripe.size();
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        for (IntObjectMap<V> stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                if (!stripe.isEmpty())
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return key instanceof Integer && containsKey(((Integer) key).intValue());
+    }
+
+    @Override
+    public boolean containsValue(Object value)
+    {
+        for (IntObjectMap<V> stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                if (stripe.containsValue(value))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V get(Object key)
+    {
+        return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue)
+    {
+        return key instanceof Integer ? getOrDefault(((Integer) key).intValue(), defaultValue) : defaultValue;
+    }
+
+    @Override
+    public V put(Integer key, V value)
+    {
+        return put(key.intValue(), value);
+    }
+
+    @Override
+    public V putIfAbsent(Integer key, V value)
+    {
+        return putIfAbsent(key.intValue(), value);
+    }
+
+    @Override
+    public V remove(Object key)
+    {
+        return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value)
+    {
+        return key instanceof Integer && remove(((Integer) key).intValue(), value);
+    }
+
+    @Override
+    public V replace(Integer key, V value)
+    {
+        return replace(key.intValue(), value);
+    }
+
+    @Override
+    public boolean replace(Integer key, V oldValue, V newValue)
+    {
+        return replace(key.intValue(), oldValue, newValue);
+    }
+
+    @Override
+    public V computeIfAbsent(Integer key, Function<? super Integer, ? extends V> mappingFunction)
+    {
+        Objects.requireNonNull(mappingFunction);
+        return computeIfAbsent(key.intValue(), k -> mappingFunction.apply(k));
+    }
+
+    @Override
+    public V computeIfPresent(Integer key, BiFunction<? super Integer, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(remappingFunction);
+        return computeIfPresent(key.intValue(), (k, v) -> remappingFunction.apply(k, v));
+    }
+
+    @Override
+    public V compute(Integer key, BiFunction<? super Integer, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(remappingFunction);
+        return compute(key.intValue(), (k, v) -> remappingFunction.apply(k, v));
+    }
+
+    @Override
+    public V merge(Integer key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        return merge(key.intValue(), value, remappingFunction);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Integer, ? super V> action)
+    {
+        Objects.requireNonNull(action);
+        forEachEntry(action::accept);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super Integer, ? super V, ? extends V> function)
+    {
+        Objects.requireNonNull(function);
+        for (IntObjectMap<V> stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                stripe.replaceAll(function);
+            }
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        for (IntObjectMap<V> stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                stripe.clear();
+            }
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, V>> entrySet()
+    {
+        if (entrySet == null)
+        {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<Integer, V>>
+    {
+        @Override
+        public Iterator<Map.Entry<Integer, V>> iterator()
+        {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return ConcurrentIntObjectMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+            {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            V value = get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+            {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return ConcurrentIntObjectMap.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear()
+        {
+            ConcurrentIntObjectMap.this.clear();
+        }
+    }
+
+    /**
+     * Copies one stripe at a time under its lock and iterates the copy.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<Integer, V>>
+    {
+        private final List<Map.Entry<Integer, V>> batch = new ArrayList<>();
+
+        private int stripeIndex;
+
+        private int index;
+
+        private Map.Entry<Integer, V> last;
+
+        @Override
+        public boolean hasNext()
+        {
+            while (index == batch.size())
+            {
+                if (stripeIndex == stripes.length)
+                {
+                    return false;
+                }
+                batch.clear();
+                index = 0;
+                IntObjectMap<V> stripe = stripes[stripeIndex++];
+                synchronized (stripe)
+                {
+                    stripe.forEachEntry((key, value) -> batch.add(new Entry(key, value)));
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Map.Entry<Integer, V> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            last = batch.get(index++);
+            return last;
+        }
+
+        @Override
+        public void remove()
+        {
+            if (last == null)
+            {
+                throw new IllegalStateException();
+            }
+            ConcurrentIntObjectMap.this.remove(last.getKey(), last.getValue());
+            last = null;
+        }
+    }
+
+    /**
+     * Snapshot entry, setValue writes through to the map.
+     */
+    private final class Entry extends AbstractMap.SimpleEntry<Integer, V>
+    {
+        private static final long serialVersionUID = 1L;
+
+        Entry(int key, V value)
+        {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value)
+        {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
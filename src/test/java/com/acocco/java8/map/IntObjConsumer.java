@@ -0,0 +1,16 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map;
+
+/**
+ * BiConsumer of a primitive int key and a value, used by IntObjectMap.forEachEntry.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+@FunctionalInterface
+public interface IntObjConsumer<V>
+{
+    void accept(int key, V value);
+}
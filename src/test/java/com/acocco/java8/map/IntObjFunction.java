@@ -0,0 +1,16 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map;
+
+/**
+ * BiFunction of a primitive int key and a value, used by the compute methods of IntObjectMap.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+@FunctionalInterface
+public interface IntObjFunction<V, R>
+{
+    R apply(int key, V value);
+}
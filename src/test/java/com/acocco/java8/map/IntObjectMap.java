@@ -0,0 +1,737 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+
+/**
+ * Map from primitive int keys to values, a drop-in for HashMap&lt;Integer, V&gt;.
+ *
+ * Keys and values live in two parallel arrays with open addressing (linear probing, backward shift deletion, no
+ * tombstones): with compressed references an entry costs 11 to 22 bytes of table, as the load factor goes from 0.75
+ * down to 0.375 after a resize, against the 50 or so of a HashMap node, its table slot and its Integer key.
+ *
+ * Every Map operation, Java 8 default methods included, has an overload taking the int key, so code written against
+ * the map with int literals ({@code map.computeIfAbsent(23, num -> "value" + num)}) binds to the primitive overloads
+ * and never boxes. With Integer values pass the values already boxed: an int key with an int value needs boxing for
+ * both overloads and does not compile.
+ *
+ * Null values are not allowed, as in ConcurrentHashMap: a null returned by a compute function removes the entry.
+ * Not thread safe, see ConcurrentIntObjectMap.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class IntObjectMap<V> extends AbstractMap<Integer, V>
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+
+    private Object[] values;
+
+    private int size;
+
+    private int mask;
+
+    private int threshold;
+
+    private int modCount;
+
+    private Set<Map.Entry<Integer, V>> entrySet;
+
+    public IntObjectMap()
+    {
+        this(DEFAULT_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize
+     *            number of entries the map can hold without resizing
+     */
+    public IntObjectMap(int expectedSize)
+    {
+        if (expectedSize < 0)
+        {
+            throw new IllegalArgumentException("expectedSize must not be negative: " + expectedSize);
+        }
+        allocate(tableSizeFor(Math.max(DEFAULT_CAPACITY, (int) Math.min(1 << 30, expectedSize * 4L / 3 + 1))));
+    }
+
+    public IntObjectMap(Map<Integer, ? extends V> map)
+    {
+        this(map.size());
+        putAll(map);
+    }
+
+    // --- primitive API
+
+    public V get(int key)
+    {
+        int slot = find(key);
+        return slot < 0 ? null : value(slot);
+    }
+
+    public V getOrDefault(int key, V defaultValue)
+    {
+        int slot = find(key);
+        return slot < 0 ? defaultValue : value(slot);
+    }
+
+    public boolean containsKey(int key)
+    {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Associates the value to the key, returns the previous value or null.
+     */
+    public V put(int key, V value)
+    {
+        Objects.requireNonNull(value);
+        int slot = find(key);
+        if (slot >= 0)
+        {
+            V old = value(slot);
+            values[slot] = value;
+            return old;
+        }
+        insert(key, value);
+        return null;
+    }
+
+    public V putIfAbsent(int key, V value)
+    {
+        Objects.requireNonNull(value);
+        int slot = find(key);
+        if (slot >= 0)
+        {
+            return value(slot);
+        }
+        insert(key, value);
+        return null;
+    }
+
+    public V remove(int key)
+    {
+        int slot = find(key);
+        if (slot < 0)
+        {
+            return null;
+        }
+        V old = value(slot);
+        removeAt(slot, null);
+        return old;
+    }
+
+    /**
+     * Removes the entry only if the key is currently mapped to the value.
+     */
+    public boolean remove(int key, Object value)
+    {
+        int slot = find(key);
+        if (slot < 0 || !values[slot].equals(value))
+        {
+            return false;
+        }
+        removeAt(slot, null);
+        return true;
+    }
+
+    public V replace(int key, V value)
+    {
+        Objects.requireNonNull(value);
+        int slot = find(key);
+        if (slot < 0)
+        {
+            return null;
+        }
+        V old = value(slot);
+        values[slot] = value;
+        return old;
+    }
+
+    public boolean replace(int key, V oldValue, V newValue)
+    {
+        Objects.requireNonNull(newValue);
+        int slot = find(key);
+        if (slot < 0 || !values[slot].equals(oldValue))
+        {
+            return false;
+        }
+        values[slot] = newValue;
+        return true;
+    }
+
+    public V computeIfAbsent(int key, IntFunction<? extends V> mappingFunction)
+    {
+        Objects.requireNonNull(mappingFunction);
+        int slot = find(key);
+        if (slot >= 0)
+        {
+            return value(slot);
+        }
+        int expectedModCount = modCount;
+        V value = mappingFunction.apply(key);
+        checkModCount(expectedModCount);
+        if (value != null)
+        {
+            insert(key, value);
+        }
+        return value;
+    }
+
+    public V computeIfPresent(int key, IntObjFunction<? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(remappingFunction);
+        int slot = find(key);
+        if (slot < 0)
+        {
+            return null;
+        }
+        int expectedModCount = modCount;
+        V value = remappingFunction.apply(key, value(slot));
+        checkModCount(expectedModCount);
+        return update(slot, value);
+    }
+
+    /**
+     * The function receives null when the key is absent.
+     */
+    public V compute(int key, IntObjFunction<? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(remappingFunction);
+        int slot = find(key);
+        int expectedModCount = modCount;
+        V value = remappingFunction.apply(key, slot < 0 ? null : value(slot));
+        checkModCount(expectedModCount);
+        if (slot >= 0)
+        {
+            return update(slot, value);
+        }
+        if (value != null)
+        {
+            insert(key, value);
+        }
+        return value;
+    }
+
+    public V merge(int key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        int slot = find(key);
+        if (slot < 0)
+        {
+            insert(key, value);
+            return value;
+        }
+        int expectedModCount = modCount;
+        V merged = remappingFunction.apply(value(slot), value);
+        checkModCount(expectedModCount);
+        return update(slot, merged);
+    }
+
+    /**
+     * Calls the action for every entry with the unboxed key.
+     */
+    public void forEachEntry(IntObjConsumer<? super V> action)
+    {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (int slot = 0; slot < values.length; slot++)
+        {
+            if (values[slot] != null)
+            {
+                action.accept(keys[slot], value(slot));
+            }
+        }
+        checkModCount(expectedModCount);
+    }
+
+    /**
+     * Returns the keys, in no particular order.
+     */
+    public int[] keyArray()
+    {
+        int[] result = new int[size];
+        int i = 0;
+        for (int slot = 0; slot < values.length; slot++)
+        {
+            if (values[slot] != null)
+            {
+                result[i++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    // --- Map API, the boxed keys are unboxed once and passed to the primitive API
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return key instanceof Integer && containsKey(((Integer) key).intValue());
+    }
+
+    @Override
+    public boolean containsValue(Object value)
+    {
+        if (value != null)
+        {
+            for (Object v : values)
+            {
+                if (value.equals(v))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V get(Object key)
+    {
+        return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue)
+    {
+        return key instanceof Integer ? getOrDefault(((Integer) key).intValue(), defaultValue) : defaultValue;
+    }
+
+    @Override
+    public V put(Integer key, V value)
+    {
+        return put(key.intValue(), value);
+    }
+
+    @Override
+    public V putIfAbsent(Integer key, V value)
+    {
+        return putIfAbsent(key.intValue(), value);
+    }
+
+    @Override
+    public V remove(Object key)
+    {
+        return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value)
+    {
+        return key instanceof Integer && remove(((Integer) key).intValue(), value);
+    }
+
+    @Override
+    public V replace(Integer key, V value)
+    {
+        return replace(key.intValue(), value);
+    }
+
+    @Override
+    public boolean replace(Integer key, V oldValue, V newValue)
+    {
+        return replace(key.intValue(), oldValue, newValue);
+    }
+
+    @Override
+    public V computeIfAbsent(Integer key, Function<? super Integer, ? extends V> mappingFunction)
+    {
+        Objects.requireNonNull(mappingFunction);
+        return computeIfAbsent(key.intValue(), k -> mappingFunction.apply(k));
+    }
+
+    @Override
+    public V computeIfPresent(Integer key, BiFunction<? super Integer, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(remappingFunction);
+        return computeIfPresent(key.intValue(), (k, v) -> remappingFunction.apply(k, v));
+    }
+
+    @Override
+    public V compute(Integer key, BiFunction<? super Integer, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(remappingFunction);
+        return compute(key.intValue(), (k, v) -> remappingFunction.apply(k, v));
+    }
+
+    @Override
+    public V merge(Integer key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        return merge(key.intValue(), value, remappingFunction);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Integer, ? super V> action)
+    {
+        Objects.requireNonNull(action);
+        forEachEntry(action::accept);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super Integer, ? super V, ? extends V> function)
+    {
+        Objects.requireNonNull(function);
+        int expectedModCount = modCount;
+        for (int slot = 0; slot < values.length; slot++)
+        {
+            if (values[slot] != null)
+            {
+                values[slot] = Objects.requireNonNull(function.apply(keys[slot], value(slot)));
+            }
+        }
+        checkModCount(expectedModCount);
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(values, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, V>> entrySet()
+    {
+        if (entrySet == null)
+        {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    // --- table
+
+    @SuppressWarnings("unchecked")
+    private V value(int slot)
+    {
+        return (V) values[slot];
+    }
+
+    private int find(int key)
+    {
+        for (int slot = hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask)
+        {
+            if (keys[slot] == key)
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int key, Object value)
+    {
+        if (size >= threshold)
+        {
+            rehash(values.length * 2);
+        }
+        int slot = hash(key) & mask;
+        while (values[slot] != null)
+        {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Stores the result of a remapping function in an occupied slot: null removes the entry.
+     */
+    private V update(int slot, V value)
+    {
+        if (value == null)
+        {
+            removeAt(slot, null);
+        }
+        else
+        {
+            values[slot] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Empties the slot and shifts back the following entries of the cluster that would no longer be reachable from
+     * their home slot. An iterator walking the table downwards is told about the entries moved from below the slot,
+     * which it has not visited yet, to a visited slot above.
+     */
+    private void removeAt(int slot, EntryIterator iterator)
+    {
+        values[slot] = null;
+        size--;
+        modCount++;
+
+        int hole = slot;
+        for (int next = (hole + 1) & mask; values[next] != null; next = (next + 1) & mask)
+        {
+            int home = hash(keys[next]) & mask;
+            // the entry may move to the hole only if its home slot is not cyclically in (hole, next]
+            boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+            if (movable)
+            {
+                if (iterator != null && next < slot && hole >= slot)
+                {
+                    iterator.wrapped(keys[next], values[next]);
+                }
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                values[next] = null;
+                hole = next;
+            }
+        }
+    }
+
+    private void rehash(int capacity)
+    {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++)
+        {
+            if (oldValues[i] != null)
+            {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = capacity == 1 << 30 ? capacity - 1 : capacity / 4 * 3;
+    }
+
+    private void checkModCount(int expectedModCount)
+    {
+        if (modCount != expectedModCount)
+        {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Spreads consecutive keys (ids, ages) over the table.
+     */
+    static int hash(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static int tableSizeFor(int capacity)
+    {
+        int n = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        return n < 0 ? 1 << 30 : n;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<Integer, V>>
+    {
+        @Override
+        public Iterator<Map.Entry<Integer, V>> iterator()
+        {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+            {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Object key = entry.getKey();
+            return key instanceof Integer && entry.getValue() != null
+                && entry.getValue().equals(get(((Integer) key).intValue()));
+        }
+
+        @Override
+        public boolean remove(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+            {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return IntObjectMap.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear()
+        {
+            IntObjectMap.this.clear();
+        }
+    }
+
+    /**
+     * Walks the table from the last slot down, so that removing the current entry only moves entries already
+     * visited, except those wrapping around from the start of the table, which are kept aside and returned at the
+     * end.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<Integer, V>>
+    {
+        private int slot = values.length;
+
+        private int nextSlot = -1;
+
+        private List<Entry> wrapped;
+
+        private int wrappedIndex;
+
+        private Entry last;
+
+        private int lastSlot = -1;
+
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext()
+        {
+            if (nextSlot >= 0)
+            {
+                return true;
+            }
+            while (--slot >= 0)
+            {
+                if (values[slot] != null)
+                {
+                    nextSlot = slot;
+                    return true;
+                }
+            }
+            slot = 0;
+            return wrapped != null && wrappedIndex < wrapped.size();
+        }
+
+        @Override
+        public Map.Entry<Integer, V> next()
+        {
+            checkModCount(expectedModCount);
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            if (nextSlot >= 0)
+            {
+                lastSlot = nextSlot;
+                nextSlot = -1;
+                last = new Entry(keys[lastSlot], value(lastSlot));
+            }
+            else
+            {
+                lastSlot = -1;
+                last = wrapped.get(wrappedIndex++);
+            }
+            return last;
+        }
+
+        @Override
+        public void remove()
+        {
+            if (last == null)
+            {
+                throw new IllegalStateException();
+            }
+            checkModCount(expectedModCount);
+            if (lastSlot >= 0)
+            {
+                removeAt(lastSlot, this);
+                if (nextSlot >= 0)
+                {
+                    // the shift may have moved the entry found by hasNext, look for it again
+                    slot = nextSlot + 1;
+                    nextSlot = -1;
+                }
+            }
+            else
+            {
+                IntObjectMap.this.remove(last.key);
+            }
+            expectedModCount = modCount;
+            last = null;
+        }
+
+        @SuppressWarnings("unchecked")
+        void wrapped(int key, Object value)
+        {
+            if (wrapped == null)
+            {
+                wrapped = new ArrayList<>(2);
+            }
+            wrapped.add(new Entry(key, (V) value));
+        }
+    }
+
+    /**
+     * Entry handed out by the iterator, setValue writes through to the map.
+     */
+    private final class Entry extends AbstractMap.SimpleEntry<Integer, V>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int key;
+
+        Entry(int key, V value)
+        {
+            super(key, value);
+            this.key = key;
+        }
+
+        @Override
+        public V setValue(V value)
+        {
+            IntObjectMap.this.replace(key, value);
+            return super.setValue(value);
+        }
+    }
+}
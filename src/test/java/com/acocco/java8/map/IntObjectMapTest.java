@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * The MapTest operations on int keys without boxing, and the differences with HashMap found by random operations.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class IntObjectMapTest
+{
+    @Test
+    public void testMapTestOperations()
+    {
+        IntObjectMap<String> map = new IntObjectMap<>();
+
+        for (int i = 0; i < 10; i++)
+        {
+            map.putIfAbsent(i, "value" + i);
+        }
+        Assert.assertEquals(map.size(), 10);
+
+        map.computeIfPresent(3, (num, val) -> val + num);
+        Assert.assertEquals(map.get(3), "value33");
+
+        map.computeIfAbsent(23, num -> "value" + num);
+        Assert.assertTrue(map.containsKey(23));
+        Assert.assertEquals(map.get(23), "value23");
+
+        map.computeIfAbsent(3, num -> "antonio");
+        Assert.assertEquals(map.get(3), "value33");
+
+        map.remove(3, "val33");
+        Assert.assertEquals(map.get(3), "value33");
+
+        map.remove(3, "value33");
+        Assert.assertNull(map.get(3));
+
+        Assert.assertEquals(map.getOrDefault(42, "not found"), "not found");
+
+        map.merge(9, "!", String::concat);
+        Assert.assertEquals(map.get(9), "value9!");
+        map.compute(9, (num, val) -> null);
+        Assert.assertFalse(map.containsKey(9));
+
+        // the same map through the boxed Map interface
+        Map<Integer, String> boxed = map;
+        Map<Integer, String> expected = new HashMap<>();
+        for (int i = 0; i < 9; i++)
+        {
+            expected.put(i, "value" + i);
+        }
+        expected.remove(3);
+        expected.put(23, "value23");
+        Assert.assertEquals(boxed, expected);
+        Assert.assertEquals(expected, boxed);
+        Assert.assertEquals(boxed.hashCode(), expected.hashCode());
+        Assert.assertNull(boxed.get("3"));
+    }
+
+    @Test
+    public void testRandomOperations_SameAsHashMap()
+    {
+        Random random = new Random(42);
+        IntObjectMap<Integer> map = new IntObjectMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 200_000; i++)
+        {
+            // few keys, many collisions and removals
+            int key = random.nextInt(2_000) - 1_000;
+            // a boxed value, with an int both the int key and the Integer key overloads would need boxing
+            Integer value = random.nextInt(10);
+            Integer next = value + 1;
+            switch (random.nextInt(8))
+            {
+                case 0:
+                    Assert.assertEquals(map.put(key, value), expected.put(key, value));
+                    break;
+                case 1:
+                    Assert.assertEquals(map.remove(key), expected.remove(key));
+                    break;
+                case 2:
+                    Assert.assertEquals(map.remove(key, value), expected.remove(key, value));
+                    break;
+                case 3:
+                    Assert.assertEquals(map.putIfAbsent(key, value), expected.putIfAbsent(key, value));
+                    break;
+                case 4:
+                    Assert.assertEquals(map.computeIfPresent(key, (k, v) -> v == 0 ? null : v - 1),
+                        expected.computeIfPresent(key, (k, v) -> v == 0 ? null : v - 1));
+                    break;
+                case 5:
+                    Assert.assertEquals(map.merge(key, value, (a, b) -> a + b > 15 ? null : a + b),
+                        expected.merge(key, value, (a, b) -> a + b > 15 ? null : a + b));
+                    break;
+                case 6:
+                    Assert.assertEquals(map.replace(key, value, next), expected.replace(key, value, next));
+                    break;
+                default:
+                    Assert.assertEquals(map.getOrDefault(key, next), expected.getOrDefault(key, next));
+            }
+            Assert.assertEquals(map.size(), expected.size());
+        }
+        Assert.assertEquals(map, expected);
+    }
+
+    @Test
+    public void testIteratorRemove_VisitsEveryEntryOnce()
+    {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++)
+        {
+            IntObjectMap<Integer> map = new IntObjectMap<>();
+            Map<Integer, Integer> expected = new HashMap<>();
+            for (int i = 0; i < 12; i++)
+            {
+                int key = random.nextInt(64);
+                map.put(key, Integer.valueOf(key));
+                expected.put(key, key);
+            }
+
+            List<Integer> keys = new ArrayList<>(expected.keySet());
+            keys.sort(null);
+            List<Integer> visited = new ArrayList<>();
+            for (Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator(); it.hasNext();)
+            {
+                Map.Entry<Integer, Integer> entry = it.next();
+                visited.add(entry.getKey());
+                if (random.nextBoolean())
+                {
+                    it.remove();
+                    expected.remove(entry.getKey());
+                }
+            }
+            visited.sort(null);
+            Assert.assertEquals(visited, keys);
+            Assert.assertEquals(map, expected);
+        }
+
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int i = 0; i < 100; i++)
+        {
+            map.put(i, "v" + i);
+        }
+        map.values().removeIf(v -> v.endsWith("7"));
+        map.entrySet().forEach(e -> e.setValue(e.getValue().toUpperCase()));
+        Assert.assertEquals(map.size(), 90);
+        Assert.assertEquals(map.get(12), "V12");
+        Assert.assertFalse(map.containsKey(17));
+    }
+
+    @Test
+    public void testConcurrentIntObjectMap() throws Exception
+    {
+        ConcurrentIntObjectMap<Integer> map = new ConcurrentIntObjectMap<>(16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+            {
+                futures.add(executor.submit(() ->
+                {
+                    Integer one = 1;
+                    for (int i = 0; i < 50_000; i++)
+                    {
+                        map.merge(i % 1_000, one, Integer::sum);
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(map.size(), 1_000);
+        int[] total = new int[1];
+        map.forEachEntry((key, count) ->
+        {
+            Assert.assertEquals(count.intValue(), 200);
+            total[0] += count;
+        });
+        Assert.assertEquals(total[0], 200_000);
+
+        Assert.assertEquals(map.computeIfAbsent(5_000, k -> k * 2), Integer.valueOf(10_000));
+        Assert.assertTrue(map.remove(5_000, Integer.valueOf(10_000)));
+        Assert.assertNull(map.putIfAbsent(-1, Integer.valueOf(1)));
+        map.entrySet().removeIf(e -> e.getKey() < 500);
+        Assert.assertEquals(map.size(), 500);
+    }
+}
@@ -0,0 +1,697 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.cache;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntBiFunction;
+
+import com.acocco.java8.map.cache.Node.Region;
+
+
+/**
+ * Cache bounded by size or weight, the computeIfAbsent lazy-fill pattern of MapTest without the unbounded growth.
+ *
+ * Eviction follows W-TinyLFU: a new entry enters a small LRU window (1% of the bound); when it leaves the window it
+ * is admitted to the main space only if a FrequencySketch says its key was used more often than the one it would
+ * replace, the least recently used entry of the probation segment. Entries used again in probation move to the
+ * protected segment (80% of the main space). A burst of keys seen once therefore cannot flush the popular ones, as
+ * it would in a plain LRU.
+ *
+ * The entries live in a ConcurrentHashMap, read without locks. The policy (deques, sketch, weights) is guarded by one
+ * lock: writes take it, reads record their access only if the lock is free and otherwise leave it in a lossy buffer
+ * replayed by the next maintenance.
+ *
+ * Loads are single-flight: concurrent lookups of a missing key share one CompletableFuture and the loader runs once,
+ * outside any lock, so a slow key never blocks the other keys of its hash bin as ConcurrentHashMap.computeIfAbsent
+ * would. A loaded value is stored only if the entry of its key is still the one the load started from, or was
+ * removed meanwhile: a value put during the load is newer and wins, the load then completes with it.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class BoundedCache<K, V>
+{
+    private static final int READ_BUFFER_SIZE = 128;
+
+    private static final double WINDOW_PERCENT = 0.01;
+
+    private static final double PROTECTED_PERCENT = 0.80;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loads = new ConcurrentHashMap<>();
+
+    private final long maximumWeight;
+
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+
+    private final long expireAfterWriteNanos;
+
+    private final long expireAfterAccessNanos;
+
+    private final Executor executor;
+
+    private final LongSupplier ticker;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ArrayBlockingQueue<Node<K, V>> readBuffer = new ArrayBlockingQueue<>(READ_BUFFER_SIZE);
+
+    private final FrequencySketch sketch = new FrequencySketch();
+
+    private final NodeDeque<K, V> window = NodeDeque.accessOrder();
+
+    private final NodeDeque<K, V> probation = NodeDeque.accessOrder();
+
+    private final NodeDeque<K, V> protectedSegment = NodeDeque.accessOrder();
+
+    private final NodeDeque<K, V> writeOrder = NodeDeque.writeOrder();
+
+    private final long windowMaximum;
+
+    private final long protectedMaximum;
+
+    private long weightedSize;
+
+    private long windowWeight;
+
+    private long protectedWeight;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder loadSuccesses = new LongAdder();
+
+    private final LongAdder loadFailures = new LongAdder();
+
+    private final LongAdder loadTime = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder evictionWeight = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private BoundedCache(Builder<K, V> builder)
+    {
+        this.maximumWeight = builder.maximumWeight;
+        this.weigher = builder.weigher;
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+        this.executor = builder.executor;
+        this.ticker = builder.ticker;
+        this.windowMaximum = Math.max(1, (long) (maximumWeight * WINDOW_PERCENT));
+        this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_PERCENT);
+        sketch.ensureCapacity(Math.min(maximumWeight, 1 << 16));
+    }
+
+    public static <K, V> Builder<K, V> builder()
+    {
+        return new Builder<>();
+    }
+
+    /**
+     * The live value of the key, null when absent or expired.
+     */
+    public V getIfPresent(K key)
+    {
+        Node<K, V> node = data.get(key);
+        long now = ticker.getAsLong();
+        if (node == null || isExpired(node, now))
+        {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        afterRead(node, now);
+        return node.value;
+    }
+
+    /**
+     * The value of the key, loaded in the calling thread when absent. Concurrent callers for the same key wait for
+     * that single load instead of running the loader again.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader)
+    {
+        try
+        {
+            return getAsync(key, loader, Runnable::run).join();
+        }
+        catch (CompletionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The value of the key, loaded on the executor of the cache when absent. The future completes with null when
+     * the loader returns null, which is not cached.
+     */
+    public CompletableFuture<V> getAsync(K key, Function<? super K, ? extends V> loader)
+    {
+        return getAsync(key, loader, executor);
+    }
+
+    private CompletableFuture<V> getAsync(K key, Function<? super K, ? extends V> loader, Executor loadExecutor)
+    {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(loader);
+        V value = getIfPresent(key);
+        if (value != null)
+        {
+            return CompletableFuture.completedFuture(value);
+        }
+
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null)
+        {
+            return inFlight;
+        }
+        Node<K, V> loaded = data.get(key);
+        if (loaded != null && !isExpired(loaded, ticker.getAsLong()))
+        {
+            // a load finished between the lookup and putIfAbsent
+            loads.remove(key, load);
+            load.complete(loaded.value);
+            return load;
+        }
+        try
+        {
+            loadExecutor.execute(() -> load(key, loader, load, loaded));
+        }
+        catch (RuntimeException e)
+        {
+            loads.remove(key, load);
+            load.completeExceptionally(e);
+        }
+        return load;
+    }
+
+    /**
+     * @param replaced
+     *            the entry of the key when the load started, expired or null
+     */
+    private void load(K key, Function<? super K, ? extends V> loader, CompletableFuture<V> load, Node<K, V> replaced)
+    {
+        long start = ticker.getAsLong();
+        try
+        {
+            V value = loader.apply(key);
+            loadTime.add(ticker.getAsLong() - start);
+            if (value == null)
+            {
+                loadFailures.increment();
+            }
+            else
+            {
+                loadSuccesses.increment();
+                value = install(key, value, replaced);
+            }
+            // the value is in the cache before the load is forgotten, a lookup always finds one or the other
+            loads.remove(key, load);
+            load.complete(value);
+        }
+        catch (Throwable e)
+        {
+            loadTime.add(ticker.getAsLong() - start);
+            loadFailures.increment();
+            loads.remove(key, load);
+            load.completeExceptionally(e);
+        }
+    }
+
+    public void put(K key, V value)
+    {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Node<K, V> node = newNode(key, value);
+        link(node, data.put(key, node));
+    }
+
+    /**
+     * Stores a loaded value in place of the entry the load started from, unless another value was put meanwhile.
+     * Returns the value now in the cache.
+     */
+    private V install(K key, V value, Node<K, V> replaced)
+    {
+        Node<K, V> node = newNode(key, value);
+        while (true)
+        {
+            Node<K, V> current = data.get(key);
+            if (current != null && current != replaced)
+            {
+                // put during the load: newer than the loaded value
+                return current.value;
+            }
+            if (current == null ? data.putIfAbsent(key, node) == null : data.replace(key, current, node))
+            {
+                link(node, current);
+                return value;
+            }
+        }
+    }
+
+    private Node<K, V> newNode(K key, V value)
+    {
+        int weight = weigher.applyAsInt(key, value);
+        if (weight < 0)
+        {
+            throw new IllegalArgumentException("negative weight " + weight + " for " + key);
+        }
+        return new Node<>(key, value, weight, ticker.getAsLong());
+    }
+
+    /**
+     * Adds the node just stored to the policy, in place of the old one.
+     */
+    private void link(Node<K, V> node, Node<K, V> old)
+    {
+        int weight = node.weight;
+        lock.lock();
+        try
+        {
+            if (old != null)
+            {
+                retire(old);
+            }
+            if (!node.retired)
+            {
+                node.region = Region.WINDOW;
+                window.addLast(node);
+                writeOrder.addLast(node);
+                windowWeight += weight;
+                weightedSize += weight;
+                sketch.increment(node.key);
+            }
+            maintenance();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key)
+    {
+        Node<K, V> node = data.remove(key);
+        if (node != null)
+        {
+            lock.lock();
+            try
+            {
+                retire(node);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    public void invalidateAll()
+    {
+        lock.lock();
+        try
+        {
+            for (Node<K, V> node : data.values())
+            {
+                if (data.remove(node.key, node))
+                {
+                    retire(node);
+                }
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replays the buffered reads, removes the expired entries and evicts down to the bound. Happens anyway on every
+     * write and on the reads that find the lock free.
+     */
+    public void cleanUp()
+    {
+        lock.lock();
+        try
+        {
+            maintenance();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of entries, expired entries not removed yet included.
+     */
+    public long estimatedSize()
+    {
+        return data.mappingCount();
+    }
+
+    public long weightedSize()
+    {
+        lock.lock();
+        try
+        {
+            return weightedSize;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public long getMaximumWeight()
+    {
+        return maximumWeight;
+    }
+
+    public CacheStats stats()
+    {
+        return new CacheStats(hits.sum(), misses.sum(), loadSuccesses.sum(), loadFailures.sum(), loadTime.sum(),
+            evictions.sum(), evictionWeight.sum(), expirations.sum());
+    }
+
+    // --- policy, every method below runs under the lock
+
+    private boolean isExpired(Node<K, V> node, long now)
+    {
+        return (expireAfterWriteNanos > 0 && now - node.writeTime >= expireAfterWriteNanos)
+            || (expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos);
+    }
+
+    private void afterRead(Node<K, V> node, long now)
+    {
+        if (expireAfterAccessNanos > 0)
+        {
+            node.accessTime = now;
+        }
+        if (lock.tryLock())
+        {
+            try
+            {
+                onAccess(node);
+                maintenance();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        else
+        {
+            // lossy: when the buffer is full the access is simply not recorded
+            readBuffer.offer(node);
+        }
+    }
+
+    private void maintenance()
+    {
+        Node<K, V> read;
+        while ((read = readBuffer.poll()) != null)
+        {
+            onAccess(read);
+        }
+        sketch.ensureCapacity(data.mappingCount());
+        expire(ticker.getAsLong());
+        evict();
+    }
+
+    private void onAccess(Node<K, V> node)
+    {
+        if (node.retired)
+        {
+            return;
+        }
+        sketch.increment(node.key);
+        switch (node.region)
+        {
+            case WINDOW:
+                window.moveToBack(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.region = Region.PROTECTED;
+                protectedSegment.addLast(node);
+                protectedWeight += node.weight;
+                demoteFromProtected();
+                break;
+            case PROTECTED:
+                protectedSegment.moveToBack(node);
+                break;
+            default:
+                // read before its put linked it
+                break;
+        }
+    }
+
+    private void demoteFromProtected()
+    {
+        while (protectedWeight > protectedMaximum)
+        {
+            Node<K, V> demoted = protectedSegment.peekFirst();
+            protectedSegment.remove(demoted);
+            protectedWeight -= demoted.weight;
+            demoted.region = Region.PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    private void expire(long now)
+    {
+        if (expireAfterWriteNanos > 0)
+        {
+            Node<K, V> node;
+            while ((node = writeOrder.peekFirst()) != null && now - node.writeTime >= expireAfterWriteNanos)
+            {
+                remove(node, true);
+            }
+        }
+        if (expireAfterAccessNanos > 0)
+        {
+            expireAfterAccess(window, now);
+            expireAfterAccess(probation, now);
+            expireAfterAccess(protectedSegment, now);
+        }
+    }
+
+    /**
+     * The deques are only approximately in access order, since reads may be dropped: stops at the first live node.
+     */
+    private void expireAfterAccess(NodeDeque<K, V> deque, long now)
+    {
+        Node<K, V> node;
+        while ((node = deque.peekFirst()) != null && now - node.accessTime >= expireAfterAccessNanos)
+        {
+            remove(node, true);
+        }
+    }
+
+    private void evict()
+    {
+        // the window overflows into the tail of probation, those nodes are the admission candidates
+        int candidates = 0;
+        while (windowWeight > windowMaximum)
+        {
+            Node<K, V> node = window.peekFirst();
+            window.remove(node);
+            windowWeight -= node.weight;
+            node.region = Region.PROBATION;
+            probation.addLast(node);
+            candidates++;
+        }
+
+        while (weightedSize > maximumWeight)
+        {
+            Node<K, V> victim = probation.peekFirst();
+            Node<K, V> candidate = candidates > 0 ? probation.peekLast() : null;
+            if (victim == null)
+            {
+                victim = protectedSegment.peekFirst() != null ? protectedSegment.peekFirst() : window.peekFirst();
+                remove(victim, false);
+            }
+            else if (candidate == null || candidate == victim)
+            {
+                remove(victim, false);
+                candidates = candidate == null ? 0 : candidates - 1;
+            }
+            else if (candidate.weight <= maximumWeight && admit(candidate, victim))
+            {
+                remove(victim, false);
+            }
+            else
+            {
+                remove(candidate, false);
+                candidates--;
+            }
+        }
+    }
+
+    /**
+     * TinyLFU: the candidate replaces the victim only if its key is more popular, ties keep the victim.
+     */
+    private boolean admit(Node<K, V> candidate, Node<K, V> victim)
+    {
+        return sketch.frequency(candidate.key) > sketch.frequency(victim.key);
+    }
+
+    private void remove(Node<K, V> node, boolean expired)
+    {
+        data.remove(node.key, node);
+        retire(node);
+        if (expired)
+        {
+            expirations.increment();
+        }
+        else
+        {
+            evictions.increment();
+            evictionWeight.add(node.weight);
+        }
+    }
+
+    /**
+     * Unlinks the node, if it was linked, and makes sure it never is.
+     */
+    private void retire(Node<K, V> node)
+    {
+        node.retired = true;
+        if (!node.isLinked())
+        {
+            return;
+        }
+        switch (node.region)
+        {
+            case WINDOW:
+                window.remove(node);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            default:
+                protectedSegment.remove(node);
+                protectedWeight -= node.weight;
+                break;
+        }
+        writeOrder.remove(node);
+        weightedSize -= node.weight;
+        node.region = Region.NONE;
+    }
+
+    /**
+     * Settings of a BoundedCache, either maximumSize or maximumWeight is required.
+     */
+    public static final class Builder<K, V>
+    {
+        private long maximumWeight = -1;
+
+        private ToIntBiFunction<? super K, ? super V> weigher;
+
+        private long expireAfterWriteNanos;
+
+        private long expireAfterAccessNanos;
+
+        private Executor executor = ForkJoinPool.commonPool();
+
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder()
+        {
+        }
+
+        public Builder<K, V> maximumSize(long maximumSize)
+        {
+            return maximumWeight(maximumSize, (key, value) -> 1);
+        }
+
+        /**
+         * Bounds the sum of the weights of the entries, the weight of an entry is computed once when it is stored.
+         */
+        public Builder<K, V> maximumWeight(long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher)
+        {
+            if (maximumWeight <= 0)
+            {
+                throw new IllegalArgumentException("maximum must be positive: " + maximumWeight);
+            }
+            this.maximumWeight = maximumWeight;
+            this.weigher = Objects.requireNonNull(weigher);
+            return this;
+        }
+
+        public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit)
+        {
+            expireAfterWriteNanos = positive(unit.toNanos(duration));
+            return this;
+        }
+
+        public Builder<K, V> expireAfterAccess(long duration, TimeUnit unit)
+        {
+            expireAfterAccessNanos = positive(unit.toNanos(duration));
+            return this;
+        }
+
+        /**
+         * Where getAsync runs the loaders, the common pool by default.
+         */
+        public Builder<K, V> executor(Executor executor)
+        {
+            this.executor = Objects.requireNonNull(executor);
+            return this;
+        }
+
+        /**
+         * Time source in nanoseconds, System.nanoTime by default.
+         */
+        public Builder<K, V> ticker(LongSupplier ticker)
+        {
+            this.ticker = Objects.requireNonNull(ticker);
+            return this;
+        }
+
+        public BoundedCache<K, V> build()
+        {
+            if (maximumWeight < 0)
+            {
+                throw new IllegalStateException("maximumSize or maximumWeight is required");
+            }
+            return new BoundedCache<>(this);
+        }
+
+        private static long positive(long nanos)
+        {
+            if (nanos <= 0)
+            {
+                throw new IllegalArgumentException("duration must be positive: " + nanos + "ns");
+            }
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * The computeIfAbsent lazy-fill of MapTest with a bound, expiration and single-flight loads.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class BoundedCacheTest
+{
+    @Test
+    public void testLazyFill()
+    {
+        BoundedCache<Integer, String> cache = BoundedCache.<Integer, String> builder().maximumSize(100).build();
+
+        Assert.assertEquals(cache.get(23, num -> "value" + num), "value23");
+        Assert.assertEquals(cache.get(23, num -> "antonio"), "value23");
+        Assert.assertEquals(cache.getIfPresent(23), "value23");
+        Assert.assertNull(cache.getIfPresent(42));
+
+        CacheStats stats = cache.stats();
+        Assert.assertEquals(stats.getHitCount(), 2);
+        Assert.assertEquals(stats.getMissCount(), 2);
+        Assert.assertEquals(stats.getLoadSuccessCount(), 1);
+        Assert.assertEquals(stats.getHitRate(), 0.5);
+
+        try
+        {
+            cache.get(7, num ->
+            {
+                throw new IllegalStateException("loader failed");
+            });
+            Assert.fail();
+        }
+        catch (IllegalStateException e)
+        {
+            Assert.assertEquals(e.getMessage(), "loader failed");
+        }
+        Assert.assertNull(cache.get(8, num -> null));
+        Assert.assertEquals(cache.stats().getLoadFailureCount(), 2);
+        Assert.assertEquals(cache.estimatedSize(), 1);
+    }
+
+    @Test
+    public void testSizeBound_KeepsTheFrequentKeys()
+    {
+        BoundedCache<Integer, Integer> cache = BoundedCache.<Integer, Integer> builder().maximumSize(100).build();
+        Random random = new Random(42);
+
+        // 50 hot keys used all the time, a scan of 100_000 keys used once
+        for (int i = 0; i < 100_000; i++)
+        {
+            int hot = random.nextInt(50);
+            cache.get(hot, key -> key);
+            cache.get(1_000 + i, key -> key);
+        }
+        cache.cleanUp();
+
+        Assert.assertTrue(cache.estimatedSize() <= 100, "size " + cache.estimatedSize());
+        Assert.assertEquals(cache.weightedSize(), cache.estimatedSize());
+        int hotPresent = 0;
+        for (int hot = 0; hot < 50; hot++)
+        {
+            if (cache.getIfPresent(hot) != null)
+            {
+                hotPresent++;
+            }
+        }
+        // a plain LRU would keep about half of them, the scan evicts the others between two uses
+        Assert.assertEquals(hotPresent, 50);
+        Assert.assertTrue(cache.stats().getEvictionCount() >= 100_000 - 100);
+    }
+
+    @Test
+    public void testWeightBound()
+    {
+        BoundedCache<String, String> cache = BoundedCache.<String, String> builder()
+            .maximumWeight(1_000, (key, value) -> value.length()).build();
+
+        for (int i = 0; i < 1_000; i++)
+        {
+            cache.put("k" + i, "0123456789");
+        }
+        cache.cleanUp();
+        Assert.assertTrue(cache.weightedSize() <= 1_000);
+        Assert.assertEquals(cache.weightedSize(), cache.estimatedSize() * 10);
+
+        // heavier than the whole cache: stored and evicted at once
+        StringBuilder huge = new StringBuilder();
+        for (int i = 0; i < 2_000; i++)
+        {
+            huge.append('x');
+        }
+        cache.put("huge", huge.toString());
+        Assert.assertNull(cache.getIfPresent("huge"));
+        Assert.assertTrue(cache.weightedSize() <= 1_000);
+    }
+
+    @Test
+    public void testExpiration()
+    {
+        AtomicLong now = new AtomicLong();
+        BoundedCache<Integer, String> written = BoundedCache.<Integer, String> builder().maximumSize(10)
+            .expireAfterWrite(10, TimeUnit.SECONDS).ticker(now::get).build();
+        BoundedCache<Integer, String> accessed = BoundedCache.<Integer, String> builder().maximumSize(10)
+            .expireAfterAccess(10, TimeUnit.SECONDS).ticker(now::get).build();
+
+        written.put(1, "one");
+        accessed.put(1, "one");
+        accessed.put(2, "two");
+        for (int second = 0; second < 15; second++)
+        {
+            now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            Assert.assertNotNull(accessed.getIfPresent(1));
+        }
+        Assert.assertNull(written.getIfPresent(1));
+        Assert.assertNull(accessed.getIfPresent(2));
+
+        written.cleanUp();
+        accessed.cleanUp();
+        Assert.assertEquals(written.estimatedSize(), 0);
+        Assert.assertEquals(accessed.estimatedSize(), 1);
+        Assert.assertEquals(written.stats().getExpirationCount(), 1);
+        Assert.assertEquals(accessed.stats().getExpirationCount(), 1);
+        Assert.assertEquals(accessed.stats().getEvictionCount(), 0);
+
+        Assert.assertEquals(written.get(1, key -> "again"), "again");
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            BoundedCache<String, String> cache = BoundedCache.<String, String> builder().maximumSize(100)
+                .executor(executor).build();
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger slowLoads = new AtomicInteger();
+
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+            {
+                futures.add(cache.getAsync("slow", key ->
+                {
+                    slowLoads.incrementAndGet();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "slow value";
+                }));
+            }
+
+            // the slow load holds no lock: other keys load meanwhile
+            Assert.assertEquals(cache.getAsync("fast", key -> "fast value").get(10, TimeUnit.SECONDS), "fast value");
+            Assert.assertEquals(cache.get("other", key -> "other value"), "other value");
+            Assert.assertFalse(futures.get(0).isDone());
+
+            release.countDown();
+            for (CompletableFuture<String> future : futures)
+            {
+                Assert.assertEquals(future.get(10, TimeUnit.SECONDS), "slow value");
+            }
+            Assert.assertEquals(slowLoads.get(), 1);
+            Assert.assertEquals(cache.getIfPresent("slow"), "slow value");
+            Assert.assertTrue(cache.stats().getTotalLoadTime() > 0);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLoad_PutDuringTheLoadWins() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            BoundedCache<String, String> cache = BoundedCache.<String, String> builder().maximumSize(100)
+                .executor(executor).build();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<String> load = cache.getAsync("key", key ->
+            {
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return "stale";
+            });
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            cache.put("key", "newer");
+            release.countDown();
+
+            Assert.assertEquals(load.get(10, TimeUnit.SECONDS), "newer");
+            Assert.assertEquals(cache.getIfPresent("key"), "newer");
+            Assert.assertEquals(cache.weightedSize(), 1);
+
+            // the entry the load started from is replaced, an invalidated one too
+            cache.invalidate("key");
+            Assert.assertEquals(cache.get("key", key -> "loaded"), "loaded");
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception
+    {
+        BoundedCache<Integer, Integer> cache = BoundedCache.<Integer, Integer> builder().maximumSize(500).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+            {
+                int seed = t;
+                futures.add(CompletableFuture.runAsync(() ->
+                {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 50_000; i++)
+                    {
+                        int key = random.nextInt(2_000);
+                        Assert.assertEquals(cache.get(key, k -> k * 2).intValue(), key * 2);
+                        if (i % 100 == 0)
+                        {
+                            cache.invalidate(random.nextInt(2_000));
+                        }
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        cache.cleanUp();
+        Assert.assertTrue(cache.estimatedSize() <= 500);
+        Assert.assertEquals(cache.weightedSize(), cache.estimatedSize());
+
+        cache.invalidateAll();
+        Assert.assertEquals(cache.estimatedSize(), 0);
+        Assert.assertEquals(cache.weightedSize(), 0);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.cache;
+
+/**
+ * Snapshot of the counters of a BoundedCache.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class CacheStats
+{
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long loadSuccessCount;
+
+    private final long loadFailureCount;
+
+    private final long totalLoadTime;
+
+    private final long evictionCount;
+
+    private final long evictionWeight;
+
+    private final long expirationCount;
+
+    CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTime,
+        long evictionCount, long evictionWeight, long expirationCount)
+    {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.evictionWeight = evictionWeight;
+        this.expirationCount = expirationCount;
+    }
+
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Lookups that found no live entry, whether they loaded a value, waited for a load in flight or returned null.
+     */
+    public long getMissCount()
+    {
+        return missCount;
+    }
+
+    public double getHitRate()
+    {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public long getLoadSuccessCount()
+    {
+        return loadSuccessCount;
+    }
+
+    /**
+     * Loads that threw or returned null.
+     */
+    public long getLoadFailureCount()
+    {
+        return loadFailureCount;
+    }
+
+    /**
+     * Nanoseconds spent in the loaders, successful or not.
+     */
+    public long getTotalLoadTime()
+    {
+        return totalLoadTime;
+    }
+
+    public double getAverageLoadPenalty()
+    {
+        long loads = loadSuccessCount + loadFailureCount;
+        return loads == 0 ? 0.0 : (double) totalLoadTime / loads;
+    }
+
+    /**
+     * Entries removed to respect the size or weight bound.
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    public long getEvictionWeight()
+    {
+        return evictionWeight;
+    }
+
+    /**
+     * Entries removed because they expired after write or after access.
+     */
+    public long getExpirationCount()
+    {
+        return expirationCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CacheStats[hits=" + hitCount + ", misses=" + missCount + ", loadSuccesses=" + loadSuccessCount
+            + ", loadFailures=" + loadFailureCount + ", totalLoadTime=" + totalLoadTime + "ns, evictions="
+            + evictionCount + ", evictionWeight=" + evictionWeight + ", expirations=" + expirationCount + "]";
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.cache;
+
+/**
+ * Entry of BoundedCache, linked in the deque of its region (access order) and in the write order deque.
+ *
+ * The value and the timestamps are read without the lock, the links and the state only under it.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class Node<K, V>
+{
+    enum Region
+    {
+        /**
+         * Not linked yet, or never again.
+         */
+        NONE,
+
+        /**
+         * The LRU window every new entry goes through.
+         */
+        WINDOW,
+
+        /**
+         * Main space, entries admitted from the window and not used since.
+         */
+        PROBATION,
+
+        /**
+         * Main space, entries used again after their admission.
+         */
+        PROTECTED
+    }
+
+    final K key;
+
+    final V value;
+
+    final int weight;
+
+    final long writeTime;
+
+    volatile long accessTime;
+
+    Region region = Region.NONE;
+
+    /**
+     * Set once the node left the cache: a late maintenance step must not link it again.
+     */
+    boolean retired;
+
+    Node<K, V> previousInAccessOrder;
+
+    Node<K, V> nextInAccessOrder;
+
+    Node<K, V> previousInWriteOrder;
+
+    Node<K, V> nextInWriteOrder;
+
+    Node(K key, V value, int weight, long now)
+    {
+        this.key = key;
+        this.value = value;
+        this.weight = weight;
+        this.writeTime = now;
+        this.accessTime = now;
+    }
+
+    boolean isLinked()
+    {
+        return region != Region.NONE;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.cache;
+
+/**
+ * Doubly linked deque threaded through the nodes themselves, either by their access order links or by their write
+ * order links: moving a node costs no allocation. Head is the least recent.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class NodeDeque<K, V>
+{
+    private final boolean writeOrder;
+
+    private Node<K, V> first;
+
+    private Node<K, V> last;
+
+    private NodeDeque(boolean writeOrder)
+    {
+        this.writeOrder = writeOrder;
+    }
+
+    static <K, V> NodeDeque<K, V> accessOrder()
+    {
+        return new NodeDeque<>(false);
+    }
+
+    static <K, V> NodeDeque<K, V> writeOrder()
+    {
+        return new NodeDeque<>(true);
+    }
+
+    Node<K, V> peekFirst()
+    {
+        return first;
+    }
+
+    Node<K, V> peekLast()
+    {
+        return last;
+    }
+
+    Node<K, V> next(Node<K, V> node)
+    {
+        return writeOrder ? node.nextInWriteOrder : node.nextInAccessOrder;
+    }
+
+    void addLast(Node<K, V> node)
+    {
+        setPrevious(node, last);
+        setNext(node, null);
+        if (last == null)
+        {
+            first = node;
+        }
+        else
+        {
+            setNext(last, node);
+        }
+        last = node;
+    }
+
+    void remove(Node<K, V> node)
+    {
+        Node<K, V> previous = writeOrder ? node.previousInWriteOrder : node.previousInAccessOrder;
+        Node<K, V> next = next(node);
+        if (previous == null)
+        {
+            first = next;
+        }
+        else
+        {
+            setNext(previous, next);
+        }
+        if (next == null)
+        {
+            last = previous;
+        }
+        else
+        {
+            setPrevious(next, previous);
+        }
+        setPrevious(node, null);
+        setNext(node, null);
+    }
+
+    void moveToBack(Node<K, V> node)
+    {
+        if (node != last)
+        {
+            remove(node);
+            addLast(node);
+        }
+    }
+
+    void clear()
+    {
+        first = null;
+        last = null;
+    }
+
+    private void setPrevious(Node<K, V> node, Node<K, V> previous)
+    {
+        if (writeOrder)
+        {
+            node.previousInWriteOrder = previous;
+        }
+        else
+        {
+            node.previousInAccessOrder = previous;
+        }
+    }
+
+    private void setNext(Node<K, V> node, Node<K, V> next)
+    {
+        if (writeOrder)
+        {
+            node.nextInWriteOrder = next;
+        }
+        else
+        {
+            node.nextInAccessOrder = next;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.counter;
+
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+import com.acocco.java8.stream.collector.TopKCollectors;
+
+
+/**
+ * Counters per key for concurrent aggregation, the replacement of {@code map.merge(key, 1L, Long::sum)} or of
+ * compute on a ConcurrentHashMap, which serialize every writer of a hot key on the lock of its bin.
+ *
+ * Every key owns a LongAdder: a base value while it is uncontended, then striped cells padded to their own cache line
+ * (one per contending thread, up to the number of cores) that the writers update without locks nor false sharing,
+ * and that reads sum up. The bin lock is taken only the first time a key is seen, so the writes keep scaling with the
+ * cores even when all the threads count the same few keys. A key nobody contends costs a single LongAdder.
+ *
+ * Reads are weakly consistent: a sum, a snapshot or a topN taken while writers are running sees each increment
+ * either entirely or not at all, but not at the same instant for all the keys. remove and reset may lose the
+ * increments racing with them.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class ConcurrentCounterMap<K>
+{
+    private final ConcurrentHashMap<K, LongAdder> counters;
+
+    public ConcurrentCounterMap()
+    {
+        counters = new ConcurrentHashMap<>();
+    }
+
+    public ConcurrentCounterMap(int expectedKeys)
+    {
+        counters = new ConcurrentHashMap<>(expectedKeys);
+    }
+
+    public void add(K key, long delta)
+    {
+        counter(key).add(delta);
+    }
+
+    public void increment(K key)
+    {
+        counter(key).increment();
+    }
+
+    public void decrement(K key)
+    {
+        counter(key).decrement();
+    }
+
+    /**
+     * The count of the key, 0 when it was never counted.
+     */
+    public long get(K key)
+    {
+        LongAdder counter = counters.get(key);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Forgets the key and returns its last count.
+     */
+    public long remove(K key)
+    {
+        LongAdder counter = counters.remove(key);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Sets the count of the key to 0 and returns the count it had, the key stays in the map.
+     */
+    public long reset(K key)
+    {
+        LongAdder counter = counters.get(key);
+        return counter == null ? 0 : counter.sumThenReset();
+    }
+
+    public boolean containsKey(K key)
+    {
+        return counters.containsKey(key);
+    }
+
+    /**
+     * Number of keys counted.
+     */
+    public int size()
+    {
+        return counters.size();
+    }
+
+    /**
+     * Sum of all the counts.
+     */
+    public long total()
+    {
+        long total = 0;
+        for (LongAdder counter : counters.values())
+        {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    public void forEach(ObjLongConsumer<? super K> action)
+    {
+        counters.forEach((key, counter) -> action.accept(key, counter.sum()));
+    }
+
+    /**
+     * Copy of the counts, see the class comment for its consistency.
+     */
+    public Map<K, Long> snapshot()
+    {
+        Map<K, Long> snapshot = new HashMap<>(counters.size() * 2);
+        forEach(snapshot::put);
+        return snapshot;
+    }
+
+    /**
+     * Copy of the counts that resets them to 0, for periodic flushes. An increment racing with the reset of its key
+     * may be lost.
+     */
+    public Map<K, Long> snapshotThenReset()
+    {
+        Map<K, Long> snapshot = new HashMap<>(counters.size() * 2);
+        counters.forEach((key, counter) -> snapshot.put(key, counter.sumThenReset()));
+        return snapshot;
+    }
+
+    /**
+     * The n keys with the highest counts, highest first, from a bounded heap instead of sorting all the keys.
+     */
+    public List<Map.Entry<K, Long>> topN(int n)
+    {
+        return counters.entrySet().stream()
+            .map(e -> (Map.Entry<K, Long>) new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue().sum()))
+            .collect(TopKCollectors.topK(n, Comparator.comparingLong(Map.Entry::getValue)));
+    }
+
+    private LongAdder counter(K key)
+    {
+        // get first: computeIfAbsent would lock the bin of a present key on every call in Java 8
+        LongAdder counter = counters.get(key);
+        return counter != null ? counter : counters.computeIfAbsent(key, k -> new LongAdder());
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.counter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * Counting events per key from many threads, with a heavily skewed key distribution.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class ConcurrentCounterMapTest
+{
+    @Test
+    public void testCounts()
+    {
+        ConcurrentCounterMap<String> counts = new ConcurrentCounterMap<>();
+        for (String word : "the cat and the dog and the bird".split(" "))
+        {
+            counts.increment(word);
+        }
+        counts.add("cat", 10);
+        counts.decrement("dog");
+
+        Assert.assertEquals(counts.get("the"), 3);
+        Assert.assertEquals(counts.get("cat"), 11);
+        Assert.assertEquals(counts.get("dog"), 0);
+        Assert.assertEquals(counts.get("fish"), 0);
+        Assert.assertFalse(counts.containsKey("fish"));
+        Assert.assertEquals(counts.size(), 5);
+        Assert.assertEquals(counts.total(), 17);
+
+        List<Map.Entry<String, Long>> top = counts.topN(2);
+        Assert.assertEquals(top.get(0).getKey(), "cat");
+        Assert.assertEquals(top.get(1).getKey(), "the");
+        Assert.assertEquals(top.get(1).getValue().longValue(), 3);
+
+        Assert.assertEquals(counts.reset("cat"), 11);
+        Assert.assertEquals(counts.remove("the"), 3);
+        Map<String, Long> snapshot = counts.snapshotThenReset();
+        Assert.assertEquals(snapshot.get("and").longValue(), 2);
+        Assert.assertEquals(snapshot.get("cat").longValue(), 0);
+        Assert.assertFalse(snapshot.containsKey("the"));
+        Assert.assertEquals(counts.total(), 0);
+    }
+
+    @Test
+    public void testConcurrentSkewedCounts() throws Exception
+    {
+        ConcurrentCounterMap<Integer> counts = new ConcurrentCounterMap<>();
+        int threads = 4;
+        int events = 200_000;
+        long[][] expected = new long[threads][1_000];
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                long[] mine = expected[t];
+                int seed = t;
+                futures.add(CompletableFuture.runAsync(() ->
+                {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < events; i++)
+                    {
+                        // cubic skew: key 0 gets about 10% of the events
+                        double u = random.nextDouble();
+                        int key = (int) (u * u * u * 1_000);
+                        counts.increment(key);
+                        mine[key]++;
+                    }
+                }, executor));
+            }
+
+            // concurrent reads never see a count going down nor above the final one
+            CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+            long previous = 0;
+            while (!all.isDone())
+            {
+                long current = counts.get(0);
+                Assert.assertTrue(current >= previous);
+                previous = current;
+            }
+            all.get(60, TimeUnit.SECONDS);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(counts.total(), (long) threads * events);
+        Map<Integer, Long> snapshot = counts.snapshot();
+        for (int key = 0; key < 1_000; key++)
+        {
+            long sum = 0;
+            for (long[] mine : expected)
+            {
+                sum += mine[key];
+            }
+            Assert.assertEquals(snapshot.getOrDefault(key, 0L).longValue(), sum);
+        }
+        Assert.assertEquals(counts.topN(1).get(0).getKey().intValue(), 0);
+    }
+}
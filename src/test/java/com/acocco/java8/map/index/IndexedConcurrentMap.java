@@ -0,0 +1,446 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+
+/**
+ * ConcurrentHashMap that keeps an inverted index over the text of its values, so that the searchValues lookups of
+ * MapTest ({@code value.contains("Professional")}) read a few posting sets instead of scanning the whole table.
+ *
+ * Two indexes are kept: the lower case words of the text, for token queries, and its character trigrams, for
+ * substring queries. A substring query intersects the postings of the trigrams of the query and checks the few
+ * surviving candidates with String.contains; queries shorter than a trigram fall back to a scan.
+ *
+ * Every write goes through ConcurrentHashMap.compute, which updates the postings of the key while holding its bin:
+ * the updates of one key are serialized and the index never keeps postings of a value that was replaced. Queries
+ * check the current value of every candidate, so they are weakly consistent as the ConcurrentHashMap bulk
+ * operations are.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class IndexedConcurrentMap<K, V>
+{
+    static final int GRAM = 3;
+
+    private final ConcurrentHashMap<K, V> data = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Set<K>> tokenPostings = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Set<K>> gramPostings = new ConcurrentHashMap<>();
+
+    private final Function<? super V, String> text;
+
+    /**
+     * @param text
+     *            the text of a value that is indexed and searched
+     */
+    public IndexedConcurrentMap(Function<? super V, String> text)
+    {
+        this.text = Objects.requireNonNull(text);
+    }
+
+    /**
+     * Map indexing its String values as they are.
+     */
+    public static <K> IndexedConcurrentMap<K, String> forStrings()
+    {
+        return new IndexedConcurrentMap<>(Function.identity());
+    }
+
+    // --- map operations, all the writes go through compute
+
+    public V get(Object key)
+    {
+        return data.get(key);
+    }
+
+    public V getOrDefault(Object key, V defaultValue)
+    {
+        return data.getOrDefault(key, defaultValue);
+    }
+
+    public boolean containsKey(Object key)
+    {
+        return data.containsKey(key);
+    }
+
+    public int size()
+    {
+        return data.size();
+    }
+
+    public boolean isEmpty()
+    {
+        return data.isEmpty();
+    }
+
+    public V put(K key, V value)
+    {
+        Objects.requireNonNull(value);
+        Object[] previous = new Object[1];
+        compute(key, (k, old) ->
+        {
+            previous[0] = old;
+            return value;
+        });
+        return cast(previous[0]);
+    }
+
+    public V putIfAbsent(K key, V value)
+    {
+        Objects.requireNonNull(value);
+        Object[] previous = new Object[1];
+        compute(key, (k, old) ->
+        {
+            previous[0] = old;
+            return old == null ? value : old;
+        });
+        return cast(previous[0]);
+    }
+
+    public V remove(Object key)
+    {
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        Object[] previous = new Object[1];
+        data.computeIfPresent(k, (ignored, old) ->
+        {
+            previous[0] = old;
+            unindex(k, old);
+            return null;
+        });
+        return cast(previous[0]);
+    }
+
+    public boolean remove(Object key, Object value)
+    {
+        Objects.requireNonNull(value);
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        boolean[] removed = new boolean[1];
+        data.computeIfPresent(k, (ignored, old) ->
+        {
+            if (!old.equals(value))
+            {
+                return old;
+            }
+            removed[0] = true;
+            unindex(k, old);
+            return null;
+        });
+        return removed[0];
+    }
+
+    public V replace(K key, V value)
+    {
+        Objects.requireNonNull(value);
+        Object[] previous = new Object[1];
+        computeIfPresent(key, (k, old) ->
+        {
+            previous[0] = old;
+            return value;
+        });
+        return cast(previous[0]);
+    }
+
+    public boolean replace(K key, V oldValue, V newValue)
+    {
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        boolean[] replaced = new boolean[1];
+        computeIfPresent(key, (k, old) ->
+        {
+            replaced[0] = old.equals(oldValue);
+            return replaced[0] ? newValue : old;
+        });
+        return replaced[0];
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction)
+    {
+        Objects.requireNonNull(mappingFunction);
+        V value = data.get(key);
+        if (value != null)
+        {
+            return value;
+        }
+        return data.computeIfAbsent(key, k ->
+        {
+            V computed = mappingFunction.apply(k);
+            if (computed != null)
+            {
+                index(k, computed);
+            }
+            return computed;
+        });
+    }
+
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(remappingFunction);
+        return data.computeIfPresent(key, (k, old) -> reindex(k, old, remappingFunction.apply(k, old)));
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(remappingFunction);
+        return data.compute(key, (k, old) -> reindex(k, old, remappingFunction.apply(k, old)));
+    }
+
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        return compute(key, (k, old) -> old == null ? value : remappingFunction.apply(old, value));
+    }
+
+    public void forEach(BiConsumer<? super K, ? super V> action)
+    {
+        data.forEach(action);
+    }
+
+    /**
+     * Read only view of the entries, writes must go through this map to keep the index.
+     */
+    public Map<K, V> asMap()
+    {
+        return Collections.unmodifiableMap(data);
+    }
+
+    // --- indexed queries
+
+    /**
+     * The first non null result of the function over the entries whose text contains the substring, as
+     * ConcurrentHashMap.search but reading only the candidates of the trigram index.
+     */
+    public <U> U search(String substring, BiFunction<? super K, ? super V, ? extends U> searchFunction)
+    {
+        Objects.requireNonNull(searchFunction);
+        if (substring.length() < GRAM)
+        {
+            return data.search(Long.MAX_VALUE, (key, value) ->
+                text.apply(value).contains(substring) ? searchFunction.apply(key, value) : null);
+        }
+        for (K key : candidates(gramPostings, grams(substring)))
+        {
+            V value = data.get(key);
+            if (value != null && text.apply(value).contains(substring))
+            {
+                U result = searchFunction.apply(key, value);
+                if (result != null)
+                {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The first non null result of the function over the values whose text contains the substring.
+     */
+    public <U> U searchValues(String substring, Function<? super V, ? extends U> searchFunction)
+    {
+        Objects.requireNonNull(searchFunction);
+        return search(substring, (key, value) -> searchFunction.apply(value));
+    }
+
+    /**
+     * The keys whose text contains the substring.
+     */
+    public Set<K> keysContaining(String substring)
+    {
+        Set<K> keys = new HashSet<>();
+        search(substring, (key, value) ->
+        {
+            keys.add(key);
+            return null;
+        });
+        return keys;
+    }
+
+    /**
+     * The keys whose text contains every token as a whole word, ignoring case.
+     */
+    public Set<K> keysWithTokens(String... tokens)
+    {
+        Set<String> query = new HashSet<>();
+        for (String token : tokens)
+        {
+            query.addAll(tokens(token));
+        }
+        Set<K> keys = new HashSet<>();
+        if (query.isEmpty())
+        {
+            return keys;
+        }
+        for (K key : candidates(tokenPostings, query))
+        {
+            V value = data.get(key);
+            if (value != null && tokens(text.apply(value)).containsAll(query))
+            {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Number of distinct tokens and trigrams indexed.
+     */
+    public int indexSize()
+    {
+        return tokenPostings.size() + gramPostings.size();
+    }
+
+    // --- index maintenance, called inside the compute of the key
+
+    private V reindex(K key, V oldValue, V newValue)
+    {
+        if (oldValue != null)
+        {
+            unindex(key, oldValue);
+        }
+        if (newValue != null)
+        {
+            index(key, newValue);
+        }
+        return newValue;
+    }
+
+    private void index(K key, V value)
+    {
+        String content = text.apply(value);
+        for (String token : tokens(content))
+        {
+            add(tokenPostings, token, key);
+        }
+        for (String gram : grams(content))
+        {
+            add(gramPostings, gram, key);
+        }
+    }
+
+    private void unindex(K key, V value)
+    {
+        String content = text.apply(value);
+        for (String token : tokens(content))
+        {
+            remove(tokenPostings, token, key);
+        }
+        for (String gram : grams(content))
+        {
+            remove(gramPostings, gram, key);
+        }
+    }
+
+    private static <K> void add(ConcurrentHashMap<String, Set<K>> postings, String term, K key)
+    {
+        postings.compute(term, (t, keys) ->
+        {
+            Set<K> result = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            result.add(key);
+            return result;
+        });
+    }
+
+    private static <K> void remove(ConcurrentHashMap<String, Set<K>> postings, String term, K key)
+    {
+        postings.computeIfPresent(term, (t, keys) ->
+        {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * The keys present in the postings of every term, smallest posting set first.
+     */
+    private static <K> List<K> candidates(ConcurrentHashMap<String, Set<K>> postings, Set<String> terms)
+    {
+        List<Set<K>> sets = new ArrayList<>(terms.size());
+        for (String term : terms)
+        {
+            Set<K> keys = postings.get(term);
+            if (keys == null)
+            {
+                return Collections.emptyList();
+            }
+            sets.add(keys);
+        }
+        sets.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        List<K> result = new ArrayList<>();
+        Set<K> smallest = sets.get(0);
+        for (K key : smallest)
+        {
+            boolean everywhere = true;
+            for (int i = 1; i < sets.size() && everywhere; i++)
+            {
+                everywhere = sets.get(i).contains(key);
+            }
+            if (everywhere)
+            {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The lower case words of the text, letters and digits.
+     */
+    static Set<String> tokens(String text)
+    {
+        Set<String> tokens = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++)
+        {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0)
+            {
+                start = i;
+            }
+            else if (!wordChar && start >= 0)
+            {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * The distinct substrings of GRAM characters of the text, case sensitive as String.contains.
+     */
+    static Set<String> grams(String text)
+    {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++)
+        {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value)
+    {
+        return (V) value;
+    }
+}
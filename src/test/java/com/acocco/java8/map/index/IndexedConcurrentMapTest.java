@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * The searchValues lookup of MapTest answered from an inverted index, checked against a full scan.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class IndexedConcurrentMapTest
+{
+    private static final List<String> WORDS = Arrays.asList("Engineer", "Professional", "Services", "BA", "Liquid",
+        "Corporate", "Senior", "Manager", "Sales", "Data", "Platform", "Team");
+
+    @Test
+    public void testMapTestSearch()
+    {
+        IndexedConcurrentMap<String, String> map = IndexedConcurrentMap.forStrings();
+        map.put("antonio", "Engineer, Professional Services");
+        map.put("davide", "Engineer, BA Liquid Corporate");
+        map.put("andrea", "Engineer, BA Liquid Corporate");
+
+        String result = map.searchValues("Professional", value -> value);
+        Assert.assertEquals(result, "Engineer, Professional Services");
+        Assert.assertEquals(map.search("Liquid", (key, value) -> "davide".equals(key) ? value : null),
+            "Engineer, BA Liquid Corporate");
+        Assert.assertNull(map.searchValues("professional", value -> value));   // case sensitive, as contains
+
+        Assert.assertEquals(map.keysContaining("BA"), new HashSet<>(Arrays.asList("davide", "andrea")));
+        Assert.assertEquals(map.keysWithTokens("engineer", "SERVICES"), new HashSet<>(Arrays.asList("antonio")));
+        Assert.assertTrue(map.keysWithTokens("Serv").isEmpty());               // tokens are whole words
+
+        map.computeIfPresent("antonio", (key, value) -> value.replace("Professional", "Consulting"));
+        Assert.assertNull(map.searchValues("Professional", value -> value));
+        Assert.assertEquals(map.keysContaining("Consult"), new HashSet<>(Arrays.asList("antonio")));
+
+        map.remove("davide");
+        map.remove("andrea", "Engineer, BA Liquid Corporate");
+        Assert.assertTrue(map.keysContaining("Liquid").isEmpty());
+        Assert.assertEquals(map.size(), 1);
+    }
+
+    @Test
+    public void testRandomUpdates_SameAsScan()
+    {
+        Random random = new Random(42);
+        IndexedConcurrentMap<Integer, String> map = IndexedConcurrentMap.forStrings();
+        for (int i = 0; i < 20_000; i++)
+        {
+            int key = random.nextInt(2_000);
+            switch (random.nextInt(4))
+            {
+                case 0:
+                    map.remove(key);
+                    break;
+                case 1:
+                    map.merge(key, randomTitle(random), (a, b) -> a + ", " + b);
+                    break;
+                default:
+                    map.put(key, randomTitle(random));
+            }
+        }
+
+        for (int i = 0; i < 200; i++)
+        {
+            String word = WORDS.get(random.nextInt(WORDS.size()));
+            int from = random.nextInt(word.length());
+            String substring = word.substring(from, from + 1 + random.nextInt(word.length() - from));
+            Assert.assertEquals(new TreeSet<>(map.keysContaining(substring)), scan(map.asMap(), substring),
+                substring);
+        }
+        // the postings of removed and replaced values are gone
+        Assert.assertTrue(map.indexSize() < 2_000);
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception
+    {
+        IndexedConcurrentMap<Integer, String> map = IndexedConcurrentMap.forStrings();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+            {
+                int seed = t;
+                futures.add(CompletableFuture.runAsync(() ->
+                {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 20_000; i++)
+                    {
+                        int key = random.nextInt(500);
+                        if (random.nextInt(5) == 0)
+                        {
+                            map.remove(key);
+                        }
+                        else
+                        {
+                            map.put(key, randomTitle(random));
+                        }
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        for (String word : WORDS)
+        {
+            Set<Integer> expected = scan(map.asMap(), word);
+            Assert.assertEquals(new TreeSet<>(map.keysContaining(word)), expected, word);
+            Assert.assertEquals(new TreeSet<>(map.keysWithTokens(word)), expected, word);
+        }
+    }
+
+    private static String randomTitle(Random random)
+    {
+        return random.ints(2 + random.nextInt(3), 0, WORDS.size()).mapToObj(WORDS::get)
+            .collect(Collectors.joining(" "));
+    }
+
+    /**
+     * Sorted, TestNG compares sets in iteration order.
+     */
+    private static Set<Integer> scan(Map<Integer, String> map, String substring)
+    {
+        return map.entrySet().stream().filter(e -> e.getValue().contains(substring)).map(Map.Entry::getKey)
+            .collect(Collectors.toCollection(TreeSet::new));
+    }
+}
@@ -0,0 +1,477 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.offheap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+
+/**
+ * String to String map stored outside the heap, for tables of tens of millions of entries such as the job titles by
+ * person of MapTest: the garbage collector sees a few buffers per segment instead of two Strings and a node per
+ * entry.
+ *
+ * The keys are spread over segments by the high bits of the hash of their UTF-8 bytes. Every segment appends its
+ * records to a slab (a direct ByteBuffer, or a MappedByteBuffer over a file) and indexes them in an off-heap open
+ * addressing table, see Segment. Lookups compare the bytes in place and decode a String only for the value returned.
+ *
+ * Every segment has a StampedLock: reads of a segment run concurrently under its read lock, writes take its write
+ * lock and never block the other segments. Replaced and removed records stay as garbage in the slab until the
+ * segment is compacted, automatically when it is full and a quarter of it is garbage, or by compact.
+ *
+ * A map opened on a directory maps one file per segment: after close (or flush) and a restart, open maps the files
+ * back and rebuilds the indexes with one sequential scan, without reading the entries into the heap. A manifest
+ * records the segment count, opening with another one fails. Nothing is synced before flush or close, and a crash
+ * during a compaction may lose the segment.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class OffHeapStringMap implements AutoCloseable
+{
+    private static final int DEFAULT_SEGMENT_CAPACITY = 1 << 20;
+
+    private static final String MANIFEST = "segments";
+
+    private final Segment[] segments;
+
+    private final StampedLock[] locks;
+
+    private final FileChannel[] channels;
+
+    private final int shift;
+
+    private volatile boolean closed;
+
+    private OffHeapStringMap(int segmentCount)
+    {
+        int count = Integer.highestOneBit(Math.max(2, segmentCount) - 1) << 1;
+        this.segments = new Segment[count];
+        this.locks = new StampedLock[count];
+        this.channels = new FileChannel[count];
+        this.shift = 32 - Integer.numberOfTrailingZeros(count);
+        for (int i = 0; i < count; i++)
+        {
+            locks[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * Map in direct memory, lost on close.
+     */
+    public static OffHeapStringMap allocate(int segmentCount)
+    {
+        return allocate(segmentCount, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * @param segmentCapacity
+     *            initial bytes of every slab, they double when full
+     */
+    public static OffHeapStringMap allocate(int segmentCount, int segmentCapacity)
+    {
+        OffHeapStringMap map = new OffHeapStringMap(segmentCount);
+        for (int i = 0; i < map.segments.length; i++)
+        {
+            map.segments[i] = new Segment(segmentCapacity);
+        }
+        return map;
+    }
+
+    /**
+     * Map persisted in the directory, mapping back the segment files already there. The segment count, rounded up to
+     * a power of two, must be the one the files were written with.
+     */
+    public static OffHeapStringMap open(Path directory, int segmentCount) throws IOException
+    {
+        return open(directory, segmentCount, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    public static OffHeapStringMap open(Path directory, int segmentCount, int segmentCapacity) throws IOException
+    {
+        Files.createDirectories(directory);
+        OffHeapStringMap map = new OffHeapStringMap(segmentCount);
+        try
+        {
+            checkSegmentCount(directory, map.segments.length);
+            for (int i = 0; i < map.segments.length; i++)
+            {
+                map.channels[i] = FileChannel.open(directory.resolve("segment-" + i + ".dat"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                map.segments[i] = new Segment(map.channels[i], segmentCapacity);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            map.close();
+            throw e;
+        }
+        return map;
+    }
+
+    /**
+     * The keys go to the segment of their hash: files written with another count would be looked up in the wrong
+     * segments. The count is kept in a manifest, written with the first segment files of the directory.
+     */
+    private static void checkSegmentCount(Path directory, int count) throws IOException
+    {
+        Path manifest = directory.resolve(MANIFEST);
+        int written;
+        if (Files.exists(manifest))
+        {
+            String content = new String(Files.readAllBytes(manifest), StandardCharsets.US_ASCII).trim();
+            try
+            {
+                written = Integer.parseInt(content);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException("corrupted manifest " + manifest + ": " + content);
+            }
+        }
+        else
+        {
+            try (Stream<Path> files = Files.list(directory))
+            {
+                written = (int) files.filter(file -> file.getFileName().toString().matches("segment-\\d+\\.dat"))
+                    .count();
+            }
+            if (written == 0)
+            {
+                written = count;
+            }
+            Files.write(manifest, Integer.toString(written).getBytes(StandardCharsets.US_ASCII));
+        }
+        if (written != count)
+        {
+            throw new IOException(directory + " was written with " + written + " segments, not " + count);
+        }
+    }
+
+    public String get(String key)
+    {
+        byte[] bytes = encode(key);
+        int hash = hash(bytes);
+        int index = segmentIndex(hash);
+        long stamp = locks[index].readLock();
+        try
+        {
+            checkOpen();
+            return segments[index].get(bytes, hash);
+        }
+        finally
+        {
+            locks[index].unlockRead(stamp);
+        }
+    }
+
+    public String getOrDefault(String key, String defaultValue)
+    {
+        String value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public boolean containsKey(String key)
+    {
+        byte[] bytes = encode(key);
+        int hash = hash(bytes);
+        int index = segmentIndex(hash);
+        long stamp = locks[index].readLock();
+        try
+        {
+            checkOpen();
+            return segments[index].containsKey(bytes, hash);
+        }
+        finally
+        {
+            locks[index].unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Stores the value, returns the previous one or null.
+     */
+    public String put(String key, String value)
+    {
+        return put(key, value, false, true);
+    }
+
+    /**
+     * Stores the value without decoding the previous one.
+     */
+    public void set(String key, String value)
+    {
+        put(key, value, false, false);
+    }
+
+    public String putIfAbsent(String key, String value)
+    {
+        return put(key, value, true, true);
+    }
+
+    private String put(String key, String value, boolean onlyIfAbsent, boolean previous)
+    {
+        byte[] bytes = encode(key);
+        byte[] valueBytes = encode(value);
+        int hash = hash(bytes);
+        int index = segmentIndex(hash);
+        long stamp = locks[index].writeLock();
+        try
+        {
+            checkOpen();
+            return segments[index].put(bytes, valueBytes, hash, onlyIfAbsent, previous);
+        }
+        finally
+        {
+            locks[index].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the key, returns its value or null.
+     */
+    public String remove(String key)
+    {
+        return remove(key, true);
+    }
+
+    /**
+     * Removes the key without decoding its value, false when it was absent.
+     */
+    public boolean delete(String key)
+    {
+        return remove(key, false) != null;
+    }
+
+    private String remove(String key, boolean previous)
+    {
+        byte[] bytes = encode(key);
+        int hash = hash(bytes);
+        int index = segmentIndex(hash);
+        long stamp = locks[index].writeLock();
+        try
+        {
+            checkOpen();
+            return segments[index].remove(bytes, hash, previous);
+        }
+        finally
+        {
+            locks[index].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Number of entries, summed segment by segment.
+     */
+    public long size()
+    {
+        long size = 0;
+        for (int i = 0; i < segments.length; i++)
+        {
+            long stamp = locks[i].readLock();
+            try
+            {
+                checkOpen();
+                size += segments[i].size();
+            }
+            finally
+            {
+                locks[i].unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Calls the action for every entry, one segment at a time under its read lock: the action must not write to
+     * the map.
+     */
+    public void forEach(BiConsumer<String, String> action)
+    {
+        Objects.requireNonNull(action);
+        for (int i = 0; i < segments.length; i++)
+        {
+            long stamp = locks[i].readLock();
+            try
+            {
+                checkOpen();
+                segments[i].forEach(action);
+            }
+            finally
+            {
+                locks[i].unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Reclaims the bytes of the replaced and removed records, one segment at a time.
+     */
+    public void compact()
+    {
+        for (int i = 0; i < segments.length; i++)
+        {
+            long stamp = locks[i].writeLock();
+            try
+            {
+                checkOpen();
+                segments[i].compact();
+            }
+            finally
+            {
+                locks[i].unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Bytes of the slabs holding records, live or garbage.
+     */
+    public long usedBytes()
+    {
+        return sum(true);
+    }
+
+    /**
+     * Bytes of the slabs holding replaced or removed records.
+     */
+    public long garbageBytes()
+    {
+        return sum(false);
+    }
+
+    private long sum(boolean used)
+    {
+        long sum = 0;
+        for (int i = 0; i < segments.length; i++)
+        {
+            long stamp = locks[i].readLock();
+            try
+            {
+                checkOpen();
+                sum += used ? segments[i].used() : segments[i].garbage();
+            }
+            finally
+            {
+                locks[i].unlockRead(stamp);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Forces the segment files to the disk, nothing to do in direct memory.
+     */
+    public void flush()
+    {
+        for (int i = 0; i < segments.length; i++)
+        {
+            long stamp = locks[i].readLock();
+            try
+            {
+                checkOpen();
+                segments[i].flush();
+            }
+            finally
+            {
+                locks[i].unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Flushes and closes the files. The direct and mapped memory is released by the garbage collector, Java 8 has no
+     * public way to free it.
+     */
+    @Override
+    public void close()
+    {
+        IOException failure = null;
+        for (int i = 0; i < segments.length; i++)
+        {
+            long stamp = locks[i].writeLock();
+            try
+            {
+                if (!closed && segments[i] != null)
+                {
+                    segments[i].flush();
+                }
+            }
+            finally
+            {
+                try
+                {
+                    if (channels[i] != null)
+                    {
+                        channels[i].close();
+                    }
+                }
+                catch (IOException e)
+                {
+                    failure = e;
+                }
+                finally
+                {
+                    locks[i].unlockWrite(stamp);
+                }
+            }
+        }
+        closed = true;
+        for (int i = 0; i < segments.length; i++)
+        {
+            segments[i] = null;
+        }
+        if (failure != null)
+        {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("map closed");
+        }
+    }
+
+    private int segmentIndex(int hash)
+    {
+        return hash >>> shift;
+    }
+
+    private static byte[] encode(String s)
+    {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, then mixed so that the high bits (segment) and the low bits (slot) both vary.
+     */
+    static int hash(byte[] bytes)
+    {
+        int h = 0x811c9dc5;
+        for (byte b : bytes)
+        {
+            h ^= b;
+            h *= 0x01000193;
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.offheap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * The job titles map of MapTest stored off heap, in direct memory and in mapped files.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class OffHeapStringMapTest
+{
+    @Test
+    public void testJobTitles()
+    {
+        try (OffHeapStringMap map = OffHeapStringMap.allocate(4))
+        {
+            Assert.assertNull(map.put("antonio", "Engineer, Professional Services"));
+            map.put("davide", "Engineer, BA Liquid Corporate");
+            map.put("andrea", "Engineer, BA Liquid Corporate");
+            map.put("zo\u00eb", "Ingegnera, Servizi Professionali \u2713");
+
+            Assert.assertEquals(map.get("davide"), "Engineer, BA Liquid Corporate");
+            Assert.assertEquals(map.get("zo\u00eb"), "Ingegnera, Servizi Professionali \u2713");
+            Assert.assertNull(map.get("mauro"));
+            Assert.assertEquals(map.getOrDefault("mauro", "not found"), "not found");
+            Assert.assertEquals(map.size(), 4);
+
+            Assert.assertEquals(map.put("antonio", "Architect"), "Engineer, Professional Services");
+            Assert.assertEquals(map.putIfAbsent("antonio", "Manager"), "Architect");
+            Assert.assertEquals(map.remove("andrea"), "Engineer, BA Liquid Corporate");
+            Assert.assertFalse(map.delete("andrea"));
+            Assert.assertFalse(map.containsKey("andrea"));
+            Assert.assertEquals(map.size(), 3);
+            Assert.assertTrue(map.garbageBytes() > 0);
+
+            map.compact();
+            Assert.assertEquals(map.garbageBytes(), 0);
+            Map<String, String> all = new HashMap<>();
+            map.forEach(all::put);
+            Assert.assertEquals(all.size(), 3);
+            Assert.assertEquals(all.get("antonio"), "Architect");
+        }
+    }
+
+    @Test
+    public void testDirectMemory_FlushAndClose()
+    {
+        // on Java 8 a direct buffer is a MappedByteBuffer too, flush and close must not force it
+        OffHeapStringMap map = OffHeapStringMap.allocate(4);
+        map.put("antonio", "Engineer, Professional Services");
+        map.flush();
+        map.close();
+        try
+        {
+            map.get("antonio");
+            Assert.fail();
+        }
+        catch (IllegalStateException e)
+        {
+            Assert.assertEquals(e.getMessage(), "map closed");
+        }
+    }
+
+    @Test
+    public void testRandomOperations_GrowAndCompact()
+    {
+        Random random = new Random(42);
+        Map<String, String> expected = new HashMap<>();
+        // tiny slabs: they grow and compact many times
+        try (OffHeapStringMap map = OffHeapStringMap.allocate(4, 64))
+        {
+            for (int i = 0; i < 100_000; i++)
+            {
+                String key = "person-" + random.nextInt(5_000);
+                switch (random.nextInt(4))
+                {
+                    case 0:
+                        Assert.assertEquals(map.remove(key), expected.remove(key));
+                        break;
+                    case 1:
+                        Assert.assertEquals(map.get(key), expected.get(key));
+                        break;
+                    default:
+                        String value = "title-" + random.nextInt(1_000_000);
+                        Assert.assertEquals(map.put(key, value), expected.put(key, value));
+                }
+            }
+            Assert.assertEquals(map.size(), expected.size());
+            Map<String, String> all = new HashMap<>();
+            map.forEach(all::put);
+            Assert.assertEquals(all, expected);
+
+            long used = map.usedBytes();
+            map.compact();
+            Assert.assertTrue(map.usedBytes() <= used);
+            for (Map.Entry<String, String> entry : expected.entrySet())
+            {
+                Assert.assertEquals(map.get(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testPersistence_WarmStart() throws IOException
+    {
+        Path directory = Files.createTempDirectory("offheap-test");
+        try
+        {
+            try (OffHeapStringMap map = OffHeapStringMap.open(directory, 8, 256))
+            {
+                for (int i = 0; i < 10_000; i++)
+                {
+                    map.set("person-" + i, "title-" + i);
+                }
+                for (int i = 0; i < 10_000; i += 3)
+                {
+                    map.delete("person-" + i);
+                }
+                map.set("person-1", "updated");
+            }
+
+            try (OffHeapStringMap map = OffHeapStringMap.open(directory, 8))
+            {
+                Assert.assertEquals(map.size(), 10_000 - 3_334);
+                Assert.assertNull(map.get("person-0"));
+                Assert.assertEquals(map.get("person-1"), "updated");
+                Assert.assertEquals(map.get("person-9998"), "title-9998");
+                Assert.assertTrue(map.garbageBytes() > 0);
+
+                map.compact();
+                map.set("person-0", "back");
+            }
+
+            try (OffHeapStringMap map = OffHeapStringMap.open(directory, 8))
+            {
+                Assert.assertEquals(map.size(), 10_000 - 3_333);
+                Assert.assertEquals(map.get("person-0"), "back");
+                Assert.assertEquals(map.garbageBytes(), 0);
+            }
+
+            for (int segments : new int[] { 4, 16 })
+            {
+                try
+                {
+                    OffHeapStringMap.open(directory, segments).close();
+                    Assert.fail("opened with " + segments + " segments");
+                }
+                catch (IOException e)
+                {
+                    // expected
+                }
+            }
+            try (Stream<Path> files = Files.list(directory))
+            {
+                Assert.assertFalse(files.anyMatch(file -> file.endsWith("segment-8.dat")));
+            }
+        }
+        finally
+        {
+            try (Stream<Path> files = Files.list(directory))
+            {
+                for (Path file : (Iterable<Path>) files::iterator)
+                {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testConcurrentReadersAndWriters() throws Exception
+    {
+        try (OffHeapStringMap map = OffHeapStringMap.allocate(16, 1_024))
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try
+            {
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++)
+                {
+                    int thread = t;
+                    futures.add(CompletableFuture.runAsync(() ->
+                    {
+                        // every thread owns its keys and checks its own writes while the others write theirs
+                        for (int i = 0; i < 20_000; i++)
+                        {
+                            String key = thread + ":" + (i % 1_000);
+                            String value = "value-" + i;
+                            map.set(key, value);
+                            Assert.assertEquals(map.get(key), value);
+                        }
+                    }, executor));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+            Assert.assertEquals(map.size(), 4_000);
+            Assert.assertEquals(map.get("3:999"), "value-19999");
+        }
+    }
+}
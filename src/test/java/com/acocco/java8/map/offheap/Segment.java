@@ -0,0 +1,525 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.map.offheap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+
+/**
+ * One segment of OffHeapStringMap: a slab of records and an open addressing index over them, both outside the heap.
+ *
+ * The slab starts with a header (magic, write position, live records, garbage bytes) followed by the records
+ * appended one after the other: key length, value length, UTF-8 key, UTF-8 value. A record replaced or removed is
+ * marked dead by setting the sign bit of its key length; its bytes are garbage until compact slides the live records
+ * down over them.
+ *
+ * The index is a table of longs, the hash of the key in the high half and the record offset plus one in the low
+ * half, 0 for a free slot. It is not persisted: opening a file scans the records and rebuilds it.
+ *
+ * Not thread safe, OffHeapStringMap locks the segment around every call.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class Segment
+{
+    static final int MAGIC = 0x4f48534d;
+
+    static final int HEADER = 16;
+
+    private static final int RECORD_HEADER = 8;
+
+    private static final int DEAD = 0x80000000;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private final FileChannel channel;
+
+    private ByteBuffer slab;
+
+    private ByteBuffer index;
+
+    private int indexMask;
+
+    private int writePosition;
+
+    private int size;
+
+    private int garbage;
+
+    /**
+     * Segment in direct memory.
+     */
+    Segment(int capacity)
+    {
+        this.channel = null;
+        this.slab = ByteBuffer.allocateDirect(Math.max(HEADER + RECORD_HEADER, capacity));
+        this.writePosition = HEADER;
+        writeHeader();
+        allocateIndex(16);
+    }
+
+    /**
+     * Segment mapped from the file of the channel, the records already in the file are indexed again.
+     */
+    Segment(FileChannel channel, int capacity) throws IOException
+    {
+        this.channel = channel;
+        long length = Math.max(channel.size(), Math.max(HEADER + RECORD_HEADER, capacity));
+        if (length > MAX_CAPACITY)
+        {
+            throw new IOException("segment file too large: " + length);
+        }
+        this.slab = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        int magic = slab.getInt(0);
+        if (magic == 0)
+        {
+            writePosition = HEADER;
+            writeHeader();
+            allocateIndex(16);
+        }
+        else if (magic != MAGIC)
+        {
+            throw new IOException("not a segment file, magic " + Integer.toHexString(magic));
+        }
+        else
+        {
+            writePosition = slab.getInt(4);
+            rebuildIndex();
+        }
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    int garbage()
+    {
+        return garbage;
+    }
+
+    int capacity()
+    {
+        return slab.capacity();
+    }
+
+    int used()
+    {
+        return writePosition;
+    }
+
+    String get(byte[] key, int hash)
+    {
+        int slot = find(key, hash);
+        if (slot < 0)
+        {
+            return null;
+        }
+        int offset = recordOffset(slot);
+        return decode(offset + RECORD_HEADER + slab.getInt(offset), slab.getInt(offset + 4));
+    }
+
+    boolean containsKey(byte[] key, int hash)
+    {
+        return find(key, hash) >= 0;
+    }
+
+    /**
+     * Appends the record and indexes it, returns the previous value, or null, decoded only if previous is true.
+     */
+    String put(byte[] key, byte[] value, int hash, boolean onlyIfAbsent, boolean previous)
+    {
+        int slot = find(key, hash);
+        if (slot >= 0 && onlyIfAbsent)
+        {
+            int offset = recordOffset(slot);
+            return decode(offset + RECORD_HEADER + key.length, slab.getInt(offset + 4));
+        }
+
+        int recordSize = RECORD_HEADER + key.length + value.length;
+        if (recordSize < 0 || (long) recordSize + HEADER > MAX_CAPACITY)
+        {
+            throw new IllegalArgumentException("record too large: " + ((long) key.length + value.length) + " bytes");
+        }
+        if ((long) writePosition + recordSize > slab.capacity())
+        {
+            makeRoom(recordSize);
+            slot = find(key, hash);
+        }
+
+        int offset = writePosition;
+        slab.putInt(offset, key.length);
+        slab.putInt(offset + 4, value.length);
+        put(offset + RECORD_HEADER, key);
+        put(offset + RECORD_HEADER + key.length, value);
+        writePosition += recordSize;
+
+        String old = null;
+        if (slot >= 0)
+        {
+            int oldOffset = recordOffset(slot);
+            if (previous)
+            {
+                old = decode(oldOffset + RECORD_HEADER + key.length, slab.getInt(oldOffset + 4));
+            }
+            kill(oldOffset);
+            index.putLong(slot << 3, entry(hash, offset));
+        }
+        else
+        {
+            insert(hash, offset);
+        }
+        writeHeader();
+        return old;
+    }
+
+    /**
+     * Marks the record dead and drops it from the index. Returns null when the key is absent, otherwise its value if
+     * previous is true and an empty String if not.
+     */
+    String remove(byte[] key, int hash, boolean previous)
+    {
+        int slot = find(key, hash);
+        if (slot < 0)
+        {
+            return null;
+        }
+        int offset = recordOffset(slot);
+        String old = previous ? decode(offset + RECORD_HEADER + key.length, slab.getInt(offset + 4)) : "";
+        kill(offset);
+        deleteSlot(slot);
+        size--;
+        writeHeader();
+        return old;
+    }
+
+    /**
+     * Decodes every live record, in write order.
+     */
+    void forEach(BiConsumer<String, String> action)
+    {
+        for (int offset = HEADER; offset < writePosition;)
+        {
+            int keyLength = slab.getInt(offset);
+            int valueLength = slab.getInt(offset + 4);
+            int length = keyLength & ~DEAD;
+            if ((keyLength & DEAD) == 0)
+            {
+                action.accept(decode(offset + RECORD_HEADER, length),
+                    decode(offset + RECORD_HEADER + length, valueLength));
+            }
+            offset += RECORD_HEADER + length + valueLength;
+        }
+    }
+
+    /**
+     * Slides the live records down over the dead ones, in place, and indexes them again.
+     */
+    void compact()
+    {
+        if (garbage == 0)
+        {
+            return;
+        }
+        byte[] buffer = new byte[256];
+        int target = HEADER;
+        for (int offset = HEADER; offset < writePosition;)
+        {
+            int keyLength = slab.getInt(offset);
+            int recordSize = RECORD_HEADER + (keyLength & ~DEAD) + slab.getInt(offset + 4);
+            if ((keyLength & DEAD) == 0)
+            {
+                if (target != offset)
+                {
+                    // target < offset, copying in ascending chunks never overwrites bytes not yet copied
+                    for (int copied = 0; copied < recordSize; copied += buffer.length)
+                    {
+                        int chunk = Math.min(buffer.length, recordSize - copied);
+                        get(offset + copied, buffer, chunk);
+                        put(target + copied, buffer, chunk);
+                    }
+                }
+                target += recordSize;
+            }
+            offset += recordSize;
+        }
+        writePosition = target;
+        garbage = 0;
+        writeHeader();
+        rebuildIndex();
+    }
+
+    /**
+     * Forces the mapped records to the file.
+     */
+    void flush()
+    {
+        // not slab instanceof: on Java 8 a direct buffer is a MappedByteBuffer too, whose force throws
+        if (channel != null)
+        {
+            ((MappedByteBuffer) slab).force();
+        }
+    }
+
+    /**
+     * Compacts when at least a quarter of the slab is garbage, then doubles the slab while still too small.
+     */
+    private void makeRoom(int recordSize)
+    {
+        if (garbage >= slab.capacity() / 4)
+        {
+            compact();
+        }
+        long needed = (long) writePosition + recordSize;
+        if (needed > slab.capacity())
+        {
+            long capacity = slab.capacity();
+            while (capacity < needed)
+            {
+                capacity = Math.min(MAX_CAPACITY, capacity * 2);
+            }
+            grow((int) capacity);
+        }
+    }
+
+    private void grow(int capacity)
+    {
+        if (channel != null)
+        {
+            try
+            {
+                // the old mapping is released by the garbage collector, Java 8 has no unmap
+                slab = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+        else
+        {
+            ByteBuffer larger = ByteBuffer.allocateDirect(capacity);
+            ByteBuffer used = slab.duplicate();
+            used.position(0).limit(writePosition);
+            larger.put(used);
+            slab = larger;
+        }
+    }
+
+    private void kill(int offset)
+    {
+        int keyLength = slab.getInt(offset);
+        slab.putInt(offset, keyLength | DEAD);
+        garbage += RECORD_HEADER + keyLength + slab.getInt(offset + 4);
+    }
+
+    private void writeHeader()
+    {
+        slab.putInt(0, MAGIC);
+        slab.putInt(4, writePosition);
+        slab.putInt(8, size);
+        slab.putInt(12, garbage);
+    }
+
+    // --- index
+
+    private int find(byte[] key, int hash)
+    {
+        for (int slot = hash & indexMask;; slot = (slot + 1) & indexMask)
+        {
+            long entry = index.getLong(slot << 3);
+            if (entry == 0)
+            {
+                return -1;
+            }
+            if ((int) (entry >>> 32) == hash && keyEquals((int) entry - 1, key))
+            {
+                return slot;
+            }
+        }
+    }
+
+    private boolean keyEquals(int offset, byte[] key)
+    {
+        if (slab.getInt(offset) != key.length)
+        {
+            return false;
+        }
+        int start = offset + RECORD_HEADER;
+        for (int i = 0; i < key.length; i++)
+        {
+            if (slab.get(start + i) != key[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int recordOffset(int slot)
+    {
+        return (int) index.getLong(slot << 3) - 1;
+    }
+
+    private void insert(int hash, int offset)
+    {
+        if ((size + 1) * 2 > indexMask + 1)
+        {
+            resizeIndex((indexMask + 1) * 2);
+        }
+        int slot = hash & indexMask;
+        while (index.getLong(slot << 3) != 0)
+        {
+            slot = (slot + 1) & indexMask;
+        }
+        index.putLong(slot << 3, entry(hash, offset));
+        size++;
+    }
+
+    /**
+     * Backward shift deletion, as IntObjectMap.
+     */
+    private void deleteSlot(int slot)
+    {
+        index.putLong(slot << 3, 0);
+        int hole = slot;
+        for (int next = (hole + 1) & indexMask;; next = (next + 1) & indexMask)
+        {
+            long entry = index.getLong(next << 3);
+            if (entry == 0)
+            {
+                return;
+            }
+            int home = (int) (entry >>> 32) & indexMask;
+            boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+            if (movable)
+            {
+                index.putLong(hole << 3, entry);
+                index.putLong(next << 3, 0);
+                hole = next;
+            }
+        }
+    }
+
+    private void resizeIndex(int slots)
+    {
+        ByteBuffer old = index;
+        allocateIndex(slots);
+        for (int i = 0; i < old.capacity(); i += 8)
+        {
+            long entry = old.getLong(i);
+            if (entry != 0)
+            {
+                int slot = (int) (entry >>> 32) & indexMask;
+                while (index.getLong(slot << 3) != 0)
+                {
+                    slot = (slot + 1) & indexMask;
+                }
+                index.putLong(slot << 3, entry);
+            }
+        }
+    }
+
+    private void allocateIndex(int slots)
+    {
+        if (slots > 1 << 27)
+        {
+            throw new IllegalStateException("segment index full, use more segments");
+        }
+        index = ByteBuffer.allocateDirect(slots << 3);
+        indexMask = slots - 1;
+    }
+
+    /**
+     * Indexes the live records of the slab. A key found twice, after a crash between the append of a record and the
+     * kill of the one it replaced, keeps its latest record.
+     */
+    private void rebuildIndex()
+    {
+        int live = 0;
+        for (int offset = HEADER; offset < writePosition;)
+        {
+            int keyLength = slab.getInt(offset);
+            int length = keyLength & ~DEAD;
+            if ((keyLength & DEAD) == 0)
+            {
+                live++;
+            }
+            offset += RECORD_HEADER + length + slab.getInt(offset + 4);
+        }
+        size = 0;
+        garbage = 0;
+        allocateIndex(Integer.highestOneBit(Math.max(8, live) * 2 - 1) << 1);
+
+        for (int offset = HEADER; offset < writePosition;)
+        {
+            int keyLength = slab.getInt(offset);
+            int length = keyLength & ~DEAD;
+            int recordSize = RECORD_HEADER + length + slab.getInt(offset + 4);
+            if ((keyLength & DEAD) == 0)
+            {
+                byte[] key = new byte[length];
+                get(offset + RECORD_HEADER, key, length);
+                int hash = OffHeapStringMap.hash(key);
+                int slot = find(key, hash);
+                if (slot >= 0)
+                {
+                    kill(recordOffset(slot));
+                    index.putLong(slot << 3, entry(hash, offset));
+                }
+                else
+                {
+                    insert(hash, offset);
+                }
+            }
+            else
+            {
+                garbage += recordSize;
+            }
+            offset += recordSize;
+        }
+        writeHeader();
+    }
+
+    private static long entry(int hash, int offset)
+    {
+        return ((long) hash << 32) | (offset + 1L);
+    }
+
+    // --- bytes
+
+    private String decode(int offset, int length)
+    {
+        byte[] bytes = new byte[length];
+        get(offset, bytes, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void get(int offset, byte[] bytes, int length)
+    {
+        // a duplicate per call: readers share the slab and absolute bulk get is Java 13+
+        ByteBuffer view = slab.duplicate();
+        view.position(offset);
+        view.get(bytes, 0, length);
+    }
+
+    private void put(int offset, byte[] bytes)
+    {
+        put(offset, bytes, bytes.length);
+    }
+
+    private void put(int offset, byte[] bytes, int length)
+    {
+        ByteBuffer view = slab.duplicate();
+        view.position(offset);
+        view.put(bytes, 0, length);
+    }
+}
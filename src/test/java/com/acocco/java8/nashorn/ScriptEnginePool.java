@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.nashorn;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+
+/**
+ * Engines running the same script in parallel, the replacement of one engine called by one thread, or of calls
+ * serialized behind a lock, since an engine and its global scope must not be used by two threads at once.
+ *
+ * The pool creates its engines when it is opened, by default one per core, and every engine compiles and evaluates
+ * the script then: a call borrows an idle engine, invokes the function and returns it, without compiling anything.
+ * Calls borrow with borrow and a Lease, run with invoke on the calling thread, or with submit on a thread of the pool.
+ *
+ * Every engine has its own global scope, but what a call leaves in it (a counter, a cache) is seen by the next call
+ * on the same engine. An isolated pool evaluates the script again into a fresh global scope when an engine is
+ * returned, so that every call starts from the state of the script, at the cost of that evaluation.
+ *
+ * <pre>
+ * try (ScriptEnginePool pool = ScriptEnginePool.builder(Paths.get("src/script.js")).open())
+ * {
+ *     CompletableFuture&lt;Object&gt; result = pool.submit("fun1", "GINO GINA");
+ * }
+ * </pre>
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class ScriptEnginePool implements AutoCloseable
+{
+    private final BlockingQueue<PooledEngine> idle;
+
+    private final boolean isolated;
+
+    private final int size;
+
+    private final ExecutorService executor;
+
+    private ScriptEnginePool(Builder builder) throws IOException, ScriptException
+    {
+        ScriptEngineManager manager = new ScriptEngineManager();
+        String source = new String(Files.readAllBytes(builder.script), StandardCharsets.UTF_8);
+        this.size = builder.size;
+        this.isolated = builder.isolated;
+        this.idle = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            ScriptEngine engine = manager.getEngineByName(builder.engineName);
+            if (engine == null)
+            {
+                throw new IllegalStateException("no script engine named " + builder.engineName);
+            }
+            if (!(engine instanceof Compilable) || !(engine instanceof Invocable))
+            {
+                throw new IllegalArgumentException(builder.engineName
+                    + " engine cannot compile scripts or invoke functions");
+            }
+            PooledEngine pooled = new PooledEngine(engine, ((Compilable) engine).compile(source));
+            pooled.compiled.eval();
+            idle.add(pooled);
+        }
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(size, runnable ->
+        {
+            Thread thread = new Thread(runnable, "script-pool-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder(Path script)
+    {
+        return new Builder(Objects.requireNonNull(script));
+    }
+
+    /**
+     * Waits for an idle engine.
+     */
+    public Lease borrow() throws InterruptedException
+    {
+        return new Lease(idle.take());
+    }
+
+    /**
+     * Waits at most the timeout for an idle engine, null if none was returned in time.
+     */
+    public Lease tryBorrow(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        PooledEngine engine = idle.poll(timeout, unit);
+        return engine == null ? null : new Lease(engine);
+    }
+
+    /**
+     * Calls the function on the calling thread, waiting for an idle engine.
+     */
+    public Object invoke(String function, Object... args)
+        throws InterruptedException, ScriptException, NoSuchMethodException
+    {
+        try (Lease lease = borrow())
+        {
+            return lease.invoke(function, args);
+        }
+    }
+
+    /**
+     * Calls the function on a thread of the pool, the future fails with the ScriptException or NoSuchMethodException
+     * of the call.
+     */
+    public CompletableFuture<Object> submit(String function, Object... args)
+    {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        executor.execute(() ->
+        {
+            try
+            {
+                future.complete(invoke(function, args));
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+            }
+            catch (Exception e)
+            {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Number of engines.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Number of engines not borrowed.
+     */
+    public int idle()
+    {
+        return idle.size();
+    }
+
+    /**
+     * Stops the threads of submit once the calls already submitted are done.
+     */
+    @Override
+    public void close()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * An engine borrowed from the pool until close, for one thread.
+     */
+    public final class Lease implements AutoCloseable
+    {
+        private PooledEngine pooled;
+
+        private Lease(PooledEngine pooled)
+        {
+            this.pooled = pooled;
+        }
+
+        public Object invoke(String function, Object... args) throws ScriptException, NoSuchMethodException
+        {
+            return ((Invocable) engine()).invokeFunction(function, args);
+        }
+
+        public ScriptEngine engine()
+        {
+            if (pooled == null)
+            {
+                throw new IllegalStateException("engine already returned");
+            }
+            return pooled.engine;
+        }
+
+        /**
+         * Returns the engine to the pool, after resetting its global scope if the pool is isolated.
+         */
+        @Override
+        public void close() throws ScriptException
+        {
+            if (pooled == null)
+            {
+                return;
+            }
+            PooledEngine returned = pooled;
+            pooled = null;
+            try
+            {
+                if (isolated)
+                {
+                    returned.reset();
+                }
+            }
+            finally
+            {
+                idle.add(returned);
+            }
+        }
+    }
+
+    private static final class PooledEngine
+    {
+        final ScriptEngine engine;
+
+        final CompiledScript compiled;
+
+        PooledEngine(ScriptEngine engine, CompiledScript compiled)
+        {
+            this.engine = engine;
+            this.compiled = compiled;
+        }
+
+        void reset() throws ScriptException
+        {
+            engine.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+            compiled.eval();
+        }
+    }
+
+    public static final class Builder
+    {
+        private final Path script;
+
+        private String engineName = "nashorn";
+
+        private int size = Runtime.getRuntime().availableProcessors();
+
+        private boolean isolated;
+
+        private Builder(Path script)
+        {
+            this.script = script;
+        }
+
+        public Builder engineName(String engineName)
+        {
+            this.engineName = Objects.requireNonNull(engineName);
+            return this;
+        }
+
+        /**
+         * Number of engines and of submit threads, the number of cores by default.
+         */
+        public Builder size(int size)
+        {
+            if (size <= 0)
+            {
+                throw new IllegalArgumentException("size must be positive: " + size);
+            }
+            this.size = size;
+            return this;
+        }
+
+        /**
+         * Resets the global scope of an engine after every call, false by default.
+         */
+        public Builder isolated(boolean isolated)
+        {
+            this.isolated = isolated;
+            return this;
+        }
+
+        /**
+         * Creates the engines and evaluates the script in each of them.
+         */
+        public ScriptEnginePool open() throws IOException, ScriptException
+        {
+            return new ScriptEnginePool(this);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.nashorn;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptEngineManager;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+
+/**
+ * fun1 of NashornTest called from many threads on a pool of engines.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class ScriptEnginePoolTest
+{
+    @Test
+    public void testConcurrentCalls() throws Exception
+    {
+        skipWithoutNashorn();
+        try (ScriptEnginePool pool = ScriptEnginePool.builder(Paths.get("src/script.js")).size(4).open())
+        {
+            List<CompletableFuture<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++)
+            {
+                results.add(pool.submit("fun1", "caller " + i));
+            }
+            for (CompletableFuture<Object> result : results)
+            {
+                Assert.assertEquals(result.get(60, TimeUnit.SECONDS), "javascript end");
+            }
+            Assert.assertEquals(pool.invoke("fun1", "GINO GINA"), "javascript end");
+            Assert.assertEquals(pool.idle(), 4);
+
+            try
+            {
+                pool.submit("missing").get(60, TimeUnit.SECONDS);
+                Assert.fail("missing function called");
+            }
+            catch (ExecutionException e)
+            {
+                Assert.assertTrue(e.getCause() instanceof NoSuchMethodException);
+            }
+        }
+    }
+
+    @Test
+    public void testBorrowAndIsolation() throws Exception
+    {
+        skipWithoutNashorn();
+        Path script = Files.createTempFile("counter", ".js");
+        try
+        {
+            Files.write(script, "var count = 0; var next = function() { return ++count; };"
+                .getBytes(StandardCharsets.UTF_8));
+
+            try (ScriptEnginePool pool = ScriptEnginePool.builder(script).size(2).open())
+            {
+                try (ScriptEnginePool.Lease first = pool.borrow(); ScriptEnginePool.Lease second = pool.borrow())
+                {
+                    Assert.assertNull(pool.tryBorrow(10, TimeUnit.MILLISECONDS));
+                    Assert.assertEquals(((Number) first.invoke("next")).intValue(), 1);
+                    Assert.assertEquals(((Number) first.invoke("next")).intValue(), 2);
+                    // every engine has its own global scope
+                    Assert.assertEquals(((Number) second.invoke("next")).intValue(), 1);
+                }
+                Assert.assertEquals(pool.idle(), 2);
+            }
+
+            try (ScriptEnginePool pool = ScriptEnginePool.builder(script).size(1).isolated(true).open())
+            {
+                Assert.assertEquals(((Number) pool.invoke("next")).intValue(), 1);
+                Assert.assertEquals(((Number) pool.invoke("next")).intValue(), 1);
+            }
+        }
+        finally
+        {
+            Files.delete(script);
+        }
+    }
+
+    private static void skipWithoutNashorn()
+    {
+        if (new ScriptEngineManager().getEngineByName("nashorn") == null)
+        {
+            throw new SkipException("no nashorn engine in this JVM");
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.nashorn;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+
+/**
+ * Scripts compiled once and called many times, the replacement of NashornTest's new ScriptEngineManager, engine lookup
+ * and eval of src/script.js before every call of fun1.
+ *
+ * Every script file gets its own engine, created once by the shared ScriptEngineManager and kept for the life of the
+ * registry. The file is compiled with Compilable.compile and evaluated into a fresh global scope of that engine, after
+ * which a call is only Invocable.invokeFunction.
+ *
+ * A call checks the file again at most every checkInterval: when its modification time or size changed, the file is
+ * read and hashed (SHA-256), and only a different content is compiled again, into a new global scope so that the
+ * functions removed from the file disappear. A new version that fails to compile or to run leaves the previous one
+ * in place, reported by lastError and not compiled again until the file changes; only the first load of a script
+ * throws its error.
+ *
+ * An engine runs one call at a time, so the calls of a script are serialized; ScriptEnginePool runs a script on
+ * several engines.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class ScriptRegistry
+{
+    private final ScriptEngineManager manager = new ScriptEngineManager();
+
+    private final String engineName;
+
+    private final long checkIntervalNanos;
+
+    private final ConcurrentMap<Path, Script> scripts = new ConcurrentHashMap<>();
+
+    private final AtomicLong compilations = new AtomicLong();
+
+    /**
+     * Nashorn registry checking the files every second.
+     */
+    public ScriptRegistry()
+    {
+        this("nashorn", 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param checkInterval
+     *            how long a call trusts the last check of its file, 0 to check on every call
+     */
+    public ScriptRegistry(String engineName, long checkInterval, TimeUnit unit)
+    {
+        if (checkInterval < 0)
+        {
+            throw new IllegalArgumentException("negative check interval: " + checkInterval);
+        }
+        ScriptEngine engine = manager.getEngineByName(engineName);
+        if (engine == null)
+        {
+            throw new IllegalStateException("no script engine named " + engineName);
+        }
+        if (!(engine instanceof Compilable) || !(engine instanceof Invocable))
+        {
+            throw new IllegalArgumentException(engineName + " engine cannot compile scripts or invoke functions");
+        }
+        this.engineName = engineName;
+        this.checkIntervalNanos = unit.toNanos(checkInterval);
+    }
+
+    /**
+     * Calls the function of the script, compiling or reloading the script first if needed.
+     */
+    public Object invoke(Path path, String function, Object... args)
+        throws IOException, ScriptException, NoSuchMethodException
+    {
+        Script script = script(path);
+        synchronized (script)
+        {
+            script.refresh();
+            return ((Invocable) script.engine).invokeFunction(function, args);
+        }
+    }
+
+    /**
+     * The current compiled version of the script, to evaluate in another context.
+     */
+    public CompiledScript compiled(Path path) throws IOException, ScriptException
+    {
+        Script script = script(path);
+        synchronized (script)
+        {
+            script.refresh();
+            return script.compiled;
+        }
+    }
+
+    /**
+     * Why the current content of the script file is not the version running, null if it is (or if the script was
+     * never loaded).
+     */
+    public ScriptException lastError(Path path)
+    {
+        Script script = scripts.get(path.toAbsolutePath().normalize());
+        if (script == null)
+        {
+            return null;
+        }
+        synchronized (script)
+        {
+            return script.error;
+        }
+    }
+
+    /**
+     * Forgets the script and its engine, the next call compiles it again.
+     */
+    public void invalidate(Path path)
+    {
+        scripts.remove(path.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Number of compilations so far, first loads and reloads, failed ones included.
+     */
+    public long compilations()
+    {
+        return compilations.get();
+    }
+
+    private Script script(Path path)
+    {
+        return scripts.computeIfAbsent(path.toAbsolutePath().normalize(),
+            key -> new Script(key, manager.getEngineByName(engineName)));
+    }
+
+    /**
+     * A script file, its engine and its last compiled version, guarded by its monitor.
+     */
+    private final class Script
+    {
+        final Path path;
+
+        final ScriptEngine engine;
+
+        CompiledScript compiled;
+
+        long checkedNanos;
+
+        long lastModified = -1;
+
+        long size = -1;
+
+        byte[] digest;
+
+        /**
+         * Content that failed to compile or to run, with its error.
+         */
+        byte[] failedDigest;
+
+        ScriptException error;
+
+        Script(Path path, ScriptEngine engine)
+        {
+            this.path = path;
+            this.engine = engine;
+        }
+
+        void refresh() throws IOException, ScriptException
+        {
+            long now = System.nanoTime();
+            if (compiled != null && now - checkedNanos < checkIntervalNanos)
+            {
+                return;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (compiled == null || modified != lastModified || attributes.size() != size)
+            {
+                byte[] source = Files.readAllBytes(path);
+                byte[] sourceDigest = sha256(source);
+                if (Arrays.equals(sourceDigest, digest))
+                {
+                    error = null;
+                }
+                else if (!Arrays.equals(sourceDigest, failedDigest))
+                {
+                    try
+                    {
+                        load(source);
+                        digest = sourceDigest;
+                        failedDigest = null;
+                        error = null;
+                    }
+                    catch (ScriptException | RuntimeException e)
+                    {
+                        if (compiled == null)
+                        {
+                            throw e;
+                        }
+                        // the previous version goes on, this one is not compiled again until the file changes
+                        failedDigest = sourceDigest;
+                        error = e instanceof ScriptException ? (ScriptException) e : new ScriptException(e);
+                    }
+                }
+                lastModified = modified;
+                size = attributes.size();
+            }
+            checkedNanos = now;
+        }
+
+        private void load(byte[] source) throws ScriptException
+        {
+            compilations.incrementAndGet();
+            CompiledScript script = ((Compilable) engine).compile(new String(source, StandardCharsets.UTF_8));
+            Bindings previous = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+            engine.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+            try
+            {
+                script.eval();
+            }
+            catch (ScriptException | RuntimeException e)
+            {
+                engine.setBindings(previous, ScriptContext.ENGINE_SCOPE);
+                throw e;
+            }
+            compiled = script;
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes)
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
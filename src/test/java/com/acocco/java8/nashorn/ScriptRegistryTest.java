@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.nashorn;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+
+/**
+ * The call of fun1 of NashornTest through a ScriptRegistry, compiled once and reloaded when the file changes.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class ScriptRegistryTest
+{
+    @Test
+    public void testCompileOnce() throws Exception
+    {
+        ScriptRegistry registry = registry();
+        Path script = Paths.get("src/script.js");
+        for (int i = 0; i < 100; i++)
+        {
+            Assert.assertEquals(registry.invoke(script, "fun1", "GINO GINA"), "javascript end");
+        }
+        Assert.assertEquals(registry.compilations(), 1);
+        Assert.assertNotNull(registry.compiled(script));
+    }
+
+    @Test
+    public void testHotReload() throws Exception
+    {
+        ScriptRegistry registry = registry();
+        Path script = Files.createTempFile("script", ".js");
+        try
+        {
+            write(script, "var f = function() { return 'first'; }; var g = function() { return 'gone'; };");
+            Assert.assertEquals(registry.invoke(script, "f"), "first");
+
+            // touched without change: hashed, not compiled
+            Files.setLastModifiedTime(script, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+            Assert.assertEquals(registry.invoke(script, "f"), "first");
+            Assert.assertEquals(registry.compilations(), 1);
+
+            write(script, "var f = function() { return 'second version'; };");
+            Assert.assertEquals(registry.invoke(script, "f"), "second version");
+            Assert.assertEquals(registry.compilations(), 2);
+            try
+            {
+                registry.invoke(script, "g");
+                Assert.fail("function of the previous version");
+            }
+            catch (NoSuchMethodException e)
+            {
+                // expected
+            }
+
+            // a broken version leaves the previous one running, and is compiled once
+            write(script, "var f = function() { return ");
+            Assert.assertEquals(registry.invoke(script, "f"), "second version");
+            Assert.assertEquals(registry.invoke(script, "f"), "second version");
+            Assert.assertNotNull(registry.lastError(script));
+            Assert.assertEquals(registry.compilations(), 3);
+
+            write(script, "var f = function(x) { return x * 2; };");
+            Assert.assertEquals(((Number) registry.invoke(script, "f", 21)).intValue(), 42);
+            Assert.assertNull(registry.lastError(script));
+
+            // the first load has no previous version to fall back to
+            registry.invalidate(script);
+            write(script, "var f = function() { return ");
+            try
+            {
+                registry.invoke(script, "f");
+                Assert.fail("broken script compiled");
+            }
+            catch (ScriptException e)
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            Files.delete(script);
+        }
+    }
+
+    static ScriptRegistry registry()
+    {
+        if (new ScriptEngineManager().getEngineByName("nashorn") == null)
+        {
+            throw new SkipException("no nashorn engine in this JVM");
+        }
+        return new ScriptRegistry("nashorn", 0, TimeUnit.SECONDS);
+    }
+
+    private static void write(Path script, String source) throws Exception
+    {
+        Files.write(script, source.getBytes(StandardCharsets.UTF_8));
+    }
+}
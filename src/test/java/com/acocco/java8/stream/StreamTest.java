@@ -8,7 +8,6 @@ import java.util.Arrays;
 import java.util.IntSummaryStatistics;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
@@ -19,6 +18,7 @@ import java.util.stream.Stream;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.acocco.java8.stream.data.DatasetGenerator;
 import com.acocco.java8.stream.model.Module;
 import com.acocco.java8.stream.model.SubModule;
 
@@ -122,7 +122,8 @@ public class StreamTest
     }
 
     /**
-     * Solution to reuse stream
+     * Solution to reuse stream. Every call builds the whole chain again, a Pipeline is defined once instead (see
+     * PipelineTest).
      */
     @Test
     public void testSequentialStream_ReusingStreams()
@@ -260,6 +261,9 @@ public class StreamTest
      * Collections support the method parallelStream() to create a parallel stream of elements.
      * Alternatively you can call the intermediate method parallel() on a given stream to convert a sequential stream to
      * a parallel counterpart.
+     *
+     * Printing from the lambdas serializes the workers on the console, StreamProbeTest records the same information
+     * without output until the end.
      */
     @Test
     public void testParallelalStream_Two()
@@ -318,12 +322,9 @@ public class StreamTest
     public void testDifferencesBetweenSequentialAndParallelalStream()
     {
         int max = 1000000;
-        List<String> values = new ArrayList<>(max);
-        for (int i = 0; i < max; i++)
-        {
-            UUID uuid = UUID.randomUUID();
-            values.add(uuid.toString());
-        }
+
+        // UUID.randomUUID() in a loop takes as long as the sort, the generator fills the list in parallel
+        List<String> values = new DatasetGenerator(42).uuidStrings(max);
 
         // Sequential Stream
         long t0 = System.nanoTime();
@@ -352,7 +353,9 @@ public class StreamTest
 
 
         // ASSERT
-        Assert.assertTrue(millisParallelalStream < millisSequentialStream);
+        // A single timed run says nothing about warmup, GC or variance, so the two timings are only printed.
+        // The real comparison is StreamSortBenchmark in the benchmarks module.
+        Assert.assertEquals(count, max);
     }
 
     /***** END - DIFFERENCES BETWEEN SEQUENTIAL AND PARALLELAL STREAM ********************/
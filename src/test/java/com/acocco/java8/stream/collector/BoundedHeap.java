@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * Keeps the k greatest elements offered, according to a comparator.
+ *
+ * A binary min-heap of at most k elements: the root is the smallest element kept, an element is only inserted when
+ * it is greater than the root, which it then replaces. Offering n elements costs O(n log k) time and O(k) memory.
+ * The array grows up to k on demand, a large k with a small input does not allocate k slots.
+ *
+ * Not thread safe.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class BoundedHeap<T>
+{
+    private final int k;
+
+    private final Comparator<? super T> order;
+
+    private Object[] heap;
+
+    private int size;
+
+    BoundedHeap(int k, Comparator<? super T> order)
+    {
+        this.k = k;
+        this.order = order;
+        this.heap = new Object[Math.min(k, 16)];
+    }
+
+    void offer(T element)
+    {
+        if (size < k)
+        {
+            if (size == heap.length)
+            {
+                heap = Arrays.copyOf(heap, (int) Math.min(k, heap.length * 2L));
+            }
+            heap[size] = element;
+            siftUp(size++);
+        }
+        else if (k > 0 && order.compare(element, elementAt(0)) > 0)
+        {
+            heap[0] = element;
+            siftDown(0);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    BoundedHeap<T> merge(BoundedHeap<T> other)
+    {
+        BoundedHeap<T> into = size >= other.size ? this : other;
+        BoundedHeap<T> from = into == this ? other : this;
+        for (int i = 0; i < from.size; i++)
+        {
+            into.offer((T) from.heap[i]);
+        }
+        return into;
+    }
+
+    /**
+     * The elements kept, greatest first.
+     */
+    @SuppressWarnings("unchecked")
+    List<T> toList()
+    {
+        List<T> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            result.add((T) heap[i]);
+        }
+        result.sort(order.reversed());
+        return result;
+    }
+
+    private void siftUp(int index)
+    {
+        T element = elementAt(index);
+        while (index > 0)
+        {
+            int parent = (index - 1) >>> 1;
+            if (order.compare(element, elementAt(parent)) >= 0)
+            {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = element;
+    }
+
+    private void siftDown(int index)
+    {
+        T element = elementAt(index);
+        int half = size >>> 1;
+        while (index < half)
+        {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && order.compare(elementAt(right), elementAt(child)) < 0)
+            {
+                child = right;
+            }
+            if (order.compare(element, elementAt(child)) <= 0)
+            {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = element;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T elementAt(int index)
+    {
+        return (T) heap[index];
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+/**
+ * Accumulation container of IntCollectors.groupingByIntConcurrent.
+ *
+ * The keys are spread over a fixed number of IntGroups stripes, each guarded by its own lock: threads adding to
+ * different stripes never contend. A key always lands in the same stripe, so the stripes hold disjoint keys and
+ * toIntGroups only appends them.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class ConcurrentIntGroups<T>
+{
+    private final IntGroups<T>[] stripes;
+
+    private final int shift;
+
+    public ConcurrentIntGroups()
+    {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ConcurrentIntGroups(int concurrency)
+    {
+        int count = IntGroups.tableSizeFor(Math.max(2, concurrency));
+        stripes = new IntGroups[count];
+        for (int i = 0; i < count; i++)
+        {
+            stripes[i] = new IntGroups<>();
+        }
+        shift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    public void add(int key, T element)
+    {
+        // the high bits pick the stripe, the table inside the stripe uses the low bits
+        IntGroups<T> stripe = stripes[IntGroups.hash(key) >>> shift];
+        synchronized (stripe)
+        {
+            stripe.add(key, element);
+        }
+    }
+
+    /**
+     * Adds the groups of other, whose writers are done, to this: the combiner of the collector when it is the
+     * downstream of another one, groupingBy for instance, which accumulates into several containers.
+     */
+    public ConcurrentIntGroups<T> merge(ConcurrentIntGroups<T> other)
+    {
+        if (other.stripes.length == stripes.length)
+        {
+            // same stripes for the same keys: a stripe merges into its counterpart
+            for (int i = 0; i < stripes.length; i++)
+            {
+                synchronized (stripes[i])
+                {
+                    stripes[i].merge(other.stripes[i]);
+                }
+            }
+        }
+        else
+        {
+            for (IntGroups<T> stripe : other.stripes)
+            {
+                stripe.forEach((key, group) -> group.forEach(element -> add(key, element)));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Merges the stripes, call it once all the writers are done.
+     */
+    public IntGroups<T> toIntGroups()
+    {
+        int keys = 0;
+        for (IntGroups<T> stripe : stripes)
+        {
+            keys += stripe.size();
+        }
+        IntGroups<T> result = new IntGroups<>(keys);
+        for (IntGroups<T> stripe : stripes)
+        {
+            result.merge(stripe);
+        }
+        return result;
+    }
+}
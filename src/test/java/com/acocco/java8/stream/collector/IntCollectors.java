@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.util.function.ToIntFunction;
+import java.util.stream.Collector;
+
+
+/**
+ * Collectors specialized for primitive int keys.
+ *
+ * groupingByInt(p -> p.age) gives the same groups as Collectors.groupingBy(p -> p.age) without boxing the ages and
+ * without the HashMap and ArrayList nodes, see IntGroups.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class IntCollectors
+{
+    private IntCollectors()
+    {
+    }
+
+    /**
+     * Groups the elements by an int key. Under a parallel stream every thread fills its own IntGroups and the partial
+     * results are merged, the encounter order is kept inside each group.
+     */
+    public static <T> Collector<T, IntGroups<T>, IntGroups<T>> groupingByInt(ToIntFunction<? super T> classifier)
+    {
+        return Collector.of(
+            IntGroups::new,
+            (groups, element) -> groups.add(classifier.applyAsInt(element), element),
+            IntGroups::merge,
+            Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Concurrent version of groupingByInt: all the threads of a parallel stream accumulate into one lock striped
+     * container, so there is no merge of partial results; as the downstream of another collector the containers are
+     * merged. The order inside each group is not defined.
+     */
+    public static <T> Collector<T, ConcurrentIntGroups<T>, IntGroups<T>> groupingByIntConcurrent(
+        ToIntFunction<? super T> classifier)
+    {
+        return Collector.of(
+            ConcurrentIntGroups::new,
+            (groups, element) -> groups.add(classifier.applyAsInt(element), element),
+            ConcurrentIntGroups::merge,
+            ConcurrentIntGroups::toIntGroups,
+            Collector.Characteristics.CONCURRENT,
+            Collector.Characteristics.UNORDERED);
+    }
+}
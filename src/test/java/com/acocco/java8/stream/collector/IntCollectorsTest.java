@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.acocco.java8.stream.model.Person;
+
+
+/**
+ * Grouping by a primitive int key.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class IntCollectorsTest
+{
+    @Test
+    public void testGroupingByInt()
+    {
+        IntGroups<Person> personsByAge = getPersons()
+            .stream()
+            .collect(IntCollectors.groupingByInt(p -> p.age));
+
+        personsByAge.forEach((age, p) -> System.out.format("age %s: %s\n", age, p));
+
+        Assert.assertEquals(personsByAge.size(), 3);
+        Assert.assertEquals(personsByAge.get(18).toString(), "[Davide, Giovanni]");
+        Assert.assertEquals(personsByAge.get(23).toString(), "[Antonio, Fabio]");
+        Assert.assertEquals(personsByAge.get(12).toString(), "[Mauro, Mirko]");
+        Assert.assertTrue(personsByAge.get(99).isEmpty());
+    }
+
+    @Test
+    public void testGroupingByInt_ParallelSameAsGroupingBy()
+    {
+        List<Person> persons = IntStream
+            .range(0, 100000)
+            .mapToObj(i -> new Person("P" + i, (i * 31) % 97 - 10))
+            .collect(Collectors.toList());
+
+        Map<Integer, List<Person>> expected = persons
+            .parallelStream()
+            .collect(Collectors.groupingBy(p -> p.age));
+
+        IntGroups<Person> actual = persons
+            .parallelStream()
+            .collect(IntCollectors.groupingByInt(p -> p.age));
+
+        Assert.assertEquals(actual.toMap(), expected);
+    }
+
+    @Test
+    public void testGroupingByIntConcurrent()
+    {
+        List<Person> persons = IntStream
+            .range(0, 100000)
+            .mapToObj(i -> new Person("P" + i, i % 1000))
+            .collect(Collectors.toList());
+
+        IntGroups<Person> actual = persons
+            .parallelStream()
+            .collect(IntCollectors.groupingByIntConcurrent(p -> p.age));
+
+        Assert.assertEquals(actual.size(), 1000);
+        for (int age = 0; age < 1000; age++)
+        {
+            List<Person> group = actual.get(age);
+            Assert.assertEquals(group.size(), 100);
+            Assert.assertEquals(new HashSet<>(group).size(), 100);
+        }
+        Assert.assertEquals(new HashSet<>(collectAll(actual)), new HashSet<>(persons));
+    }
+
+    @Test
+    public void testGroupingByIntConcurrent_Downstream()
+    {
+        List<Person> persons = IntStream
+            .range(0, 100000)
+            .mapToObj(i -> new Person("P" + i, i % 1000))
+            .collect(Collectors.toList());
+
+        // groupingBy combines the containers of its downstream collector, even a concurrent one
+        Map<Boolean, IntGroups<Person>> actual = persons
+            .parallelStream()
+            .collect(Collectors.groupingBy(p -> p.age % 2 == 0, IntCollectors.groupingByIntConcurrent(p -> p.age)));
+
+        Assert.assertEquals(actual.size(), 2);
+        for (int age = 0; age < 1000; age++)
+        {
+            List<Person> group = actual.get(age % 2 == 0).get(age);
+            Assert.assertEquals(group.size(), 100);
+            Assert.assertEquals(new HashSet<>(group).size(), 100);
+        }
+        Assert.assertEquals(collectAll(actual.get(true)).size() + collectAll(actual.get(false)).size(), 100000);
+    }
+
+    private List<Person> collectAll(IntGroups<Person> groups)
+    {
+        List<Person> all = new ArrayList<>();
+        groups.forEach((key, group) -> all.addAll(group));
+        return all;
+    }
+
+    private List<Person> getPersons()
+    {
+        return Arrays.asList(
+            new Person("Davide", 18),
+            new Person("Giovanni", 18),
+            new Person("Antonio", 23),
+            new Person("Fabio", 23),
+            new Person("Mauro", 12),
+            new Person("Mirko", 12));
+    }
+}
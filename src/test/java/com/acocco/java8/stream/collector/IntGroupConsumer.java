@@ -0,0 +1,19 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.util.List;
+
+
+/**
+ * Consumer of a group of IntGroups, receives the int key without boxing.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+@FunctionalInterface
+public interface IntGroupConsumer<T>
+{
+    void accept(int key, List<T> group);
+}
@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Groups of elements indexed by a primitive int key, the result of IntCollectors.groupingByInt.
+ *
+ * The keys live in an open addressing table (linear probing) and every group is a plain array, so there is no
+ * Integer key, no map entry and no ArrayList per group. A slot is in use when its group array is not null.
+ *
+ * Not thread safe.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class IntGroups<T>
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final int INITIAL_GROUP_CAPACITY = 4;
+
+    private int[] keys;
+
+    private Object[][] groups;
+
+    private int[] groupSizes;
+
+    private int size;
+
+    private int mask;
+
+    public IntGroups()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedKeys
+     *            number of distinct keys the table can hold without resizing
+     */
+    public IntGroups(int expectedKeys)
+    {
+        int capacity = tableSizeFor(Math.max(DEFAULT_CAPACITY, expectedKeys * 2));
+        keys = new int[capacity];
+        groups = new Object[capacity][];
+        groupSizes = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Appends the element to the group of the key.
+     */
+    public void add(int key, T element)
+    {
+        int slot = slotFor(key);
+        Object[] group = groups[slot];
+        int groupSize = groupSizes[slot];
+        if (groupSize == group.length)
+        {
+            group = Arrays.copyOf(group, groupSize + (groupSize >> 1) + 1);
+            groups[slot] = group;
+        }
+        group[groupSize] = element;
+        groupSizes[slot] = groupSize + 1;
+    }
+
+    /**
+     * Returns a read only view of the group of the key, an empty list if the key is absent.
+     */
+    public List<T> get(int key)
+    {
+        int slot = find(key);
+        return slot < 0 ? Collections.emptyList() : view(slot);
+    }
+
+    public boolean containsKey(int key)
+    {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Number of distinct keys.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Returns the keys, in no particular order.
+     */
+    public int[] keys()
+    {
+        int[] result = new int[size];
+        int i = 0;
+        for (int slot = 0; slot < groups.length; slot++)
+        {
+            if (groups[slot] != null)
+            {
+                result[i++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    public void forEach(IntGroupConsumer<T> action)
+    {
+        for (int slot = 0; slot < groups.length; slot++)
+        {
+            if (groups[slot] != null)
+            {
+                action.accept(keys[slot], view(slot));
+            }
+        }
+    }
+
+    /**
+     * Appends every group of other to the group of the same key. The elements of other follow the elements of this.
+     */
+    public IntGroups<T> merge(IntGroups<T> other)
+    {
+        for (int slot = 0; slot < other.groups.length; slot++)
+        {
+            Object[] otherGroup = other.groups[slot];
+            if (otherGroup != null)
+            {
+                append(other.keys[slot], otherGroup, other.groupSizes[slot]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Copies the groups into the same Map returned by Collectors.groupingBy, for code that needs boxed keys.
+     */
+    public Map<Integer, List<T>> toMap()
+    {
+        Map<Integer, List<T>> map = new HashMap<>(size * 2);
+        forEach((key, group) -> map.put(key, new ArrayList<>(group)));
+        return map;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder("{");
+        forEach((key, group) ->
+        {
+            if (builder.length() > 1)
+            {
+                builder.append(", ");
+            }
+            builder.append(key).append('=').append(group);
+        });
+        return builder.append('}').toString();
+    }
+
+    private void append(int key, Object[] elements, int count)
+    {
+        int slot = slotFor(key);
+        Object[] group = groups[slot];
+        int groupSize = groupSizes[slot];
+        if (groupSize + count > group.length)
+        {
+            group = Arrays.copyOf(group, groupSize + count);
+            groups[slot] = group;
+        }
+        System.arraycopy(elements, 0, group, groupSize, count);
+        groupSizes[slot] = groupSize + count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> view(int slot)
+    {
+        List<Object> group = Arrays.asList(groups[slot]).subList(0, groupSizes[slot]);
+        return (List<T>) Collections.unmodifiableList(group);
+    }
+
+    private int find(int key)
+    {
+        for (int slot = hash(key) & mask; groups[slot] != null; slot = (slot + 1) & mask)
+        {
+            if (keys[slot] == key)
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slot of the key, inserting it with an empty group when absent.
+     */
+    private int slotFor(int key)
+    {
+        int slot = hash(key) & mask;
+        while (groups[slot] != null)
+        {
+            if (keys[slot] == key)
+            {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if ((size + 1) * 2 > groups.length)
+        {
+            rehash(groups.length * 2);
+            return slotFor(key);
+        }
+        keys[slot] = key;
+        groups[slot] = new Object[INITIAL_GROUP_CAPACITY];
+        size++;
+        return slot;
+    }
+
+    private void rehash(int capacity)
+    {
+        int[] oldKeys = keys;
+        Object[][] oldGroups = groups;
+        int[] oldSizes = groupSizes;
+
+        keys = new int[capacity];
+        groups = new Object[capacity][];
+        groupSizes = new int[capacity];
+        mask = capacity - 1;
+
+        for (int i = 0; i < oldGroups.length; i++)
+        {
+            if (oldGroups[i] != null)
+            {
+                int slot = hash(oldKeys[i]) & mask;
+                while (groups[slot] != null)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                groups[slot] = oldGroups[i];
+                groupSizes[slot] = oldSizes[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads consecutive keys (ages, ids) over the table.
+     */
+    static int hash(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static int tableSizeFor(int capacity)
+    {
+        int n = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        return n < 0 ? 1 << 30 : n;
+    }
+}
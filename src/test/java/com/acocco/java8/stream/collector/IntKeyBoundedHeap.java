@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+
+/**
+ * BoundedHeap specialized for an int key: the keys are extracted once, kept in an int[] next to the elements and
+ * compared as primitives, without Comparator and without boxing.
+ *
+ * Keeps the k elements with the greatest keys, or the smallest when greatest is false. Not thread safe.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class IntKeyBoundedHeap<T>
+{
+    private final int k;
+
+    private final ToIntFunction<? super T> key;
+
+    private final boolean greatest;
+
+    private int[] keys;
+
+    private Object[] elements;
+
+    private int size;
+
+    IntKeyBoundedHeap(int k, ToIntFunction<? super T> key, boolean greatest)
+    {
+        this.k = k;
+        this.key = key;
+        this.greatest = greatest;
+        int capacity = Math.min(k, 16);
+        this.keys = new int[capacity];
+        this.elements = new Object[capacity];
+    }
+
+    void offer(T element)
+    {
+        offer(key.applyAsInt(element), element);
+    }
+
+    IntKeyBoundedHeap<T> merge(IntKeyBoundedHeap<T> other)
+    {
+        IntKeyBoundedHeap<T> into = size >= other.size ? this : other;
+        IntKeyBoundedHeap<T> from = into == this ? other : this;
+        for (int i = 0; i < from.size; i++)
+        {
+            into.offer(from.keys[i], from.elements[i]);
+        }
+        return into;
+    }
+
+    /**
+     * The elements kept, best key first. Empties the heap.
+     */
+    @SuppressWarnings("unchecked")
+    List<T> toList()
+    {
+        // pop the root (worst kept) until empty and fill the result from the end
+        int count = size;
+        Object[] sorted = new Object[count];
+        while (size > 0)
+        {
+            sorted[size - 1] = elements[0];
+            size--;
+            keys[0] = keys[size];
+            elements[0] = elements[size];
+            elements[size] = null;
+            siftDown(0);
+        }
+        List<T> result = new ArrayList<>(count);
+        for (Object element : sorted)
+        {
+            result.add((T) element);
+        }
+        return result;
+    }
+
+    private void offer(int elementKey, Object element)
+    {
+        if (size < k)
+        {
+            if (size == keys.length)
+            {
+                int capacity = (int) Math.min(k, keys.length * 2L);
+                keys = Arrays.copyOf(keys, capacity);
+                elements = Arrays.copyOf(elements, capacity);
+            }
+            keys[size] = elementKey;
+            elements[size] = element;
+            siftUp(size++);
+        }
+        else if (k > 0 && worse(keys[0], elementKey))
+        {
+            keys[0] = elementKey;
+            elements[0] = element;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * True when a must leave the heap before b.
+     */
+    private boolean worse(int a, int b)
+    {
+        return greatest ? a < b : a > b;
+    }
+
+    private void siftUp(int index)
+    {
+        int elementKey = keys[index];
+        Object element = elements[index];
+        while (index > 0)
+        {
+            int parent = (index - 1) >>> 1;
+            if (!worse(elementKey, keys[parent]))
+            {
+                break;
+            }
+            keys[index] = keys[parent];
+            elements[index] = elements[parent];
+            index = parent;
+        }
+        keys[index] = elementKey;
+        elements[index] = element;
+    }
+
+    private void siftDown(int index)
+    {
+        if (size == 0)
+        {
+            return;
+        }
+        int elementKey = keys[index];
+        Object element = elements[index];
+        int half = size >>> 1;
+        while (index < half)
+        {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && worse(keys[right], keys[child]))
+            {
+                child = right;
+            }
+            if (!worse(keys[child], elementKey))
+            {
+                break;
+            }
+            keys[index] = keys[child];
+            elements[index] = elements[child];
+            index = child;
+        }
+        keys[index] = elementKey;
+        elements[index] = element;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+import com.acocco.java8.stream.sort.RecordCodec;
+
+
+/**
+ * Collectors that keep a bounded amount of data on the heap and spill the rest to local files.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class SpillingCollectors
+{
+    private SpillingCollectors()
+    {
+    }
+
+    /**
+     * Collectors.groupingBy for key cardinalities that do not fit on the heap.
+     *
+     * Up to memoryBudget bytes (estimated by the weigher) the groups are built in memory; beyond, the records are
+     * hash partitioned to spill files and the partitions are grouped one at a time when the result is consumed. The
+     * result is a lazy stream of (key, group) pairs instead of one Map: close it (try with resources) when it is not
+     * consumed to the end, to delete the files left. Keys are compared with equals and hashCode, the groups keep
+     * the encounter order.
+     *
+     * @param codec
+     *            writes and reads the records, the key is computed again from the record read back
+     * @param memoryBudget
+     *            bytes of records kept on the heap by each accumulating thread
+     */
+    public static <T, K> Collector<T, ?, Stream<Map.Entry<K, List<T>>>> groupingBy(
+        Function<? super T, ? extends K> classifier,
+        RecordCodec<T> codec,
+        long memoryBudget,
+        ToLongFunction<? super T> weigher,
+        Path tempDirectory)
+    {
+        if (memoryBudget <= 0)
+        {
+            throw new IllegalArgumentException("memoryBudget must be positive: " + memoryBudget);
+        }
+        return Collector.<T, SpillingGroups<K, T>, Stream<Map.Entry<K, List<T>>>> of(
+            () -> new SpillingGroups<>(classifier, codec, memoryBudget, weigher, tempDirectory),
+            SpillingGroups::add,
+            SpillingGroups::merge,
+            SpillingGroups::toStream);
+    }
+}
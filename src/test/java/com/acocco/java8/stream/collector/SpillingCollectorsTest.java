@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.acocco.java8.stream.data.DatasetGenerator;
+import com.acocco.java8.stream.model.Person;
+import com.acocco.java8.stream.sort.RecordCodec;
+
+
+/**
+ * groupingBy with a memory budget, the groups beyond the budget go through spill files.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class SpillingCollectorsTest
+{
+    private static final RecordCodec<Person> PERSON_CODEC = new RecordCodec<Person>()
+    {
+        @Override
+        public void write(DataOutput out, Person record) throws IOException
+        {
+            out.writeUTF(record.name);
+            out.writeInt(record.age);
+        }
+
+        @Override
+        public Person read(DataInput in) throws IOException
+        {
+            return new Person(in.readUTF(), in.readInt());
+        }
+    };
+
+    @Test
+    public void testGroupingBy_InMemory() throws IOException
+    {
+        List<Person> persons = new DatasetGenerator(1).persons(1000, 10, 20);
+        Path directory = Files.createTempDirectory("spilling-test");
+
+        Map<Integer, List<String>> actual = collect(persons.stream(), 1L << 30, directory);
+
+        Assert.assertEquals(actual, expected(persons));
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testGroupingBy_HighCardinalitySpills() throws IOException
+    {
+        // about 100000 distinct ages, budget of 10000 persons: the partitions are split again when read back
+        List<Person> persons = new DatasetGenerator(2).persons(200000, 1000, 100000);
+        Path directory = Files.createTempDirectory("spilling-test");
+
+        Assert.assertEquals(collect(persons.stream(), 10000 * 8, directory), expected(persons));
+        Assert.assertEquals(collect(persons.parallelStream(), 10000 * 8, directory), expected(persons));
+
+        try (Stream<Path> files = Files.list(directory))
+        {
+            Assert.assertEquals(files.count(), 0);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testGroupingBy_ClosePartiallyConsumed() throws IOException
+    {
+        List<Person> persons = new DatasetGenerator(3).persons(50000, 1000, 10000);
+        Path directory = Files.createTempDirectory("spilling-test");
+
+        try (Stream<Map.Entry<Integer, List<Person>>> groups = persons
+            .stream()
+            .collect(SpillingCollectors.groupingBy(p -> p.age, PERSON_CODEC, 64 * 1000, p -> 64, directory)))
+        {
+            Assert.assertEquals(groups.limit(3).count(), 3);
+        }
+        try (Stream<Path> files = Files.list(directory))
+        {
+            Assert.assertEquals(files.count(), 0);
+        }
+        Files.delete(directory);
+    }
+
+    private Map<Integer, List<String>> collect(Stream<Person> persons, long budget, Path directory)
+    {
+        Map<Integer, List<String>> result = new HashMap<>();
+        try (Stream<Map.Entry<Integer, List<Person>>> groups = persons
+            .collect(SpillingCollectors.groupingBy(p -> p.age, PERSON_CODEC, budget, p -> 8, directory)))
+        {
+            groups.forEach(group -> Assert.assertNull(result.put(
+                group.getKey(),
+                group.getValue().stream().map(p -> p.name).collect(Collectors.toList()))));
+        }
+        return result;
+    }
+
+    private Map<Integer, List<String>> expected(List<Person> persons)
+    {
+        return persons
+            .stream()
+            .collect(Collectors.groupingBy(p -> p.age, Collectors.mapping(p -> p.name, Collectors.toList())));
+    }
+}
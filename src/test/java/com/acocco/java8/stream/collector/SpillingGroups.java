@@ -0,0 +1,389 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.acocco.java8.stream.sort.RecordCodec;
+
+
+/**
+ * Accumulation container of SpillingCollectors.groupingBy.
+ *
+ * The groups are built in a HashMap until the weight of the records reaches the budget, then the whole map is
+ * appended to PARTITIONS spill files, each record going to the file of hash(key). A spill appends to the last file
+ * of each partition, so a container creates one file per partition and not one per spill. The key is not written:
+ * the classifier computes it again when a partition is read back. At the end the partitions are loaded and grouped
+ * one at a time, a partition still bigger than the budget is split again with another hash.
+ *
+ * Each container, that is each thread of a parallel stream, has the whole budget.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class SpillingGroups<K, T>
+{
+    static final int PARTITIONS = 64;
+
+    /** Times a partition bigger than the budget is split again before it is loaded anyway */
+    private static final int MAX_DEPTH = 4;
+
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final Function<? super T, ? extends K> classifier;
+
+    private final RecordCodec<T> codec;
+
+    private final long memoryBudget;
+
+    private final ToLongFunction<? super T> weigher;
+
+    private final Path tempDirectory;
+
+    private Map<K, List<T>> groups = new HashMap<>();
+
+    private long used;
+
+    /** The spill files of every partition, in write order; null until the first spill */
+    private List<List<Path>> partitions;
+
+    SpillingGroups(
+        Function<? super T, ? extends K> classifier,
+        RecordCodec<T> codec,
+        long memoryBudget,
+        ToLongFunction<? super T> weigher,
+        Path tempDirectory)
+    {
+        this.classifier = classifier;
+        this.codec = codec;
+        this.memoryBudget = memoryBudget;
+        this.weigher = weigher;
+        this.tempDirectory = tempDirectory;
+    }
+
+    void add(T record)
+    {
+        groups.computeIfAbsent(classifier.apply(record), k -> new ArrayList<>()).add(record);
+        used += weigher.applyAsLong(record);
+        if (used >= memoryBudget)
+        {
+            spill();
+        }
+    }
+
+    /**
+     * Appends other after this, keeping the encounter order inside the groups.
+     */
+    SpillingGroups<K, T> merge(SpillingGroups<K, T> other)
+    {
+        if (partitions == null && other.partitions == null)
+        {
+            other.groups.forEach((key, group) -> groups.merge(key, group, (left, right) ->
+            {
+                left.addAll(right);
+                return left;
+            }));
+            used += other.used;
+            if (used >= memoryBudget)
+            {
+                spill();
+            }
+            return this;
+        }
+        spill();
+        other.spill();
+        for (int p = 0; p < PARTITIONS; p++)
+        {
+            partitions.get(p).addAll(other.partitions.get(p));
+        }
+        return this;
+    }
+
+    /**
+     * The groups as a lazy stream, in no particular order. Closing the stream deletes the spill files left.
+     */
+    Stream<Map.Entry<K, List<T>>> toStream()
+    {
+        if (partitions == null)
+        {
+            return groups.entrySet().stream().map(SpillingGroups::entry);
+        }
+        spill();
+        GroupIterator iterator = new GroupIterator(partitions);
+        partitions = null;
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.DISTINCT | Spliterator.NONNULL), false)
+            .onClose(iterator::close);
+    }
+
+    private void spill()
+    {
+        if (partitions == null)
+        {
+            partitions = new ArrayList<>(PARTITIONS);
+            for (int p = 0; p < PARTITIONS; p++)
+            {
+                partitions.add(new ArrayList<>());
+            }
+        }
+        if (groups.isEmpty())
+        {
+            return;
+        }
+
+        List<List<T>> byPartition = new ArrayList<>(PARTITIONS);
+        for (int p = 0; p < PARTITIONS; p++)
+        {
+            byPartition.add(new ArrayList<>());
+        }
+        groups.forEach((key, group) -> byPartition.get(partition(key, 0)).addAll(group));
+        for (int p = 0; p < PARTITIONS; p++)
+        {
+            if (!byPartition.get(p).isEmpty())
+            {
+                append(partitions.get(p), byPartition.get(p));
+            }
+        }
+        groups = new HashMap<>();
+        used = 0;
+    }
+
+    /**
+     * Appends the records to the last file of the partition, creating it if the partition has no file yet.
+     */
+    private void append(List<Path> partition, List<T> records)
+    {
+        Path file = null;
+        try
+        {
+            if (partition.isEmpty())
+            {
+                file = Files.createTempFile(tempDirectory, "group-", ".bin");
+                partition.add(file);
+            }
+            else
+            {
+                file = partition.get(partition.size() - 1);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.APPEND),
+                IO_BUFFER_SIZE)))
+            {
+                for (T record : records)
+                {
+                    out.writeBoolean(true);
+                    codec.write(out, record);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void read(Path file, Consumer<T> action)
+    {
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(file), IO_BUFFER_SIZE)))
+        {
+            while (in.read() > 0)
+            {
+                action.accept(codec.read(in));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int partition(Object key, int depth)
+    {
+        int h = (key == null ? 0 : key.hashCode()) * (0x9E3779B9 + 2 * depth);
+        return ((h ^ (h >>> 16)) & 0x7FFFFFFF) % PARTITIONS;
+    }
+
+    private static <K, T> Map.Entry<K, List<T>> entry(Map.Entry<K, List<T>> entry)
+    {
+        return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+    }
+
+    private static void delete(List<Path> files)
+    {
+        for (Path file : files)
+        {
+            try
+            {
+                if (file != null)
+                {
+                    Files.deleteIfExists(file);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Loads the partitions one at a time and hands out their groups.
+     */
+    private final class GroupIterator implements Iterator<Map.Entry<K, List<T>>>
+    {
+        /** Partitions not loaded yet, with their split depth */
+        private final List<List<Path>> pending = new ArrayList<>();
+
+        private final List<Integer> depths = new ArrayList<>();
+
+        private Iterator<Map.Entry<K, List<T>>> current = Collections.emptyIterator();
+
+        GroupIterator(List<List<Path>> partitions)
+        {
+            for (List<Path> partition : partitions)
+            {
+                if (!partition.isEmpty())
+                {
+                    pending.add(partition);
+                    depths.add(0);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!current.hasNext() && !pending.isEmpty())
+            {
+                int last = pending.size() - 1;
+                current = load(pending.remove(last), depths.remove(last));
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public Map.Entry<K, List<T>> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return entry(current.next());
+        }
+
+        void close()
+        {
+            pending.forEach(SpillingGroups::delete);
+            pending.clear();
+            current = Collections.emptyIterator();
+        }
+
+        /**
+         * Groups the partition in memory, or splits it in sub partitions pushed on pending when it does not fit.
+         */
+        private Iterator<Map.Entry<K, List<T>>> load(List<Path> files, int depth)
+        {
+            try
+            {
+                long size = 0;
+                for (Path file : files)
+                {
+                    size += Files.size(file);
+                }
+                if (size > memoryBudget && depth < MAX_DEPTH)
+                {
+                    split(files, depth + 1);
+                    return Collections.emptyIterator();
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+
+            Map<K, List<T>> loaded = new LinkedHashMap<>();
+            for (Path file : files)
+            {
+                read(file, record -> loaded
+                    .computeIfAbsent(classifier.apply(record), k -> new ArrayList<>())
+                    .add(record));
+            }
+            delete(files);
+            return loaded.entrySet().iterator();
+        }
+
+        private void split(List<Path> files, int depth)
+        {
+            List<List<T>> buffers = new ArrayList<>(PARTITIONS);
+            List<List<Path>> split = new ArrayList<>(PARTITIONS);
+            for (int p = 0; p < PARTITIONS; p++)
+            {
+                buffers.add(new ArrayList<>());
+                split.add(new ArrayList<>());
+            }
+            long[] weight = new long[1];
+            for (Path file : files)
+            {
+                read(file, record ->
+                {
+                    int p = partition(classifier.apply(record), depth);
+                    buffers.get(p).add(record);
+                    weight[0] += weigher.applyAsLong(record);
+                    if (weight[0] >= memoryBudget)
+                    {
+                        flush(buffers, split);
+                        weight[0] = 0;
+                    }
+                });
+            }
+            flush(buffers, split);
+            delete(files);
+            for (List<Path> partition : split)
+            {
+                if (!partition.isEmpty())
+                {
+                    pending.add(partition);
+                    depths.add(depth);
+                }
+            }
+        }
+
+        private void flush(List<List<T>> buffers, List<List<Path>> split)
+        {
+            for (int p = 0; p < PARTITIONS; p++)
+            {
+                if (!buffers.get(p).isEmpty())
+                {
+                    append(split.get(p), buffers.get(p));
+                    buffers.get(p).clear();
+                }
+            }
+        }
+    }
+}
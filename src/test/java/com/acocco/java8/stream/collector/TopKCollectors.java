@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collector;
+
+
+/**
+ * Collectors of the k greatest or smallest elements, the replacement of sorted(comparator).limit(k) that does not
+ * sort the whole input.
+ *
+ * Every thread of a parallel stream fills a bounded heap of at most k elements and the heaps are merged, the memory
+ * stays O(k * threads) whatever the size of the input. The order of elements with equal keys is not defined.
+ *
+ * <pre>
+ * List&lt;Person&gt; oldest = persons.stream().collect(TopKCollectors.topKByInt(10, p -> p.age));
+ * </pre>
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class TopKCollectors
+{
+    private TopKCollectors()
+    {
+    }
+
+    /**
+     * The k greatest elements according to the comparator, greatest first.
+     */
+    public static <T> Collector<T, ?, List<T>> topK(int k, Comparator<? super T> comparator)
+    {
+        checkK(k);
+        return Collector.<T, BoundedHeap<T>, List<T>> of(
+            () -> new BoundedHeap<>(k, comparator),
+            BoundedHeap::offer,
+            BoundedHeap::merge,
+            BoundedHeap::toList,
+            Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * The k smallest elements according to the comparator, smallest first.
+     */
+    public static <T> Collector<T, ?, List<T>> bottomK(int k, Comparator<? super T> comparator)
+    {
+        return topK(k, comparator.reversed());
+    }
+
+    /**
+     * The k elements with the greatest int key, greatest first.
+     */
+    public static <T> Collector<T, ?, List<T>> topKByInt(int k, ToIntFunction<? super T> key)
+    {
+        return byInt(k, key, true);
+    }
+
+    /**
+     * The k elements with the smallest int key, smallest first.
+     */
+    public static <T> Collector<T, ?, List<T>> bottomKByInt(int k, ToIntFunction<? super T> key)
+    {
+        return byInt(k, key, false);
+    }
+
+    private static <T> Collector<T, ?, List<T>> byInt(int k, ToIntFunction<? super T> key, boolean greatest)
+    {
+        checkK(k);
+        return Collector.<T, IntKeyBoundedHeap<T>, List<T>> of(
+            () -> new IntKeyBoundedHeap<>(k, key, greatest),
+            IntKeyBoundedHeap::offer,
+            IntKeyBoundedHeap::merge,
+            IntKeyBoundedHeap::toList,
+            Collector.Characteristics.UNORDERED);
+    }
+
+    private static void checkK(int k)
+    {
+        if (k < 0)
+        {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.collector;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.acocco.java8.stream.model.Person;
+
+
+/**
+ * Top-K selection with bounded heaps instead of reduce or sorted().limit(k).
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class TopKCollectorsTest
+{
+    @Test
+    public void testTopKByInt_Oldest()
+    {
+        List<Person> persons = Arrays.asList(
+            new Person("Davide", 18),
+            new Person("Giovanni", 18),
+            new Person("Antonio", 23),
+            new Person("Fabio", 23),
+            new Person("Mauro", 12),
+            new Person("Mirko", 12));
+
+        List<Person> oldest = persons.stream().collect(TopKCollectors.topKByInt(1, p -> p.age));
+        Assert.assertEquals(oldest.size(), 1);
+        Assert.assertEquals(oldest.get(0).age, 23); // Antonio or Fabio
+
+        List<Person> youngest = persons.stream().collect(TopKCollectors.bottomKByInt(3, p -> p.age));
+        Assert.assertEquals(ages(youngest), Arrays.asList(12, 12, 18));
+
+        Assert.assertTrue(persons.stream().collect(TopKCollectors.topKByInt(0, p -> p.age)).isEmpty());
+        Assert.assertEquals(persons.stream().collect(TopKCollectors.topKByInt(100, p -> p.age)).size(), 6);
+    }
+
+    @Test
+    public void testTopK_SameAsSortedLimit()
+    {
+        Random random = new Random(3);
+        List<Person> persons = IntStream
+            .range(0, 200000)
+            .mapToObj(i -> new Person("P" + i, random.nextInt(1000000)))
+            .collect(Collectors.toList());
+        Comparator<Person> byAge = Comparator.comparingInt(p -> p.age);
+
+        for (int k : new int[] { 1, 10, 10000 })
+        {
+            List<Integer> expectedTop = ages(persons.stream().sorted(byAge.reversed()).limit(k));
+            List<Integer> expectedBottom = ages(persons.stream().sorted(byAge).limit(k));
+
+            Assert.assertEquals(ages(persons.parallelStream().collect(TopKCollectors.topK(k, byAge))), expectedTop);
+            Assert.assertEquals(ages(persons.parallelStream().collect(TopKCollectors.bottomK(k, byAge))), expectedBottom);
+            Assert.assertEquals(
+                ages(persons.parallelStream().collect(TopKCollectors.topKByInt(k, p -> p.age))),
+                expectedTop);
+            Assert.assertEquals(
+                ages(persons.stream().collect(TopKCollectors.bottomKByInt(k, p -> p.age))),
+                expectedBottom);
+        }
+    }
+
+    private List<Integer> ages(List<Person> persons)
+    {
+        return ages(persons.stream());
+    }
+
+    private List<Integer> ages(Stream<Person> persons)
+    {
+        return persons.map(p -> p.age).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.column;
+
+/**
+ * Immutable count, sum, min, max and average of an int column, the columnar counterpart of IntSummaryStatistics.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class ColumnStatistics
+{
+    static final ColumnStatistics EMPTY = new ColumnStatistics(0, 0, Integer.MAX_VALUE, Integer.MIN_VALUE);
+
+    private final long count;
+
+    private final long sum;
+
+    private final int min;
+
+    private final int max;
+
+    ColumnStatistics(long count, long sum, int min, int max)
+    {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getSum()
+    {
+        return sum;
+    }
+
+    /**
+     * Integer.MAX_VALUE when there are no values, as IntSummaryStatistics.
+     */
+    public int getMin()
+    {
+        return min;
+    }
+
+    /**
+     * Integer.MIN_VALUE when there are no values, as IntSummaryStatistics.
+     */
+    public int getMax()
+    {
+        return max;
+    }
+
+    public double getAverage()
+    {
+        return count > 0 ? (double) sum / count : 0.0d;
+    }
+
+    ColumnStatistics combine(ColumnStatistics other)
+    {
+        return new ColumnStatistics(
+            count + other.count,
+            sum + other.sum,
+            Math.min(min, other.min),
+            Math.max(max, other.max));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "%s{count=%d, sum=%d, min=%d, average=%f, max=%d}",
+            getClass().getSimpleName(),
+            count,
+            sum,
+            min,
+            getAverage(),
+            max);
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.column;
+
+/**
+ * Number of rows for every value of a dense int range [min, max], the result of a group by count on an int column.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class Histogram
+{
+    private final int min;
+
+    private final long[] counts;
+
+    Histogram(int min, long[] counts)
+    {
+        this.min = min;
+        this.counts = counts;
+    }
+
+    public int getMin()
+    {
+        return min;
+    }
+
+    public int getMax()
+    {
+        return min + counts.length - 1;
+    }
+
+    /**
+     * Number of rows with the given value, 0 outside [min, max].
+     */
+    public long count(int value)
+    {
+        long index = (long) value - min;
+        return index >= 0 && index < counts.length ? counts[(int) index] : 0;
+    }
+
+    /**
+     * Number of distinct values with at least one row.
+     */
+    public int distinctValues()
+    {
+        int distinct = 0;
+        for (long count : counts)
+        {
+            if (count > 0)
+            {
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < counts.length; i++)
+        {
+            if (counts[i] > 0)
+            {
+                if (builder.length() > 1)
+                {
+                    builder.append(", ");
+                }
+                builder.append(min + i).append('=').append(counts[i]);
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,381 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.column;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import com.acocco.java8.stream.model.Person;
+
+
+/**
+ * Column oriented store of Person rows: the ages in an int[], the names as ids of a StringPool in another int[].
+ *
+ * The aggregate kernels (statistics, count, filter, histogram) are plain counted loops over the int arrays, with no
+ * object per row, no pointer to chase and no lambda call in the loop, which is the shape the JIT unrolls and
+ * vectorizes. Every kernel has a parallel version that splits the rows in chunks over the workers of the current
+ * ForkJoinPool (the common pool, or a StreamPool when called inside StreamPool.execute).
+ *
+ * Rows are only appended. Not thread safe while appending, safe for concurrent reads once filled.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class PersonTable
+{
+    /** Rows handled by a single task of the parallel kernels */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /** Widest range of values ageHistogram accepts */
+    private static final int MAX_HISTOGRAM_SIZE = 1 << 24;
+
+    private final StringPool names = new StringPool();
+
+    private int[] nameIds;
+
+    private int[] ages;
+
+    private int size;
+
+    public PersonTable()
+    {
+        this(16);
+    }
+
+    public PersonTable(int capacity)
+    {
+        nameIds = new int[capacity];
+        ages = new int[capacity];
+    }
+
+    public static PersonTable of(Collection<Person> persons)
+    {
+        PersonTable table = new PersonTable(persons.size());
+        persons.forEach(p -> table.add(p.name, p.age));
+        return table;
+    }
+
+    /**
+     * Builds a table on the given columns, without copy: row i has the name names.get(nameIds[i]) and the age
+     * ages[i].
+     *
+     * @throws IllegalArgumentException
+     *             if the names are not distinct or the columns have different lengths
+     */
+    public static PersonTable fromColumns(List<String> names, int[] nameIds, int[] ages)
+    {
+        if (nameIds.length != ages.length)
+        {
+            throw new IllegalArgumentException("nameIds and ages must have the same length");
+        }
+        PersonTable table = new PersonTable(0);
+        for (int id = 0; id < names.size(); id++)
+        {
+            if (table.names.intern(names.get(id)) != id)
+            {
+                throw new IllegalArgumentException("Duplicate name: " + names.get(id));
+            }
+        }
+        table.nameIds = nameIds;
+        table.ages = ages;
+        table.size = ages.length;
+        return table;
+    }
+
+    public void add(String name, int age)
+    {
+        if (size == ages.length)
+        {
+            int capacity = Math.max(16, size + (size >> 1));
+            ages = Arrays.copyOf(ages, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+        }
+        nameIds[size] = names.intern(name);
+        ages[size] = age;
+        size++;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int getAge(int row)
+    {
+        checkRow(row);
+        return ages[row];
+    }
+
+    public String getName(int row)
+    {
+        checkRow(row);
+        return names.get(nameIds[row]);
+    }
+
+    /**
+     * Materializes the row as a Person.
+     */
+    public Person get(int row)
+    {
+        return new Person(getName(row), getAge(row));
+    }
+
+    // ------------------------------ sequential kernels
+
+    /**
+     * Count, sum, min, max and average of the ages, the columnar Collectors.summarizingInt(p -> p.age).
+     */
+    public ColumnStatistics ageStatistics()
+    {
+        return statistics(ages, 0, size);
+    }
+
+    /**
+     * Statistics of the ages of the selected rows, see filterAgeBetween.
+     */
+    public ColumnStatistics ageStatistics(int[] rows)
+    {
+        if (rows.length == 0)
+        {
+            return ColumnStatistics.EMPTY;
+        }
+        long sum = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int row : rows)
+        {
+            int age = ages[row];
+            sum += age;
+            min = Math.min(min, age);
+            max = Math.max(max, age);
+        }
+        return new ColumnStatistics(rows.length, sum, min, max);
+    }
+
+    public long sumAges()
+    {
+        return sum(ages, 0, size);
+    }
+
+    /**
+     * Number of rows with min &lt;= age &lt;= max.
+     */
+    public long countAgeBetween(int min, int max)
+    {
+        return countBetween(ages, 0, size, min, max);
+    }
+
+    /**
+     * Indexes of the rows with min &lt;= age &lt;= max, in row order.
+     */
+    public int[] filterAgeBetween(int min, int max)
+    {
+        return filterBetween(ages, 0, size, min, max);
+    }
+
+    /**
+     * Number of rows for every age, the columnar Collectors.groupingBy(p -> p.age, Collectors.counting()).
+     */
+    public Histogram ageHistogram()
+    {
+        ColumnStatistics statistics = ageStatistics();
+        if (statistics.getCount() == 0)
+        {
+            return new Histogram(0, new long[0]);
+        }
+        return new Histogram(statistics.getMin(), histogram(ages, 0, size, statistics.getMin(), statistics.getMax()));
+    }
+
+    /**
+     * Number of rows for every name, in order of first appearance.
+     */
+    public Map<String, Long> countByName()
+    {
+        long[] counts = histogram(nameIds, 0, size, 0, names.size() - 1);
+        return toNameCounts(counts);
+    }
+
+    // ------------------------------ parallel kernels
+
+    public ColumnStatistics parallelAgeStatistics()
+    {
+        return chunks()
+            .mapToObj(c -> statistics(ages, chunkStart(c), chunkEnd(c)))
+            .reduce(ColumnStatistics.EMPTY, ColumnStatistics::combine);
+    }
+
+    public long parallelSumAges()
+    {
+        return chunks().mapToLong(c -> sum(ages, chunkStart(c), chunkEnd(c))).sum();
+    }
+
+    public long parallelCountAgeBetween(int min, int max)
+    {
+        return chunks().mapToLong(c -> countBetween(ages, chunkStart(c), chunkEnd(c), min, max)).sum();
+    }
+
+    public int[] parallelFilterAgeBetween(int min, int max)
+    {
+        // the chunks are concatenated in order, the rows stay sorted
+        return chunks()
+            .mapToObj(c -> filterBetween(ages, chunkStart(c), chunkEnd(c), min, max))
+            .flatMapToInt(Arrays::stream)
+            .toArray();
+    }
+
+    public Histogram parallelAgeHistogram()
+    {
+        ColumnStatistics statistics = parallelAgeStatistics();
+        if (statistics.getCount() == 0)
+        {
+            return new Histogram(0, new long[0]);
+        }
+        int min = statistics.getMin();
+        int max = statistics.getMax();
+        long[] counts = chunks()
+            .mapToObj(c -> histogram(ages, chunkStart(c), chunkEnd(c), min, max))
+            .reduce(PersonTable::add)
+            .get();
+        return new Histogram(min, counts);
+    }
+
+    public Map<String, Long> parallelCountByName()
+    {
+        int maxId = names.size() - 1;
+        long[] counts = chunks()
+            .mapToObj(c -> histogram(nameIds, chunkStart(c), chunkEnd(c), 0, maxId))
+            .reduce(new long[maxId + 1], PersonTable::add);
+        return toNameCounts(counts);
+    }
+
+    // ------------------------------ loops
+
+    private static ColumnStatistics statistics(int[] values, int from, int to)
+    {
+        if (from == to)
+        {
+            return ColumnStatistics.EMPTY;
+        }
+        return new ColumnStatistics(to - from, sum(values, from, to), min(values, from, to), max(values, from, to));
+    }
+
+    private static long sum(int[] values, int from, int to)
+    {
+        long sum = 0;
+        for (int i = from; i < to; i++)
+        {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    private static int min(int[] values, int from, int to)
+    {
+        int min = Integer.MAX_VALUE;
+        for (int i = from; i < to; i++)
+        {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    private static int max(int[] values, int from, int to)
+    {
+        int max = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++)
+        {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    private static long countBetween(int[] values, int from, int to, int min, int max)
+    {
+        long count = 0;
+        for (int i = from; i < to; i++)
+        {
+            int value = values[i];
+            // no branch on the data
+            count += (value >= min) & (value <= max) ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static int[] filterBetween(int[] values, int from, int to, int min, int max)
+    {
+        int[] rows = new int[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++)
+        {
+            int value = values[i];
+            rows[count] = i;
+            count += (value >= min) & (value <= max) ? 1 : 0;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private static long[] histogram(int[] values, int from, int to, int min, int max)
+    {
+        if ((long) max - min >= MAX_HISTOGRAM_SIZE)
+        {
+            throw new IllegalStateException("Range [" + min + ", " + max + "] too wide for a histogram");
+        }
+        long[] counts = new long[max - min + 1];
+        for (int i = from; i < to; i++)
+        {
+            counts[values[i] - min]++;
+        }
+        return counts;
+    }
+
+    private static long[] add(long[] left, long[] right)
+    {
+        long[] result = new long[left.length];
+        for (int i = 0; i < left.length; i++)
+        {
+            result[i] = left[i] + right[i];
+        }
+        return result;
+    }
+
+    private Map<String, Long> toNameCounts(long[] counts)
+    {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int id = 0; id < counts.length; id++)
+        {
+            if (counts[id] > 0)
+            {
+                result.put(names.get(id), counts[id]);
+            }
+        }
+        return result;
+    }
+
+    private IntStream chunks()
+    {
+        return IntStream.range(0, (size + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel();
+    }
+
+    private int chunkStart(int chunk)
+    {
+        return chunk * CHUNK_SIZE;
+    }
+
+    private int chunkEnd(int chunk)
+    {
+        return Math.min(size, (chunk + 1) * CHUNK_SIZE);
+    }
+
+    private void checkRow(int row)
+    {
+        if (row < 0 || row >= size)
+        {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.column;
+
+import java.util.Arrays;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.acocco.java8.stream.model.Person;
+
+
+/**
+ * The aggregates of StreamTest computed on a column oriented PersonTable.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class PersonTableTest
+{
+    @Test
+    public void testAgeStatistics()
+    {
+        PersonTable table = PersonTable.of(getPersons());
+
+        ColumnStatistics ageSummary = table.ageStatistics();
+        System.out.println(ageSummary);
+        // ColumnStatistics{count=6, sum=106, min=12, average=17,666667, max=23}
+
+        Assert.assertEquals(ageSummary.getCount(), 6);
+        Assert.assertEquals(ageSummary.getSum(), 106);
+        Assert.assertEquals(ageSummary.getMin(), 12);
+        Assert.assertEquals(ageSummary.getMax(), 23);
+
+        Assert.assertEquals(table.ageHistogram().toString(), "{12=2, 18=2, 23=2}");
+        Assert.assertEquals(table.countAgeBetween(13, 23), 4);
+        Assert.assertEquals(table.filterAgeBetween(13, 20), new int[] { 0, 1 });
+        Assert.assertEquals(table.getName(3), "Fabio");
+    }
+
+    @Test
+    public void testParallelKernels_SameAsStreams()
+    {
+        Random random = new Random(7);
+        List<Person> persons = IntStream
+            .range(0, 500000)
+            .mapToObj(i -> new Person("P" + random.nextInt(50), random.nextInt(100)))
+            .collect(Collectors.toList());
+        PersonTable table = PersonTable.of(persons);
+
+        IntSummaryStatistics expected = persons.stream().collect(Collectors.summarizingInt(p -> p.age));
+        ColumnStatistics actual = table.parallelAgeStatistics();
+        Assert.assertEquals(actual.getCount(), expected.getCount());
+        Assert.assertEquals(actual.getSum(), expected.getSum());
+        Assert.assertEquals(actual.getMin(), expected.getMin());
+        Assert.assertEquals(actual.getMax(), expected.getMax());
+        Assert.assertEquals(table.parallelSumAges(), table.sumAges());
+
+        Assert.assertEquals(
+            table.parallelCountAgeBetween(20, 29),
+            persons.stream().filter(p -> p.age >= 20 && p.age <= 29).count());
+        Assert.assertEquals(table.parallelFilterAgeBetween(20, 29), table.filterAgeBetween(20, 29));
+
+        Map<Integer, Long> ages = persons
+            .stream()
+            .collect(Collectors.groupingBy(p -> p.age, Collectors.counting()));
+        Histogram histogram = table.parallelAgeHistogram();
+        ages.forEach((age, count) -> Assert.assertEquals(histogram.count(age), count.longValue()));
+        Assert.assertEquals(histogram.distinctValues(), ages.size());
+
+        Map<String, Long> names = persons
+            .stream()
+            .collect(Collectors.groupingBy(p -> p.name, Collectors.counting()));
+        Assert.assertEquals(table.parallelCountByName(), names);
+        Assert.assertEquals(table.countByName(), names);
+    }
+
+    @Test
+    public void testStringPool_DistinctBytesOnce()
+    {
+        StringPool pool = new StringPool();
+        for (int round = 0; round < 2; round++)
+        {
+            for (int i = 0; i < 10_000; i++)
+            {
+                Assert.assertEquals(pool.intern("person-" + i), i);
+            }
+        }
+        Assert.assertEquals(pool.intern("zo\u00eb"), 10_000);
+        Assert.assertEquals(pool.intern("zo\u00eb"), 10_000);
+        Assert.assertEquals(pool.intern(""), 10_001);
+        Assert.assertEquals(pool.size(), 10_002);
+        Assert.assertEquals(pool.get(1_234), "person-1234");
+        Assert.assertEquals(pool.get(10_000), "zo\u00eb");
+        Assert.assertEquals(pool.get(10_001), "");
+    }
+
+    @Test
+    public void testEmptyTable()
+    {
+        PersonTable table = new PersonTable();
+        Assert.assertEquals(table.ageStatistics().getCount(), 0);
+        Assert.assertEquals(table.parallelAgeStatistics().getMin(), Integer.MAX_VALUE);
+        Assert.assertEquals(table.parallelAgeHistogram().distinctValues(), 0);
+        Assert.assertTrue(table.parallelCountByName().isEmpty());
+    }
+
+    private List<Person> getPersons()
+    {
+        return Arrays.asList(
+            new Person("Davide", 18),
+            new Person("Giovanni", 18),
+            new Person("Antonio", 23),
+            new Person("Fabio", 23),
+            new Person("Mauro", 12),
+            new Person("Mirko", 12));
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.column;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Dictionary of distinct strings stored once, as UTF-8, in a single byte array.
+ *
+ * intern returns a dense int id; a column of strings becomes an int[] of ids. The String objects are only created
+ * while interning and when a value is read back with get.
+ *
+ * The ids are found again through an open addressing table of ints, keyed by the hash of the UTF-8 bytes and
+ * compared with the bytes stored in place: besides the data the pool holds three ints per string, not a String, a
+ * boxed Integer and a map node.
+ *
+ * Not thread safe while interning, safe for concurrent reads once filled.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class StringPool
+{
+    private byte[] data = new byte[256];
+
+    /** offsets[id] is where the string id starts, offsets[id + 1] where it ends */
+    private int[] offsets = new int[17];
+
+    private int size;
+
+    /** hashes[id] is the hash of the bytes of the string id */
+    private int[] hashes = new int[16];
+
+    /** Linear probing table of id + 1, 0 for a free slot */
+    private int[] table = new int[32];
+
+    /**
+     * Returns the id of the value, adding it to the pool the first time it is seen.
+     */
+    public int intern(String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        for (int entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask)
+        {
+            if (hashes[entry - 1] == hash && equals(entry - 1, bytes))
+            {
+                return entry - 1;
+            }
+        }
+
+        int start = offsets[size];
+        if (start + bytes.length > data.length)
+        {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, start + bytes.length));
+        }
+        System.arraycopy(bytes, 0, data, start, bytes.length);
+
+        if (size + 2 > offsets.length)
+        {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[size + 1] = start + bytes.length;
+        if (size == hashes.length)
+        {
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        hashes[size] = hash;
+        table[slot] = size + 1;
+        if (++size * 4 > table.length * 3)
+        {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    private boolean equals(int id, byte[] bytes)
+    {
+        int start = offsets[id];
+        if (offsets[id + 1] - start != bytes.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++)
+        {
+            if (data[start + i] != bytes[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash()
+    {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++)
+        {
+            int slot = hashes[id] & mask;
+            while (table[slot] != 0)
+            {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    /**
+     * FNV-1a, then mixed so that the low bits used by the table depend on every byte.
+     */
+    private static int hash(byte[] bytes)
+    {
+        int h = 0x811c9dc5;
+        for (byte b : bytes)
+        {
+            h ^= b;
+            h *= 0x01000193;
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public String get(int id)
+    {
+        if (id < 0 || id >= size)
+        {
+            throw new IndexOutOfBoundsException("Id: " + id + ", Size: " + size);
+        }
+        return new String(data, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Number of distinct strings.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Bytes used by the UTF-8 data.
+     */
+    public int byteSize()
+    {
+        return offsets[size];
+    }
+}
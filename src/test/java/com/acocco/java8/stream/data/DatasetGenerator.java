@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import com.acocco.java8.stream.column.PersonTable;
+import com.acocco.java8.stream.model.Module;
+import com.acocco.java8.stream.model.Person;
+import com.acocco.java8.stream.model.SubModule;
+import com.acocco.java8.stream.sort.UuidArray;
+
+
+/**
+ * Parallel generator of the test datasets of the stream examples: UUID keys, persons and SubModule trees.
+ *
+ * The output is cut in chunks of fixed size and every chunk draws from its own SplittableRandom, seeded from the
+ * generator seed and the chunk index: there is no shared, contended random source as with UUID.randomUUID(), and the
+ * same seed gives the same dataset whatever the number of threads and the order they run the chunks in.
+ *
+ * The bulk forms write straight into primitive arrays (UuidArray, PersonTable). The chunks run on the current
+ * ForkJoinPool, the common pool or a StreamPool.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class DatasetGenerator
+{
+    /** Elements generated by one task */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+    public DatasetGenerator(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Random version 4 UUIDs, as UUID.randomUUID() would produce, stored as pairs of longs.
+     */
+    public UuidArray uuids(int size)
+    {
+        long[] msb = new long[size];
+        long[] lsb = new long[size];
+        forEachChunk(size, (random, from, to) ->
+        {
+            for (int i = from; i < to; i++)
+            {
+                msb[i] = (random.nextLong() & ~0xF000L) | 0x4000L;                           // version 4
+                lsb[i] = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L; // IETF variant
+            }
+        });
+        return UuidArray.wrap(msb, lsb);
+    }
+
+    /**
+     * The same UUIDs as uuids(size), as strings.
+     */
+    public List<String> uuidStrings(int size)
+    {
+        UuidArray uuids = uuids(size);
+        return parallelList(size, i -> new UUID(uuids.getMostSignificantBits(i), uuids.getLeastSignificantBits(i))
+            .toString());
+    }
+
+    /**
+     * A column oriented table of persons, the names drawn among distinctNames names "Person0", "Person1", ... and
+     * the ages uniformly in [0, maxAge].
+     */
+    public PersonTable personTable(int size, int distinctNames, int maxAge)
+    {
+        checkPositive(distinctNames, "distinctNames");
+        int[] nameIds = new int[size];
+        int[] ages = new int[size];
+        forEachChunk(size, (random, from, to) ->
+        {
+            for (int i = from; i < to; i++)
+            {
+                nameIds[i] = random.nextInt(distinctNames);
+                ages[i] = random.nextInt(maxAge + 1);
+            }
+        });
+        List<String> names = new ArrayList<>(distinctNames);
+        for (int i = 0; i < distinctNames; i++)
+        {
+            names.add(name(i));
+        }
+        return PersonTable.fromColumns(names, nameIds, ages);
+    }
+
+    /**
+     * The same persons as personTable, as objects.
+     */
+    public List<Person> persons(int size, int distinctNames, int maxAge)
+    {
+        PersonTable table = personTable(size, distinctNames, maxAge);
+        return parallelList(size, i -> new Person(table.getName(i), table.getAge(i)));
+    }
+
+    /**
+     * SubModules "Xdmsub0", "Xdmsub1", ... with between 0 and maxModules modules each.
+     */
+    public List<SubModule> subModules(int size, int maxModules)
+    {
+        int[] fanOut = new int[size];
+        forEachChunk(size, (random, from, to) ->
+        {
+            for (int i = from; i < to; i++)
+            {
+                fanOut[i] = random.nextInt(maxModules + 1);
+            }
+        });
+        return parallelList(size, i ->
+        {
+            SubModule subModule = new SubModule("Xdmsub" + i);
+            for (int m = 0; m < fanOut[i]; m++)
+            {
+                subModule.modules.add(new Module("Xdm" + m + " <- " + subModule.name));
+            }
+            return subModule;
+        });
+    }
+
+    private static String name(int id)
+    {
+        return "Person" + id;
+    }
+
+    private <T> List<T> parallelList(int size, IntFunction<T> generator)
+    {
+        Object[] elements = new Object[size];
+        forEachChunk(size, (random, from, to) ->
+        {
+            for (int i = from; i < to; i++)
+            {
+                elements[i] = generator.apply(i);
+            }
+        });
+        @SuppressWarnings("unchecked")
+        List<T> list = (List<T>) Arrays.asList(elements);
+        return list;
+    }
+
+    private void forEachChunk(int size, ChunkFiller filler)
+    {
+        if (size < 0)
+        {
+            throw new IllegalArgumentException("size must not be negative: " + size);
+        }
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk ->
+        {
+            SplittableRandom random = new SplittableRandom(seed + GOLDEN_GAMMA * (chunk + 1));
+            filler.fill(random, chunk * CHUNK_SIZE, (int) Math.min(size, (chunk + 1L) * CHUNK_SIZE));
+        });
+    }
+
+    private static void checkPositive(int value, String name)
+    {
+        if (value <= 0)
+        {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkFiller
+    {
+        void fill(SplittableRandom random, int from, int to);
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.data;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.acocco.java8.stream.column.PersonTable;
+import com.acocco.java8.stream.model.Person;
+import com.acocco.java8.stream.model.SubModule;
+import com.acocco.java8.stream.pool.StreamPool;
+import com.acocco.java8.stream.pool.StreamPools;
+import com.acocco.java8.stream.sort.UuidArray;
+
+
+/**
+ * Reproducible parallel generation of the stream datasets.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class DatasetGeneratorTest
+{
+    @Test
+    public void testUuids()
+    {
+        long t0 = System.nanoTime();
+        UuidArray uuids = new DatasetGenerator(42).uuids(1000000);
+        long t1 = System.nanoTime();
+        System.out.println(String.format("generation took: %d ms", TimeUnit.NANOSECONDS.toMillis(t1 - t0)));
+
+        Assert.assertEquals(uuids.size(), 1000000);
+        UUID uuid = uuids.get(123456);
+        Assert.assertEquals(uuid.version(), 4);
+        Assert.assertEquals(uuid.variant(), 2);
+        Assert.assertEquals(new HashSet<>(new DatasetGenerator(42).uuidStrings(100000)).size(), 100000);
+    }
+
+    @Test
+    public void testSameSeed_SameDataset_AnyParallelism()
+    {
+        List<String> common = new DatasetGenerator(7).uuidStrings(300000);
+        List<String> single;
+        StreamPool pool = StreamPools.getOrCreate("test-generator", 1);
+        try
+        {
+            single = pool.execute(() -> new DatasetGenerator(7).uuidStrings(300000));
+        }
+        finally
+        {
+            StreamPools.shutdown("test-generator");
+        }
+        Assert.assertEquals(single, common);
+        Assert.assertFalse(new DatasetGenerator(8).uuidStrings(10).equals(common.subList(0, 10)));
+    }
+
+    @Test
+    public void testPersonsAndSubModules()
+    {
+        DatasetGenerator generator = new DatasetGenerator(1);
+
+        PersonTable table = generator.personTable(200000, 10, 99);
+        Assert.assertEquals(table.size(), 200000);
+        Assert.assertTrue(table.ageStatistics().getMax() <= 99);
+        Assert.assertEquals(table.countByName().size(), 10);
+
+        List<Person> persons = generator.persons(200000, 10, 99);
+        Assert.assertEquals(persons.get(777).name, table.getName(777));
+        Assert.assertEquals(persons.get(777).age, table.getAge(777));
+
+        List<SubModule> subModules = generator.subModules(1000, 5);
+        Assert.assertEquals(subModules.size(), 1000);
+        subModules.forEach(f -> Assert.assertTrue(f.modules.size() <= 5));
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.flat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+
+/**
+ * Spliterator over the children of a list of parents (the modules of a list of SubModules), without a stream per
+ * parent.
+ *
+ * Positions are global child indexes: childStart[p] is the index of the first child of parent p. trySplit cuts the
+ * range of children in two halves, even inside a parent, so one parent with a huge fan-out is shared between the
+ * workers instead of ending up in a single task.
+ *
+ * The child lists must not change while the spliterator is in use.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class FlatListSpliterator<P, C> implements Spliterator<C>
+{
+    /** Below this number of children trySplit returns null */
+    private static final int MIN_SPLIT_SIZE = 1024;
+
+    private final List<? extends P> parents;
+
+    private final Function<? super P, ? extends List<? extends C>> children;
+
+    /** Prefix sums of the number of children, shared by all the splits */
+    private final long[] childStart;
+
+    private long index;
+
+    private final long fence;
+
+    public FlatListSpliterator(List<? extends P> parents, Function<? super P, ? extends List<? extends C>> children)
+    {
+        this.parents = parents;
+        this.children = children;
+        this.childStart = new long[parents.size() + 1];
+        for (int p = 0; p < parents.size(); p++)
+        {
+            childStart[p + 1] = childStart[p] + children.apply(parents.get(p)).size();
+        }
+        this.index = 0;
+        this.fence = childStart[parents.size()];
+    }
+
+    private FlatListSpliterator(FlatListSpliterator<P, C> parent, long index, long fence)
+    {
+        this.parents = parent.parents;
+        this.children = parent.children;
+        this.childStart = parent.childStart;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super C> action)
+    {
+        if (index >= fence)
+        {
+            return false;
+        }
+        int p = parentOf(index);
+        action.accept(children.apply(parents.get(p)).get((int) (index - childStart[p])));
+        index++;
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super C> action)
+    {
+        if (index >= fence)
+        {
+            return;
+        }
+        int p = parentOf(index);
+        long i = index;
+        index = fence;
+        while (i < fence)
+        {
+            List<? extends C> list = children.apply(parents.get(p));
+            int from = (int) (i - childStart[p]);
+            int to = (int) (Math.min(fence, childStart[p + 1]) - childStart[p]);
+            for (int c = from; c < to; c++)
+            {
+                action.accept(list.get(c));
+            }
+            i += to - from;
+            p++;
+        }
+    }
+
+    @Override
+    public Spliterator<C> trySplit()
+    {
+        long size = fence - index;
+        if (size < MIN_SPLIT_SIZE)
+        {
+            return null;
+        }
+        long middle = index + (size >>> 1);
+        Spliterator<C> prefix = new FlatListSpliterator<>(this, index, middle);
+        index = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | SIZED | SUBSIZED;
+    }
+
+    /**
+     * Returns the parent owning the child at the global index, skipping the parents without children.
+     */
+    private int parentOf(long childIndex)
+    {
+        int p = Arrays.binarySearch(childStart, childIndex);
+        if (p < 0)
+        {
+            return -p - 2;
+        }
+        // several parents start here when some have no children: take the last one
+        while (p + 1 < childStart.length && childStart[p + 1] == childIndex)
+        {
+            p++;
+        }
+        return p;
+    }
+}
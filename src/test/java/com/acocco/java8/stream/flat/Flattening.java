@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.flat;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.acocco.java8.stream.model.Module;
+import com.acocco.java8.stream.model.SubModule;
+
+
+/**
+ * Alternatives to flatMap(f -> f.modules.stream()) that do not create a Stream for every parent.
+ *
+ * mapMulti is the push style flatMap of Java 16 for Java 8: the mapper hands every child to a Consumer which feeds
+ * the downstream stages directly.
+ *
+ * <pre>
+ * Flattening.mapMulti(subModules.stream(), (SubModule f, Consumer&lt;Module&gt; sink) -> f.modules.forEach(sink))
+ * </pre>
+ *
+ * modules(subModules) streams the children of a list through a FlatListSpliterator, which splits by number of
+ * children: parallel flattening stays balanced when a few parents own most of the children.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class Flattening
+{
+    private Flattening()
+    {
+    }
+
+    /**
+     * Streams the modules of all the sub modules, in order.
+     */
+    public static Stream<Module> modules(List<SubModule> subModules)
+    {
+        return flatten(subModules, f -> f.modules, false);
+    }
+
+    /**
+     * Parallel version of modules, balanced on the number of modules.
+     */
+    public static Stream<Module> parallelModules(List<SubModule> subModules)
+    {
+        return flatten(subModules, f -> f.modules, true);
+    }
+
+    /**
+     * Streams the children of all the parents, in order.
+     */
+    public static <P, C> Stream<C> flatten(
+        List<? extends P> parents,
+        Function<? super P, ? extends List<? extends C>> children,
+        boolean parallel)
+    {
+        return StreamSupport.stream(new FlatListSpliterator<P, C>(parents, children), parallel);
+    }
+
+    /**
+     * Replaces each element of the stream with the elements the mapper pushes into the given consumer.
+     */
+    public static <T, R> Stream<R> mapMulti(Stream<T> stream, BiConsumer<? super T, ? super Consumer<R>> mapper)
+    {
+        Spliterator<T> source = stream.spliterator();
+        return StreamSupport
+            .stream(new MapMultiSpliterator<>(source, mapper), stream.isParallel())
+            .onClose(stream::close);
+    }
+
+    private static final class MapMultiSpliterator<T, R> implements Spliterator<R>
+    {
+        private final Spliterator<T> source;
+
+        private final BiConsumer<? super T, ? super Consumer<R>> mapper;
+
+        /** Children of the last parent pulled by tryAdvance and not yet consumed */
+        private final ArrayDeque<R> buffer = new ArrayDeque<>();
+
+        private final Consumer<R> bufferSink = buffer::add;
+
+        MapMultiSpliterator(Spliterator<T> source, BiConsumer<? super T, ? super Consumer<R>> mapper)
+        {
+            this.source = source;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action)
+        {
+            while (buffer.isEmpty())
+            {
+                if (!source.tryAdvance(t -> mapper.accept(t, bufferSink)))
+                {
+                    return false;
+                }
+            }
+            action.accept(buffer.poll());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super R> action)
+        {
+            while (!buffer.isEmpty())
+            {
+                action.accept(buffer.poll());
+            }
+            // push mode: no buffering at all
+            Consumer<R> sink = action::accept;
+            source.forEachRemaining(t -> mapper.accept(t, sink));
+        }
+
+        @Override
+        public Spliterator<R> trySplit()
+        {
+            if (!buffer.isEmpty())
+            {
+                return null;
+            }
+            Spliterator<T> prefix = source.trySplit();
+            return prefix == null ? null : new MapMultiSpliterator<>(prefix, mapper);
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return source.characteristics() & ORDERED;
+        }
+    }
+}
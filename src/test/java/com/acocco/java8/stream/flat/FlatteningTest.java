@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.flat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.acocco.java8.stream.model.Module;
+import com.acocco.java8.stream.model.SubModule;
+
+
+/**
+ * Flattening SubModule -> Module without a stream per SubModule.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class FlatteningTest
+{
+    @Test
+    public void testModules_SameAsFlatMap()
+    {
+        List<SubModule> subModules = getSubModules(3, 3);
+
+        List<String> expected = subModules
+            .stream()
+            .flatMap(f -> f.modules.stream())
+            .map(b -> b.name)
+            .collect(Collectors.toList());
+
+        List<String> actual = Flattening
+            .modules(subModules)
+            .map(b -> b.name)
+            .collect(Collectors.toList());
+
+        Assert.assertEquals(actual, expected);
+        Assert.assertEquals(actual.get(0), "Xdm1 <- Xdmsub1");
+        Assert.assertEquals(actual.get(8), "Xdm3 <- Xdmsub3");
+    }
+
+    @Test
+    public void testMapMulti_SameAsFlatMap()
+    {
+        List<SubModule> subModules = getSubModules(100, 5);
+
+        List<Module> expected = subModules
+            .stream()
+            .flatMap(f -> f.modules.stream())
+            .collect(Collectors.toList());
+
+        List<Module> actual = Flattening
+            .mapMulti(subModules.stream(), (SubModule f, Consumer<Module> sink) -> f.modules.forEach(sink))
+            .collect(Collectors.toList());
+        Assert.assertEquals(actual, expected);
+
+        // tryAdvance path
+        Assert.assertEquals(
+            Flattening
+                .mapMulti(subModules.stream(), (SubModule f, Consumer<Module> sink) -> f.modules.forEach(sink))
+                .limit(7)
+                .collect(Collectors.toList()),
+            expected.subList(0, 7));
+
+        List<Module> parallel = Flattening
+            .mapMulti(subModules.parallelStream(), (SubModule f, Consumer<Module> sink) -> f.modules.forEach(sink))
+            .collect(Collectors.toList());
+        Assert.assertEquals(parallel, expected);
+    }
+
+    /**
+     * One SubModule with 100000 modules and 1000 with one module: the first split is still half and half.
+     */
+    @Test
+    public void testSpliterator_SplitsByChildren()
+    {
+        List<SubModule> subModules = new ArrayList<>();
+        subModules.add(getSubModules(1, 100000).get(0));
+        subModules.add(new SubModule("empty"));
+        subModules.addAll(getSubModules(1000, 1));
+
+        Spliterator<Module> suffix = new FlatListSpliterator<SubModule, Module>(subModules, f -> f.modules);
+        Spliterator<Module> prefix = suffix.trySplit();
+
+        Assert.assertEquals(prefix.estimateSize(), 50500);
+        Assert.assertEquals(suffix.estimateSize(), 50500);
+
+        List<Module> expected = subModules
+            .stream()
+            .flatMap(f -> f.modules.stream())
+            .collect(Collectors.toList());
+        Assert.assertEquals(Flattening.parallelModules(subModules).collect(Collectors.toList()), expected);
+        Assert.assertEquals(Flattening.parallelModules(subModules).count(), 101000);
+    }
+
+    private List<SubModule> getSubModules(int subModules, int modules)
+    {
+        List<SubModule> result = new ArrayList<>();
+        IntStream
+            .rangeClosed(1, subModules)
+            .forEach(i -> result.add(new SubModule("Xdmsub" + i)));
+        result.forEach(f -> IntStream
+            .rangeClosed(1, modules)
+            .forEach(i -> f.modules.add(new Module("Xdm" + i + " <- " + f.name))));
+        return result;
+    }
+}
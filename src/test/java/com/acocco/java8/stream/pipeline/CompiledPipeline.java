@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+
+/**
+ * The executable form of a list of stages, built once and run any number of times, also concurrently.
+ *
+ * A run pushes every element of the source through the stages with a loop, no object is created per stage. The
+ * state of the stateful stages (the counters of skip and limit, the set of distinct, the buffer of sorted) lives in
+ * a Run created for each execution. sorted is a barrier: it buffers its input and, once the source is exhausted,
+ * sorts it and pushes it to the following stages.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class CompiledPipeline
+{
+    private final Stage[] stages;
+
+    /** Index of the state of each stateful stage in Run.state, -1 for the stateless ones */
+    private final int[] slots;
+
+    private final int stateSize;
+
+    CompiledPipeline(List<Stage> stages)
+    {
+        this.stages = stages.toArray(new Stage[stages.size()]);
+        this.slots = new int[this.stages.length];
+        int size = 0;
+        for (int i = 0; i < this.stages.length; i++)
+        {
+            switch (this.stages[i].kind)
+            {
+                case DISTINCT:
+                case SORTED:
+                case SKIP:
+                case LIMIT:
+                    slots[i] = size++;
+                    break;
+                default:
+                    slots[i] = -1;
+            }
+        }
+        this.stateSize = size;
+    }
+
+    void run(Iterable<?> source, Sink sink)
+    {
+        Run run = new Run(stateSize);
+        for (Object element : source)
+        {
+            if (!push(0, element, run, sink))
+            {
+                break;
+            }
+        }
+        flushBarriers(0, run, sink);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private boolean push(int from, Object element, Run run, Sink sink)
+    {
+        Object value = element;
+        for (int i = from; i < stages.length; i++)
+        {
+            Stage stage = stages[i];
+            switch (stage.kind)
+            {
+                case FILTER:
+                    if (!((Predicate) stage.function).test(value))
+                    {
+                        return true;
+                    }
+                    break;
+                case MAP:
+                    value = ((Function) stage.function).apply(value);
+                    break;
+                case PEEK:
+                    ((Consumer) stage.function).accept(value);
+                    break;
+                case DISTINCT:
+                    if (!run.set(slots[i]).add(value))
+                    {
+                        return true;
+                    }
+                    break;
+                case SORTED:
+                    run.list(slots[i]).add(value);
+                    return true;
+                case SKIP:
+                    if (run.counters[slots[i]] < stage.n)
+                    {
+                        run.counters[slots[i]]++;
+                        return true;
+                    }
+                    break;
+                case LIMIT:
+                    long count = run.counters[slots[i]];
+                    if (count >= stage.n)
+                    {
+                        return false;
+                    }
+                    run.counters[slots[i]] = ++count;
+                    // the upstream stages can stop as soon as the limit is reached
+                    return push(i + 1, value, run, sink) && count < stage.n;
+                default:
+                    throw new IllegalStateException("Unknown stage " + stage);
+            }
+        }
+        if (!sink.accept(value))
+        {
+            run.stopped = true;
+            return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void flushBarriers(int from, Run run, Sink sink)
+    {
+        for (int i = from; i < stages.length && !run.stopped; i++)
+        {
+            if (stages[i].kind == Stage.Kind.SORTED)
+            {
+                List<Object> buffer = run.list(slots[i]);
+                run.state[slots[i]] = null;
+                buffer.sort((Comparator) stages[i].function);
+                for (Object value : buffer)
+                {
+                    if (!push(i + 1, value, run, sink))
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * State of one execution.
+     */
+    private static final class Run
+    {
+        final Object[] state;
+
+        final long[] counters;
+
+        boolean stopped;
+
+        Run(int size)
+        {
+            state = new Object[size];
+            counters = new long[size];
+        }
+
+        @SuppressWarnings("unchecked")
+        Set<Object> set(int slot)
+        {
+            if (state[slot] == null)
+            {
+                state[slot] = new HashSet<>();
+            }
+            return (Set<Object>) state[slot];
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object> list(int slot)
+        {
+            if (state[slot] == null)
+            {
+                state[slot] = new ArrayList<>();
+            }
+            return (List<Object>) state[slot];
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+
+/**
+ * A Pipeline whose terminal results are cached per operation and invalidated by the version of the source.
+ *
+ * An entry is kept for each terminal operation and argument (the predicate of anyMatch, the collector of collect),
+ * compared by identity: pass the same predicate or collector instance, a capturing lambda created at every call
+ * never hits. An entry remembers the source and its version, running the operation on another source or on a new
+ * version recomputes and replaces it.
+ *
+ * The cache keeps the most recently used entries, 64 by default, so that arguments created at every call only churn
+ * it; an entry holds its source weakly and never keeps a discarded source reachable.
+ *
+ * The collect results are shared between the callers that hit the cache, they must not be modified.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class MemoizedPipeline<S, T>
+{
+    private final Pipeline<S, T> pipeline;
+
+    /** Access ordered, guarded by its monitor */
+    private final Map<Key, Entry> cache;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    MemoizedPipeline(Pipeline<S, T> pipeline, int maximumEntries)
+    {
+        if (maximumEntries <= 0)
+        {
+            throw new IllegalArgumentException("maximum entries must be positive: " + maximumEntries);
+        }
+        this.pipeline = pipeline;
+        this.cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+            {
+                return size() > maximumEntries;
+            }
+        };
+    }
+
+    public Pipeline<S, T> pipeline()
+    {
+        return pipeline;
+    }
+
+    public long count(VersionedSource<? extends S> source)
+    {
+        return memoize("count", null, source, () -> pipeline.count(source));
+    }
+
+    public boolean anyMatch(VersionedSource<? extends S> source, Predicate<? super T> predicate)
+    {
+        return memoize("anyMatch", predicate, source, () -> pipeline.anyMatch(source, predicate));
+    }
+
+    public boolean allMatch(VersionedSource<? extends S> source, Predicate<? super T> predicate)
+    {
+        return memoize("allMatch", predicate, source, () -> pipeline.allMatch(source, predicate));
+    }
+
+    public boolean noneMatch(VersionedSource<? extends S> source, Predicate<? super T> predicate)
+    {
+        return memoize("noneMatch", predicate, source, () -> pipeline.noneMatch(source, predicate));
+    }
+
+    public <A, R> R collect(VersionedSource<? extends S> source, Collector<? super T, A, R> collector)
+    {
+        return memoize("collect", collector, source, () -> pipeline.collect(source, collector));
+    }
+
+    /**
+     * Drops all the cached results.
+     */
+    public void invalidate()
+    {
+        synchronized (cache)
+        {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Number of cached results.
+     */
+    public int size()
+    {
+        synchronized (cache)
+        {
+            return cache.size();
+        }
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R memoize(String operation, Object argument, VersionedSource<?> source, Supplier<R> compute)
+    {
+        Key key = new Key(operation, argument);
+        long version = source.version();
+        Entry entry;
+        synchronized (cache)
+        {
+            entry = cache.get(key);
+        }
+        if (entry != null && entry.source.get() == source && entry.version == version)
+        {
+            hits.increment();
+            return (R) entry.result;
+        }
+
+        misses.increment();
+        R result = compute.get();
+        // a change of the source during the computation is caught by the version check of the next call
+        synchronized (cache)
+        {
+            cache.put(key, new Entry(source, version, result));
+        }
+        return result;
+    }
+
+    private static final class Key
+    {
+        private final String operation;
+
+        private final Object argument;
+
+        Key(String operation, Object argument)
+        {
+            this.operation = operation;
+            this.argument = argument;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return operation.equals(other.operation) && argument == other.argument;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * operation.hashCode() + System.identityHashCode(argument);
+        }
+    }
+
+    private static final class Entry
+    {
+        final WeakReference<Object> source;
+
+        final long version;
+
+        final Object result;
+
+        Entry(Object source, long version, Object result)
+        {
+            this.source = new WeakReference<>(source);
+            this.version = version;
+            this.result = result;
+        }
+    }
+}
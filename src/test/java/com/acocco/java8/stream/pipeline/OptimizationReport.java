@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * What the optimizer of an OptimizingStream did to the recorded pipeline before executing it.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class OptimizationReport
+{
+    private final String terminal;
+
+    private final String original;
+
+    private String optimized;
+
+    private final List<String> rewrites = new ArrayList<>();
+
+    OptimizationReport(String terminal, List<Stage> original)
+    {
+        this.terminal = terminal;
+        this.original = original.toString();
+        this.optimized = this.original;
+    }
+
+    void fired(String rewrite)
+    {
+        rewrites.add(rewrite);
+    }
+
+    void optimized(List<Stage> stages)
+    {
+        optimized = stages.toString();
+    }
+
+    public String getTerminal()
+    {
+        return terminal;
+    }
+
+    /**
+     * The stages as recorded, for example [filter, map, sorted].
+     */
+    public String getOriginal()
+    {
+        return original;
+    }
+
+    /**
+     * The stages actually executed.
+     */
+    public String getOptimized()
+    {
+        return optimized;
+    }
+
+    /**
+     * One line per rewrite, in the order they fired.
+     */
+    public List<String> getRewrites()
+    {
+        return Collections.unmodifiableList(rewrites);
+    }
+
+    @Override
+    public String toString()
+    {
+        return terminal + ": " + original + " -> " + optimized + " " + rewrites;
+    }
+}
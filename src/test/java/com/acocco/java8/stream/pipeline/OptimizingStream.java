@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+
+/**
+ * A stream over a collection that records its intermediate operations and lets a PipelineOptimizer rewrite them
+ * once the terminal operation is known.
+ *
+ * <pre>
+ * OptimizingStream.of(myList).filter(s -> s.startsWith("XDM")).map(String::toLowerCase).sorted().count();
+ * </pre>
+ *
+ * runs as filter(...).count(): the count does not need the lowercase strings nor their order. After the terminal
+ * operation report() tells which rewrites fired.
+ *
+ * Like a Stream it can be consumed only once. A sequential stream runs on a CompiledPipeline, a parallel one on a
+ * java parallel Stream built from the optimized stages.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class OptimizingStream<T>
+{
+    private final Collection<?> source;
+
+    private final List<Stage> stages;
+
+    private boolean parallel;
+
+    private boolean consumed;
+
+    private OptimizationReport report;
+
+    private OptimizingStream(Collection<?> source, List<Stage> stages, boolean parallel)
+    {
+        this.source = source;
+        this.stages = stages;
+        this.parallel = parallel;
+    }
+
+    public static <T> OptimizingStream<T> of(Collection<T> source)
+    {
+        return new OptimizingStream<>(source, Collections.emptyList(), false);
+    }
+
+    // ------------------------------ intermediate operations
+
+    public OptimizingStream<T> filter(Predicate<? super T> predicate)
+    {
+        return then(Stage.filter(predicate));
+    }
+
+    public <R> OptimizingStream<R> map(Function<? super T, ? extends R> mapper)
+    {
+        return then(Stage.map(mapper));
+    }
+
+    public OptimizingStream<T> peek(Consumer<? super T> action)
+    {
+        return then(Stage.peek(action));
+    }
+
+    public OptimizingStream<T> distinct()
+    {
+        return then(Stage.distinct());
+    }
+
+    public OptimizingStream<T> sorted()
+    {
+        return then(Stage.sorted(null));
+    }
+
+    public OptimizingStream<T> sorted(Comparator<? super T> comparator)
+    {
+        return then(Stage.sorted(comparator));
+    }
+
+    public OptimizingStream<T> skip(long n)
+    {
+        checkNotNegative(n);
+        return then(Stage.skip(n));
+    }
+
+    public OptimizingStream<T> limit(long maxSize)
+    {
+        checkNotNegative(maxSize);
+        return then(Stage.limit(maxSize));
+    }
+
+    public OptimizingStream<T> parallel()
+    {
+        checkNotConsumed();
+        parallel = true;
+        return this;
+    }
+
+    public OptimizingStream<T> sequential()
+    {
+        checkNotConsumed();
+        parallel = false;
+        return this;
+    }
+
+    // ------------------------------ terminal operations
+
+    public long count()
+    {
+        Pipeline<Object, T> pipeline = optimize("count", PipelineOptimizer.Terminal.COUNT);
+        return parallel ? pipeline.stream(source).parallel().count() : pipeline.count(source);
+    }
+
+    public boolean anyMatch(Predicate<? super T> predicate)
+    {
+        Pipeline<Object, T> pipeline = optimize("anyMatch", PipelineOptimizer.Terminal.MATCH);
+        return parallel
+            ? pipeline.stream(source).parallel().anyMatch(predicate)
+            : pipeline.anyMatch(source, predicate);
+    }
+
+    public boolean allMatch(Predicate<? super T> predicate)
+    {
+        Pipeline<Object, T> pipeline = optimize("allMatch", PipelineOptimizer.Terminal.MATCH);
+        return parallel
+            ? pipeline.stream(source).parallel().allMatch(predicate)
+            : pipeline.allMatch(source, predicate);
+    }
+
+    public boolean noneMatch(Predicate<? super T> predicate)
+    {
+        Pipeline<Object, T> pipeline = optimize("noneMatch", PipelineOptimizer.Terminal.MATCH);
+        return parallel
+            ? pipeline.stream(source).parallel().noneMatch(predicate)
+            : pipeline.noneMatch(source, predicate);
+    }
+
+    public Optional<T> findFirst()
+    {
+        Pipeline<Object, T> pipeline = optimize("findFirst", PipelineOptimizer.Terminal.ORDERED);
+        return parallel ? pipeline.stream(source).parallel().findFirst() : pipeline.findFirst(source);
+    }
+
+    public <A, R> R collect(Collector<? super T, A, R> collector)
+    {
+        Pipeline<Object, T> pipeline = optimize("collect", PipelineOptimizer.Terminal.ORDERED);
+        return parallel ? pipeline.stream(source).parallel().collect(collector) : pipeline.collect(source, collector);
+    }
+
+    public List<T> toList()
+    {
+        return collect(Collectors.toList());
+    }
+
+    public void forEach(Consumer<? super T> action)
+    {
+        Pipeline<Object, T> pipeline = optimize("forEach", PipelineOptimizer.Terminal.ORDERED);
+        if (parallel)
+        {
+            pipeline.stream(source).parallel().forEach(action);
+        }
+        else
+        {
+            pipeline.forEach(source, action);
+        }
+    }
+
+    /**
+     * The rewrites applied by the terminal operation of this stream.
+     *
+     * @throws IllegalStateException
+     *             if no terminal operation was executed on this stream
+     */
+    public OptimizationReport report()
+    {
+        if (report == null)
+        {
+            throw new IllegalStateException("No terminal operation executed on this stream");
+        }
+        return report;
+    }
+
+    private Pipeline<Object, T> optimize(String terminal, PipelineOptimizer.Terminal kind)
+    {
+        checkNotConsumed();
+        consumed = true;
+        report = new OptimizationReport(terminal, stages);
+        return Pipeline.of(PipelineOptimizer.optimize(stages, kind, report));
+    }
+
+    private <R> OptimizingStream<R> then(Stage stage)
+    {
+        checkNotConsumed();
+        consumed = true;
+        List<Stage> next = new ArrayList<>(stages.size() + 1);
+        next.addAll(stages);
+        next.add(stage);
+        return new OptimizingStream<>(source, next, parallel);
+    }
+
+    private void checkNotConsumed()
+    {
+        if (consumed)
+        {
+            throw new IllegalStateException("stream has already been operated upon or closed");
+        }
+    }
+
+    private static void checkNotNegative(long n)
+    {
+        if (n < 0)
+        {
+            throw new IllegalArgumentException(Long.toString(n));
+        }
+    }
+}
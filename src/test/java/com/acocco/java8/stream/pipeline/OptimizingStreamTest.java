@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * The pipeline of StreamTest.testSequentialStream_CounterElements rewritten for its terminal operation.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class OptimizingStreamTest
+{
+    private static final List<String> MY_LIST = Arrays.asList(
+        "XDM-trading",
+        "XDM-commons",
+        "xdm-settlement",
+        "EnergeyaConnectorService");
+
+    @Test
+    public void testCount_DropsMapAndSorted()
+    {
+        AtomicInteger lowercased = new AtomicInteger();
+
+        OptimizingStream<String> stream = OptimizingStream
+            .of(MY_LIST)
+            .filter(s -> s.startsWith("XDM"))
+            .map(s ->
+            {
+                lowercased.incrementAndGet();
+                return s.toLowerCase();
+            })
+            .sorted();
+
+        Assert.assertEquals(stream.count(), 2);
+        Assert.assertEquals(lowercased.get(), 0);
+
+        OptimizationReport report = stream.report();
+        System.out.println(report);
+        Assert.assertEquals(report.getOriginal(), "[filter, map, sorted]");
+        Assert.assertEquals(report.getOptimized(), "[filter]");
+        Assert.assertEquals(report.getRewrites().size(), 2);
+    }
+
+    @Test
+    public void testCollect_KeepsOrderAndFuses()
+    {
+        OptimizingStream<String> stream = OptimizingStream
+            .of(MY_LIST)
+            .filter(s -> s.length() > 5)
+            .filter(s -> s.startsWith("XDM"))
+            .map(String::toLowerCase)
+            .map(s -> s.substring(4))
+            .sorted()
+            .limit(5)
+            .limit(3);
+
+        Assert.assertEquals(stream.toList(), Arrays.asList("commons", "trading"));
+        Assert.assertEquals(stream.report().getOptimized(), "[filter, map, sorted, limit(3)]");
+    }
+
+    @Test
+    public void testLimit_PushedBeforeMap()
+    {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            source.add(i);
+        }
+        AtomicInteger mapped = new AtomicInteger();
+
+        OptimizingStream<Integer> stream = OptimizingStream
+            .of(source)
+            .map(i ->
+            {
+                mapped.incrementAndGet();
+                return i * 2;
+            })
+            .limit(10)
+            .parallel();
+
+        Assert.assertEquals(stream.collect(Collectors.toList()).size(), 10);
+        Assert.assertEquals(mapped.get(), 10);
+        Assert.assertEquals(stream.report().getOptimized(), "[limit(10), map]");
+    }
+
+    @Test
+    public void testAnyMatch_SortedKeptBeforeLimit()
+    {
+        OptimizingStream<String> stream = OptimizingStream.of(MY_LIST).sorted().limit(1);
+
+        Assert.assertTrue(stream.anyMatch(s -> s.equals("EnergeyaConnectorService")));
+        Assert.assertTrue(stream.report().getRewrites().isEmpty());
+
+        OptimizingStream<String> unordered = OptimizingStream.of(MY_LIST).sorted().distinct();
+        Assert.assertFalse(unordered.noneMatch(s -> s.startsWith("xdm")));
+        Assert.assertEquals(unordered.report().getOptimized(), "[distinct]");
+    }
+
+    @Test
+    public void testCount_SortedKeptBeforeLimitAndFilter()
+    {
+        OptimizingStream<Integer> stream = OptimizingStream.of(Arrays.asList(3, 1, 2)).sorted().limit(1)
+            .filter(x -> x == 1);
+        Assert.assertEquals(stream.count(), 1);
+        Assert.assertEquals(stream.report().getOptimized(), "[sorted, limit(1), filter]");
+
+        // nothing reads the values after the limit: the order does not change the count
+        OptimizingStream<Integer> blind = OptimizingStream.of(Arrays.asList(3, 1, 2)).filter(x -> x > 1).sorted()
+            .limit(1);
+        Assert.assertEquals(blind.count(), 1);
+        Assert.assertEquals(blind.report().getOptimized(), "[filter, limit(1)]");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testSingleUse()
+    {
+        OptimizingStream<String> stream = OptimizingStream.of(MY_LIST).filter(s -> s.startsWith("xdm"));
+        stream.anyMatch(s -> s.startsWith("xdm"));
+        stream.noneMatch(s -> s.startsWith("xdm-booommmmm"));
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+
+/**
+ * A chain of intermediate operations defined once and executed on any number of sources.
+ *
+ * A java Stream is single use (see StreamTest.testSequentialStream_ReusingStreamsException), the usual work around
+ * is a Supplier that builds the whole chain again for every terminal operation. A Pipeline is immutable: the
+ * intermediate operations return a new Pipeline, the terminal operations take the source and can be called again
+ * and again, from any thread.
+ *
+ * <pre>
+ * Pipeline&lt;String, String&gt; xdm = Pipeline.&lt;String&gt; of().filter(s -> s.startsWith("xdm"));
+ *
+ * xdm.anyMatch(modules, s -> s.startsWith("xdm"));
+ * xdm.noneMatch(modules, s -> s.startsWith("xdm-booo"));
+ * </pre>
+ *
+ * The stages are compiled once, at the first execution, into a CompiledPipeline that pushes the elements through
+ * them with a loop: an execution creates no stage object. Use memoized() to also cache the results.
+ *
+ * @param <S>
+ *            type of the elements of the source
+ * @param <T>
+ *            type of the elements coming out of the pipeline
+ * @author acocco
+ * @version $Id$
+ */
+public final class Pipeline<S, T>
+{
+    private static final Pipeline<?, ?> IDENTITY = new Pipeline<>(Collections.emptyList());
+
+    private final List<Stage> stages;
+
+    private volatile CompiledPipeline compiled;
+
+    private Pipeline(List<Stage> stages)
+    {
+        this.stages = stages;
+    }
+
+    /**
+     * The empty pipeline, to start a definition.
+     */
+    @SuppressWarnings("unchecked")
+    public static <S> Pipeline<S, S> of()
+    {
+        return (Pipeline<S, S>) IDENTITY;
+    }
+
+    // ------------------------------ intermediate operations
+
+    public Pipeline<S, T> filter(Predicate<? super T> predicate)
+    {
+        return then(Stage.filter(predicate));
+    }
+
+    public <R> Pipeline<S, R> map(Function<? super T, ? extends R> mapper)
+    {
+        return then(Stage.map(mapper));
+    }
+
+    public Pipeline<S, T> peek(Consumer<? super T> action)
+    {
+        return then(Stage.peek(action));
+    }
+
+    public Pipeline<S, T> distinct()
+    {
+        return then(Stage.distinct());
+    }
+
+    /**
+     * Natural order, the elements must be Comparable.
+     */
+    public Pipeline<S, T> sorted()
+    {
+        return then(Stage.sorted(null));
+    }
+
+    public Pipeline<S, T> sorted(Comparator<? super T> comparator)
+    {
+        return then(Stage.sorted(comparator));
+    }
+
+    public Pipeline<S, T> skip(long n)
+    {
+        checkNotNegative(n);
+        return then(Stage.skip(n));
+    }
+
+    public Pipeline<S, T> limit(long maxSize)
+    {
+        checkNotNegative(maxSize);
+        return then(Stage.limit(maxSize));
+    }
+
+    // ------------------------------ terminal operations
+
+    public long count(Iterable<? extends S> source)
+    {
+        long[] count = new long[1];
+        compiled().run(source, value ->
+        {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    public boolean anyMatch(Iterable<? extends S> source, Predicate<? super T> predicate)
+    {
+        return !noneMatch(source, predicate);
+    }
+
+    public boolean allMatch(Iterable<? extends S> source, Predicate<? super T> predicate)
+    {
+        return noneMatch(source, predicate.negate());
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean noneMatch(Iterable<? extends S> source, Predicate<? super T> predicate)
+    {
+        boolean[] found = new boolean[1];
+        compiled().run(source, value ->
+        {
+            found[0] = predicate.test((T) value);
+            return !found[0];
+        });
+        return !found[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    public Optional<T> findFirst(Iterable<? extends S> source)
+    {
+        boolean[] found = new boolean[1];
+        Object[] first = new Object[1];
+        compiled().run(source, value ->
+        {
+            found[0] = true;
+            first[0] = value;
+            return false;
+        });
+        // like Stream.findFirst, a null first element throws NullPointerException
+        return found[0] ? Optional.of((T) first[0]) : Optional.empty();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <A, R> R collect(Iterable<? extends S> source, Collector<? super T, A, R> collector)
+    {
+        A container = collector.supplier().get();
+        BiConsumer<A, ? super T> accumulator = collector.accumulator();
+        compiled().run(source, value ->
+        {
+            ((BiConsumer<A, T>) accumulator).accept(container, (T) value);
+            return true;
+        });
+        if (collector.characteristics().contains(Collector.Characteristics.IDENTITY_FINISH))
+        {
+            return (R) container;
+        }
+        return collector.finisher().apply(container);
+    }
+
+    public List<T> toList(Iterable<? extends S> source)
+    {
+        List<T> result = new ArrayList<>();
+        forEach(source, result::add);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Iterable<? extends S> source, Consumer<? super T> action)
+    {
+        compiled().run(source, value ->
+        {
+            action.accept((T) value);
+            return true;
+        });
+    }
+
+    /**
+     * Applies the stages to a java Stream of the source, to run the pipeline in parallel or to use an operation the
+     * Pipeline does not offer.
+     */
+    public Stream<T> stream(Collection<? extends S> source)
+    {
+        return apply(source.stream());
+    }
+
+    /**
+     * Applies the stages to the given stream.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public Stream<T> apply(Stream<? extends S> source)
+    {
+        Stream stream = source;
+        for (Stage stage : stages)
+        {
+            switch (stage.kind)
+            {
+                case FILTER:
+                    stream = stream.filter((Predicate) stage.function);
+                    break;
+                case MAP:
+                    stream = stream.map((Function) stage.function);
+                    break;
+                case PEEK:
+                    stream = stream.peek((Consumer) stage.function);
+                    break;
+                case DISTINCT:
+                    stream = stream.distinct();
+                    break;
+                case SORTED:
+                    stream = stage.function == null ? stream.sorted() : stream.sorted((Comparator) stage.function);
+                    break;
+                case SKIP:
+                    stream = stream.skip(stage.n);
+                    break;
+                case LIMIT:
+                    stream = stream.limit(stage.n);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown stage " + stage);
+            }
+        }
+        return stream;
+    }
+
+    /**
+     * Returns a view of this pipeline that caches the results of its terminal operations, the 64 most recently used.
+     */
+    public MemoizedPipeline<S, T> memoized()
+    {
+        return memoized(64);
+    }
+
+    /**
+     * Returns a view of this pipeline that caches at most maximumEntries results, dropping the least recently used.
+     */
+    public MemoizedPipeline<S, T> memoized(int maximumEntries)
+    {
+        return new MemoizedPipeline<>(this, maximumEntries);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Pipeline" + stages;
+    }
+
+    /**
+     * A pipeline made of the given stages, used by OptimizingStream once the stages are rewritten.
+     */
+    static <S, T> Pipeline<S, T> of(List<Stage> stages)
+    {
+        return new Pipeline<>(Collections.unmodifiableList(new ArrayList<>(stages)));
+    }
+
+    List<Stage> stages()
+    {
+        return stages;
+    }
+
+    private CompiledPipeline compiled()
+    {
+        CompiledPipeline result = compiled;
+        if (result == null)
+        {
+            // racing threads compile the same immutable stages, any of the results is fine
+            result = new CompiledPipeline(stages);
+            compiled = result;
+        }
+        return result;
+    }
+
+    private <R> Pipeline<S, R> then(Stage stage)
+    {
+        List<Stage> next = new ArrayList<>(stages.size() + 1);
+        next.addAll(stages);
+        next.add(stage);
+        return new Pipeline<>(Collections.unmodifiableList(next));
+    }
+
+    private static void checkNotNegative(long n)
+    {
+        if (n < 0)
+        {
+            throw new IllegalArgumentException(Long.toString(n));
+        }
+    }
+}
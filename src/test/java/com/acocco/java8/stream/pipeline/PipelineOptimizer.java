@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+
+/**
+ * Rewrites the stages of a pipeline knowing which terminal operation consumes it.
+ *
+ * <ul>
+ * <li>count does not depend on the order: a sorted is removed unless a peek follows it, or a skip or limit followed
+ * by a filter or distinct</li>
+ * <li>anyMatch, allMatch and noneMatch do not depend on the order: a sorted is removed unless a skip, limit or peek
+ * follows it</li>
+ * <li>count never looks at the values: a map followed only by skip, limit and sorted is removed</li>
+ * <li>limit(n) directly after a map is moved before it, the map then runs on n elements at most also in
+ * parallel</li>
+ * <li>limit(a).limit(b) becomes limit(min(a, b)), skip(a).skip(b) becomes skip(a + b)</li>
+ * <li>adjacent filters are fused into one predicate, adjacent maps into one function</li>
+ * </ul>
+ *
+ * The rewrites assume, as the Stream javadoc requires, that the lambdas are stateless and free of side effects
+ * (peek excepted): a removed map or sorted does not run at all, so its exceptions are not thrown either.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class PipelineOptimizer
+{
+    enum Terminal
+    {
+        /** count */
+        COUNT,
+        /** anyMatch, allMatch, noneMatch */
+        MATCH,
+        /** everything else */
+        ORDERED
+    }
+
+    private PipelineOptimizer()
+    {
+    }
+
+    static List<Stage> optimize(List<Stage> original, Terminal terminal, OptimizationReport report)
+    {
+        List<Stage> stages = new ArrayList<>(original);
+        boolean changed = true;
+        while (changed)
+        {
+            changed = removeSorted(stages, terminal, report);
+            changed |= removeUnobservedMaps(stages, terminal, report);
+            changed |= pushLimits(stages, report);
+            changed |= mergeSkipsAndLimits(stages, report);
+            changed |= fuse(stages, report);
+        }
+        report.optimized(stages);
+        return stages;
+    }
+
+    private static boolean removeSorted(List<Stage> stages, Terminal terminal, OptimizationReport report)
+    {
+        if (terminal == Terminal.ORDERED)
+        {
+            return false;
+        }
+        boolean changed = false;
+        // the terminal of a match reads the values, count does not
+        boolean valuesRead = terminal == Terminal.MATCH;
+        boolean orderObserved = false;
+        for (int i = stages.size() - 1; i >= 0; i--)
+        {
+            Stage.Kind kind = stages.get(i).kind;
+            if (kind == Stage.Kind.SORTED && !orderObserved)
+            {
+                stages.remove(i);
+                report.fired("removed sorted at " + i + ", " + terminal.name().toLowerCase() + " ignores the order");
+                changed = true;
+            }
+            else if (kind == Stage.Kind.PEEK)
+            {
+                orderObserved = true;
+            }
+            else if (kind == Stage.Kind.SKIP || kind == Stage.Kind.LIMIT)
+            {
+                // which elements pass depends on the order, it matters if something reads them afterwards
+                orderObserved |= valuesRead;
+            }
+            else if (kind == Stage.Kind.FILTER || kind == Stage.Kind.DISTINCT)
+            {
+                valuesRead = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean removeUnobservedMaps(List<Stage> stages, Terminal terminal, OptimizationReport report)
+    {
+        if (terminal != Terminal.COUNT)
+        {
+            return false;
+        }
+        boolean changed = false;
+        for (int i = stages.size() - 1; i >= 0; i--)
+        {
+            Stage.Kind kind = stages.get(i).kind;
+            if (kind == Stage.Kind.MAP)
+            {
+                stages.remove(i);
+                report.fired("removed map at " + i + ", count never reads its results");
+                changed = true;
+            }
+            else if (kind != Stage.Kind.SKIP && kind != Stage.Kind.LIMIT && kind != Stage.Kind.SORTED)
+            {
+                // filter, distinct and peek read the values
+                break;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean pushLimits(List<Stage> stages, OptimizationReport report)
+    {
+        boolean changed = false;
+        for (int i = 1; i < stages.size(); i++)
+        {
+            if (stages.get(i).kind == Stage.Kind.LIMIT && stages.get(i - 1).kind == Stage.Kind.MAP)
+            {
+                Stage limit = stages.get(i);
+                stages.set(i, stages.get(i - 1));
+                stages.set(i - 1, limit);
+                report.fired("pushed " + limit + " before map");
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean mergeSkipsAndLimits(List<Stage> stages, OptimizationReport report)
+    {
+        boolean changed = false;
+        for (int i = stages.size() - 1; i > 0; i--)
+        {
+            Stage previous = stages.get(i - 1);
+            Stage current = stages.get(i);
+            if (previous.kind == Stage.Kind.LIMIT && current.kind == Stage.Kind.LIMIT)
+            {
+                stages.set(i - 1, Stage.limit(Math.min(previous.n, current.n)));
+            }
+            else if (previous.kind == Stage.Kind.SKIP && current.kind == Stage.Kind.SKIP)
+            {
+                long n = previous.n + current.n;
+                stages.set(i - 1, Stage.skip(n < 0 ? Long.MAX_VALUE : n));
+            }
+            else
+            {
+                continue;
+            }
+            stages.remove(i);
+            report.fired("merged " + previous + "." + current + " into " + stages.get(i - 1));
+            changed = true;
+        }
+        return changed;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static boolean fuse(List<Stage> stages, OptimizationReport report)
+    {
+        boolean changed = false;
+        for (int i = stages.size() - 1; i > 0; i--)
+        {
+            Stage previous = stages.get(i - 1);
+            Stage current = stages.get(i);
+            if (previous.kind == Stage.Kind.FILTER && current.kind == Stage.Kind.FILTER)
+            {
+                Predicate first = (Predicate) previous.function;
+                Predicate second = (Predicate) current.function;
+                stages.set(i - 1, Stage.filter(first.and(second)));
+                report.fired("fused filter.filter at " + (i - 1));
+            }
+            else if (previous.kind == Stage.Kind.MAP && current.kind == Stage.Kind.MAP)
+            {
+                Function first = (Function) previous.function;
+                Function second = (Function) current.function;
+                stages.set(i - 1, Stage.map(first.andThen(second)));
+                report.fired("fused map.map at " + (i - 1));
+            }
+            else if (previous.kind == Stage.Kind.PEEK && current.kind == Stage.Kind.PEEK)
+            {
+                Consumer first = (Consumer) previous.function;
+                Consumer second = (Consumer) current.function;
+                stages.set(i - 1, Stage.peek(first.andThen(second)));
+                report.fired("fused peek.peek at " + (i - 1));
+            }
+            else
+            {
+                continue;
+            }
+            stages.remove(i);
+            changed = true;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * A Pipeline is defined once and executed many times, where a Stream must be built again for every terminal
+ * operation.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class PipelineTest
+{
+    private static final List<String> MODULES = Arrays.asList("xdm-trading", "xdm-commons", "xdm-settlement");
+
+    @Test
+    public void testReusingPipeline()
+    {
+        Pipeline<String, String> xdm = Pipeline.<String> of().filter(s -> s.startsWith("xdm"));
+
+        Assert.assertTrue(xdm.anyMatch(MODULES, s -> s.startsWith("xdm")));      // ok
+        Assert.assertTrue(xdm.noneMatch(MODULES, s -> s.startsWith("xdm-booo"))); // ok, again
+        Assert.assertTrue(xdm.allMatch(MODULES, s -> s.length() > 3));
+        Assert.assertEquals(xdm.count(Arrays.asList("xdm-a", "other")), 1);
+    }
+
+    @Test
+    public void testSameResultsAsStream()
+    {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            source.add((i * 7919) % 500);
+        }
+
+        Pipeline<Integer, String> pipeline = Pipeline
+            .<Integer> of()
+            .filter(i -> i % 3 != 0)
+            .skip(5)
+            .distinct()
+            .map(i -> i * 2)
+            .sorted((a, b) -> b - a)
+            .limit(50)
+            .map(i -> "v" + i);
+
+        List<String> expected = source
+            .stream()
+            .filter(i -> i % 3 != 0)
+            .skip(5)
+            .distinct()
+            .map(i -> i * 2)
+            .sorted((a, b) -> b - a)
+            .limit(50)
+            .map(i -> "v" + i)
+            .collect(Collectors.toList());
+
+        Assert.assertEquals(pipeline.toList(source), expected);
+        Assert.assertEquals(pipeline.collect(source, Collectors.toList()), expected);
+        Assert.assertEquals(pipeline.count(source), 50);
+        Assert.assertEquals(pipeline.stream(source).parallel().collect(Collectors.toList()), expected);
+    }
+
+    @Test
+    public void testLimit_StopsTheSource()
+    {
+        AtomicInteger pulled = new AtomicInteger();
+        Pipeline<Integer, Integer> pipeline = Pipeline.<Integer> of().peek(i -> pulled.incrementAndGet()).limit(3);
+
+        List<Integer> source = Arrays.asList(1, 2, 3, 4, 5, 6);
+        Assert.assertEquals(pipeline.toList(source), Arrays.asList(1, 2, 3));
+        Assert.assertEquals(pulled.get(), 3);
+        Assert.assertEquals(Pipeline.<Integer> of().limit(0).count(source), 0);
+    }
+
+    @Test
+    public void testMemoized()
+    {
+        AtomicInteger evaluations = new AtomicInteger();
+        MemoizedPipeline<String, String> xdm = Pipeline
+            .<String> of()
+            .peek(s -> evaluations.incrementAndGet())
+            .filter(s -> s.startsWith("xdm"))
+            .memoized();
+
+        VersionedList<String> modules = new VersionedList<>(MODULES);
+        Predicate<String> trading = s -> s.endsWith("trading");
+
+        Assert.assertEquals(xdm.count(modules), 3);
+        Assert.assertEquals(xdm.count(modules), 3);
+        Assert.assertTrue(xdm.anyMatch(modules, trading));
+        Assert.assertTrue(xdm.anyMatch(modules, trading));
+        Assert.assertEquals(evaluations.get(), 4); // 3 for count, 1 for anyMatch
+        Assert.assertEquals(xdm.getHits(), 2);
+
+        modules.add("xdm-risk");
+        Assert.assertEquals(xdm.count(modules), 4);
+        modules.remove("xdm-trading");
+        Assert.assertFalse(xdm.anyMatch(modules, trading));
+        Assert.assertEquals(xdm.getMisses(), 4);
+    }
+
+    @Test
+    public void testMemoized_Bounded()
+    {
+        MemoizedPipeline<String, String> xdm = Pipeline.<String> of().filter(s -> s.startsWith("xdm")).memoized(4);
+        VersionedList<String> modules = new VersionedList<>(MODULES);
+        Predicate<String> trading = s -> s.endsWith("trading");
+        Assert.assertTrue(xdm.anyMatch(modules, trading));
+
+        // a capturing lambda per call never hits, and only churns the least recently used entries
+        for (int i = 0; i < 100; i++)
+        {
+            String suffix = "-" + i;
+            xdm.anyMatch(modules, s -> s.endsWith(suffix));
+            Assert.assertTrue(xdm.anyMatch(modules, trading));
+        }
+        Assert.assertEquals(xdm.size(), 4);
+        Assert.assertEquals(xdm.getHits(), 100);
+    }
+}
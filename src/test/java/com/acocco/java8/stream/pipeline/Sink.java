@@ -0,0 +1,19 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+/**
+ * Receives the elements coming out of the last stage of a CompiledPipeline run.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+@FunctionalInterface
+interface Sink
+{
+    /**
+     * @return false when the terminal operation does not need more elements
+     */
+    boolean accept(Object value);
+}
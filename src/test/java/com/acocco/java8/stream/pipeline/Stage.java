@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+import java.util.Comparator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+
+/**
+ * Immutable description of an intermediate operation of a Pipeline.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class Stage
+{
+    enum Kind
+    {
+        FILTER, MAP, PEEK, DISTINCT, SORTED, SKIP, LIMIT
+    }
+
+    final Kind kind;
+
+    /** The Predicate, Function, Consumer or Comparator of the stage, null for DISTINCT, SKIP and LIMIT */
+    final Object function;
+
+    /** The argument of SKIP and LIMIT */
+    final long n;
+
+    private Stage(Kind kind, Object function, long n)
+    {
+        this.kind = kind;
+        this.function = function;
+        this.n = n;
+    }
+
+    static Stage filter(Predicate<?> predicate)
+    {
+        return new Stage(Kind.FILTER, predicate, 0);
+    }
+
+    static Stage map(Function<?, ?> mapper)
+    {
+        return new Stage(Kind.MAP, mapper, 0);
+    }
+
+    static Stage peek(Consumer<?> action)
+    {
+        return new Stage(Kind.PEEK, action, 0);
+    }
+
+    static Stage distinct()
+    {
+        return new Stage(Kind.DISTINCT, null, 0);
+    }
+
+    /**
+     * @param comparator
+     *            null for the natural order
+     */
+    static Stage sorted(Comparator<?> comparator)
+    {
+        return new Stage(Kind.SORTED, comparator, 0);
+    }
+
+    static Stage skip(long n)
+    {
+        return new Stage(Kind.SKIP, null, n);
+    }
+
+    static Stage limit(long n)
+    {
+        return new Stage(Kind.LIMIT, null, n);
+    }
+
+    @Override
+    public String toString()
+    {
+        String name = kind.name().toLowerCase();
+        return kind == Kind.SKIP || kind == Kind.LIMIT ? name + "(" + n + ")" : name;
+    }
+}
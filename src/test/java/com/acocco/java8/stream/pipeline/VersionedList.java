@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+
+/**
+ * An ArrayList that bumps its version on every change, the source of a MemoizedPipeline.
+ *
+ * All the mutators of AbstractList go through add, set and remove, which increment the version. Not thread safe.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class VersionedList<E> extends AbstractList<E> implements VersionedSource<E>, RandomAccess
+{
+    private final ArrayList<E> elements;
+
+    private long version;
+
+    public VersionedList()
+    {
+        elements = new ArrayList<>();
+    }
+
+    public VersionedList(Collection<? extends E> elements)
+    {
+        this.elements = new ArrayList<>(elements);
+    }
+
+    @Override
+    public long version()
+    {
+        return version;
+    }
+
+    @Override
+    public E get(int index)
+    {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size()
+    {
+        return elements.size();
+    }
+
+    @Override
+    public E set(int index, E element)
+    {
+        E previous = elements.set(index, element);
+        version++;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, E element)
+    {
+        elements.add(index, element);
+        version++;
+    }
+
+    @Override
+    public E remove(int index)
+    {
+        E removed = elements.remove(index);
+        version++;
+        return removed;
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pipeline;
+
+/**
+ * A source whose version changes every time its content changes.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public interface VersionedSource<E> extends Iterable<E>
+{
+    /**
+     * The version stamp of the content, two reads with the same version see the same elements.
+     */
+    long version();
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pool;
+
+/**
+ * Immutable snapshot of the counters of a StreamPool.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class PoolMetrics
+{
+    private final String name;
+
+    private final int parallelism;
+
+    private final int poolSize;
+
+    private final int activeThreads;
+
+    private final int runningThreads;
+
+    private final long steals;
+
+    private final long queuedTasks;
+
+    private final int queuedSubmissions;
+
+    private final long submittedPipelines;
+
+    PoolMetrics(
+        String name,
+        int parallelism,
+        int poolSize,
+        int activeThreads,
+        int runningThreads,
+        long steals,
+        long queuedTasks,
+        int queuedSubmissions,
+        long submittedPipelines)
+    {
+        this.name = name;
+        this.parallelism = parallelism;
+        this.poolSize = poolSize;
+        this.activeThreads = activeThreads;
+        this.runningThreads = runningThreads;
+        this.steals = steals;
+        this.queuedTasks = queuedTasks;
+        this.queuedSubmissions = queuedSubmissions;
+        this.submittedPipelines = submittedPipelines;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /** The target number of workers */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /** Workers started and not yet terminated */
+    public int getPoolSize()
+    {
+        return poolSize;
+    }
+
+    /** Workers currently stealing or executing tasks */
+    public int getActiveThreads()
+    {
+        return activeThreads;
+    }
+
+    /** Workers not blocked waiting to join tasks */
+    public int getRunningThreads()
+    {
+        return runningThreads;
+    }
+
+    /** Tasks taken from the queue of another worker */
+    public long getSteals()
+    {
+        return steals;
+    }
+
+    /** Tasks waiting in the worker queues, the depth of the pool */
+    public long getQueuedTasks()
+    {
+        return queuedTasks;
+    }
+
+    /** Pipelines submitted from outside and not yet started */
+    public int getQueuedSubmissions()
+    {
+        return queuedSubmissions;
+    }
+
+    /** Pipelines executed or being executed since the pool was created */
+    public long getSubmittedPipelines()
+    {
+        return submittedPipelines;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PoolMetrics{"
+            + "name=" + name
+            + ", parallelism=" + parallelism
+            + ", poolSize=" + poolSize
+            + ", activeThreads=" + activeThreads
+            + ", runningThreads=" + runningThreads
+            + ", steals=" + steals
+            + ", queuedTasks=" + queuedTasks
+            + ", queuedSubmissions=" + queuedSubmissions
+            + ", submittedPipelines=" + submittedPipelines
+            + "}";
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pool;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+/**
+ * A named ForkJoinPool of fixed parallelism dedicated to a workload.
+ *
+ * A parallel stream whose terminal operation is called from a ForkJoinPool worker is executed in that pool instead of
+ * ForkJoinPool.commonPool(). execute and run use this to keep heavy pipelines of one workload away from the common
+ * pool and from the other workloads:
+ *
+ * <pre>
+ * StreamPool pool = StreamPools.getOrCreate("reports", 2);
+ * long count = pool.execute(() -> values.parallelStream().filter(...).count());
+ * </pre>
+ *
+ * Obtain the pools from StreamPools. A pool is shared by every caller asking for its name, so a caller cannot close
+ * it: StreamPools.shutdown stops it when the whole workload is gone.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class StreamPool
+{
+    private final String name;
+
+    private final ForkJoinPool pool;
+
+    private final LongAdder submittedPipelines = new LongAdder();
+
+    StreamPool(String name, int parallelism)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.name = name;
+        this.pool = new ForkJoinPool(parallelism, new NamedThreadFactory(name), null, false);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getParallelism()
+    {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Runs the pipeline in this pool and returns its result. Runtime exceptions thrown by the pipeline are rethrown
+     * as they are.
+     *
+     * Called from a worker of this pool the pipeline runs in the calling thread, it is already in the pool.
+     */
+    public <T> T execute(Supplier<T> pipeline)
+    {
+        submittedPipelines.increment();
+        if (ForkJoinTask.getPool() == pool)
+        {
+            return pipeline.get();
+        }
+        return pool.submit(pipeline::get).join();
+    }
+
+    /**
+     * Runs the pipeline in this pool and waits for its completion.
+     */
+    public void run(Runnable pipeline)
+    {
+        execute(() ->
+        {
+            pipeline.run();
+            return null;
+        });
+    }
+
+    /**
+     * Returns a snapshot of the pool counters. The values are estimates taken without stopping the pool.
+     */
+    public PoolMetrics metrics()
+    {
+        return new PoolMetrics(
+            name,
+            pool.getParallelism(),
+            pool.getPoolSize(),
+            pool.getActiveThreadCount(),
+            pool.getRunningThreadCount(),
+            pool.getStealCount(),
+            pool.getQueuedTaskCount(),
+            pool.getQueuedSubmissionCount(),
+            submittedPipelines.sum());
+    }
+
+    public boolean isClosed()
+    {
+        return pool.isShutdown();
+    }
+
+    /**
+     * Pipelines already submitted are completed.
+     */
+    void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StreamPool[" + name + ", parallelism=" + pool.getParallelism() + "]";
+    }
+
+    /**
+     * Names the workers "name-worker-N" so that thread dumps and Thread.currentThread().getName() tell which
+     * workload a thread belongs to.
+     */
+    private static final class NamedThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory
+    {
+        private final String name;
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+        {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name + "-worker-" + counter.incrementAndGet());
+            return thread;
+        }
+    }
+}
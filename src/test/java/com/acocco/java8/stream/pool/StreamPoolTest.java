@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pool;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * Parallel streams executed in a named pool instead of ForkJoinPool.commonPool().
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class StreamPoolTest
+{
+    @Test
+    public void testExecute_RunsInNamedPool()
+    {
+        StreamPool pool = StreamPools.getOrCreate("test-reports", 2);
+        try
+        {
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+
+            long sum = pool.execute(() -> IntStream
+                .range(0, 100000)
+                .parallel()
+                .peek(i -> threads.add(Thread.currentThread().getName()))
+                .asLongStream()
+                .sum());
+
+            Assert.assertEquals(sum, 4999950000L);
+            threads.forEach(name -> Assert.assertTrue(name.startsWith("test-reports-worker-"), name));
+
+            PoolMetrics metrics = pool.metrics();
+            System.out.println(metrics);
+            Assert.assertEquals(metrics.getParallelism(), 2);
+            Assert.assertEquals(metrics.getSubmittedPipelines(), 1);
+        }
+        finally
+        {
+            Assert.assertTrue(StreamPools.shutdown("test-reports"));
+        }
+
+        Assert.assertFalse(StreamPools.get("test-reports").isPresent());
+        Assert.assertTrue(pool.isClosed());
+    }
+
+    @Test
+    public void testGetOrCreate_SamePool()
+    {
+        StreamPool pool = StreamPools.getOrCreate("test-shared", 1);
+        try
+        {
+            StreamPool other = StreamPools.getOrCreate("test-shared", 1);
+            Assert.assertSame(other, pool);
+            Assert.assertEquals(other.execute(() -> IntStream.range(0, 10).parallel().sum()).intValue(), 45);
+            Assert.assertFalse(pool.isClosed());
+        }
+        finally
+        {
+            StreamPools.shutdown("test-shared");
+        }
+        Assert.assertFalse(StreamPools.shutdown("test-shared"));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testGetOrCreate_DifferentParallelism()
+    {
+        StreamPools.getOrCreate("test-conflict", 1);
+        try
+        {
+            StreamPools.getOrCreate("test-conflict", 2);
+        }
+        finally
+        {
+            StreamPools.shutdown("test-conflict");
+        }
+    }
+
+    @Test(expectedExceptions = ArithmeticException.class)
+    public void testExecute_RethrowsPipelineException()
+    {
+        StreamPool pool = StreamPools.getOrCreate("test-failure", 1);
+        try
+        {
+            pool.execute(() -> IntStream.of(1, 0).parallel().map(i -> 1 / i).sum());
+        }
+        finally
+        {
+            StreamPools.shutdown("test-failure");
+        }
+    }
+}
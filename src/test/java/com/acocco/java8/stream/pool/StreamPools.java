@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Registry of the named StreamPools of the application.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class StreamPools
+{
+    private static final ConcurrentMap<String, StreamPool> POOLS = new ConcurrentHashMap<>();
+
+    private StreamPools()
+    {
+    }
+
+    /**
+     * Returns the pool registered with the given name, creating it with the given parallelism if it does not exist.
+     *
+     * @throws IllegalStateException
+     *             if the pool exists with a different parallelism
+     */
+    public static StreamPool getOrCreate(String name, int parallelism)
+    {
+        StreamPool pool = POOLS.computeIfAbsent(name, n -> new StreamPool(n, parallelism));
+        if (pool.getParallelism() != parallelism)
+        {
+            throw new IllegalStateException(pool + " already exists, requested parallelism " + parallelism);
+        }
+        return pool;
+    }
+
+    public static Optional<StreamPool> get(String name)
+    {
+        return Optional.ofNullable(POOLS.get(name));
+    }
+
+    /**
+     * Returns the metrics of every registered pool.
+     */
+    public static List<PoolMetrics> metrics()
+    {
+        List<PoolMetrics> metrics = new ArrayList<>();
+        POOLS.values().forEach(pool -> metrics.add(pool.metrics()));
+        return metrics;
+    }
+
+    /**
+     * Removes the pool from the registry and shuts it down, the pipelines already submitted are completed. The
+     * holders of the pool get a RejectedExecutionException afterwards, getOrCreate creates a new pool.
+     *
+     * @return false if no pool is registered with the name
+     */
+    public static boolean shutdown(String name)
+    {
+        StreamPool pool = POOLS.remove(name);
+        if (pool == null)
+        {
+            return false;
+        }
+        pool.shutdown();
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.probe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Summary of a StreamProbe: for every stage the elements handled, the time spent and the distribution over the
+ * threads, plus the number of splits of the source.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class ProbeReport
+{
+    private final String name;
+
+    private final boolean timed;
+
+    private final List<StageReport> stages = new ArrayList<>();
+
+    private final Map<String, Long> splitsByThread = new LinkedHashMap<>();
+
+    ProbeReport(String name, boolean timed, List<String> stageNames, List<ThreadRecorder> recorders)
+    {
+        this.name = name;
+        this.timed = timed;
+        for (int i = 0; i < stageNames.size(); i++)
+        {
+            Map<String, Long> countByThread = new LinkedHashMap<>();
+            long nanos = 0;
+            for (ThreadRecorder recorder : recorders)
+            {
+                if (recorder.count(i) > 0)
+                {
+                    countByThread.merge(recorder.thread, recorder.count(i), Long::sum);
+                }
+                nanos += recorder.nanos(i);
+            }
+            stages.add(new StageReport(stageNames.get(i), nanos, countByThread));
+        }
+        for (ThreadRecorder recorder : recorders)
+        {
+            if (recorder.splits > 0)
+            {
+                splitsByThread.merge(recorder.thread, recorder.splits, Long::sum);
+            }
+        }
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public List<StageReport> getStages()
+    {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * The report of the given stage.
+     *
+     * @throws IllegalArgumentException
+     *             if the stage was never registered in the probe
+     */
+    public StageReport getStage(String stage)
+    {
+        return stages
+            .stream()
+            .filter(s -> s.getName().equals(stage))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("Unknown stage: " + stage));
+    }
+
+    /**
+     * Number of successful trySplit of the source.
+     */
+    public long getSplits()
+    {
+        return splitsByThread.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public Map<String, Long> getSplitsByThread()
+    {
+        return Collections.unmodifiableMap(splitsByThread);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("probe %s: %d splits %s%n", name, getSplits(), splitsByThread));
+        for (StageReport stage : stages)
+        {
+            builder.append(String.format(
+                "  %-12s count=%-10d %s imbalance=%.2f %s%n",
+                stage.getName(),
+                stage.getCount(),
+                timed ? "time=" + TimeUnit.NANOSECONDS.toMicros(stage.getNanos()) + "us" : "",
+                stage.getImbalance(),
+                stage.getCountByThread()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The counters of one stage.
+     */
+    public static class StageReport
+    {
+        private final String name;
+
+        private final long nanos;
+
+        private final Map<String, Long> countByThread;
+
+        StageReport(String name, long nanos, Map<String, Long> countByThread)
+        {
+            this.name = name;
+            this.nanos = nanos;
+            this.countByThread = Collections.unmodifiableMap(countByThread);
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public long getCount()
+        {
+            return countByThread.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        /**
+         * Time spent in the stage summed over the threads, 0 when the probe is not timed.
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        public Map<String, Long> getCountByThread()
+        {
+            return countByThread;
+        }
+
+        /**
+         * The elements handled by the busiest thread divided by the average over the threads that took part: 1.0 is
+         * a perfect balance, 0.0 when the stage saw no element.
+         */
+        public double getImbalance()
+        {
+            if (countByThread.isEmpty())
+            {
+                return 0.0d;
+            }
+            long max = countByThread.values().stream().mapToLong(Long::longValue).max().getAsLong();
+            return max / ((double) getCount() / countByThread.size());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.probe;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+
+/**
+ * Spliterator recording into a StreamProbe the elements it produces and the splits, on the thread doing the work.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class ProbedSpliterator<T> implements Spliterator<T>
+{
+    private final Spliterator<T> source;
+
+    private final StreamProbe probe;
+
+    private final int stage;
+
+    ProbedSpliterator(Spliterator<T> source, StreamProbe probe, int stage)
+    {
+        this.source = source;
+        this.probe = probe;
+        this.stage = stage;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action)
+    {
+        return source.tryAdvance(t ->
+        {
+            probe.count(stage);
+            action.accept(t);
+        });
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action)
+    {
+        source.forEachRemaining(t ->
+        {
+            probe.count(stage);
+            action.accept(t);
+        });
+    }
+
+    @Override
+    public Spliterator<T> trySplit()
+    {
+        Spliterator<T> prefix = source.trySplit();
+        if (prefix == null)
+        {
+            return null;
+        }
+        probe.split();
+        return new ProbedSpliterator<>(prefix, probe, stage);
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return source.estimateSize();
+    }
+
+    @Override
+    public long getExactSizeIfKnown()
+    {
+        return source.getExactSizeIfKnown();
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return source.characteristics();
+    }
+
+    @Override
+    public Comparator<? super T> getComparator()
+    {
+        return source.getComparator();
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.probe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.acocco.java8.stream.probe.ProbeReport.StageReport;
+
+
+/**
+ * StreamTest.testParallelalStream_Two without printing from the lambdas: the probe counts per stage and per thread
+ * and the summary is printed once at the end.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class StreamProbeTest
+{
+    @Test
+    public void testParallelStream_Probe()
+    {
+        StreamProbe probe = new StreamProbe("upper");
+        List<String> result = new ArrayList<>();
+
+        probe
+            .stream(Arrays.asList("a1", "a2", "b1", "b2", "c1"), true)
+            .filter(probe.filter("filter", s -> true))
+            .map(probe.map("map", String::toUpperCase))
+            .forEachOrdered(probe.consumer("forEach", result::add));
+
+        ProbeReport report = probe.report();
+        System.out.println(report);
+
+        Assert.assertEquals(result, Arrays.asList("A1", "A2", "B1", "B2", "C1"));
+        for (String stage : Arrays.asList(StreamProbe.SOURCE, "filter", "map", "forEach"))
+        {
+            StageReport stageReport = report.getStage(stage);
+            Assert.assertEquals(stageReport.getCount(), 5, stage);
+            Assert.assertTrue(stageReport.getImbalance() >= 1.0d, stage);
+        }
+    }
+
+    @Test
+    public void testSplitsAndCountOnly()
+    {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 100000; i++)
+        {
+            values.add(i);
+        }
+        StreamProbe probe = new StreamProbe("even", false);
+
+        long even = probe
+            .stream(values, true)
+            .filter(probe.filter("even", i -> i % 2 == 0))
+            .collect(Collectors.counting());
+
+        ProbeReport report = probe.report();
+        Assert.assertEquals(even, 50000);
+        Assert.assertEquals(report.getStage("even").getCount(), 100000);
+        Assert.assertEquals(report.getStage("even").getNanos(), 0);
+        Assert.assertTrue(report.getSplits() > 0);
+    }
+}
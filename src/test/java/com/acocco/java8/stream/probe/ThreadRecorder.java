@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.probe;
+
+import java.util.Arrays;
+
+
+/**
+ * The counters of one thread for one StreamProbe.
+ *
+ * Only the owner thread writes, with plain stores: no lock, no CAS and no shared cache line on the hot path. The
+ * report reads them once the terminal operation has returned, the join of the stream tasks makes the writes
+ * visible.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class ThreadRecorder
+{
+    final String thread;
+
+    long[] counts;
+
+    long[] nanos;
+
+    long splits;
+
+    ThreadRecorder(String thread, int stages)
+    {
+        this.thread = thread;
+        this.counts = new long[Math.max(stages, 4)];
+        this.nanos = new long[counts.length];
+    }
+
+    void record(int stage, long elapsed)
+    {
+        if (stage >= counts.length)
+        {
+            int length = Math.max(stage + 1, counts.length * 2);
+            counts = Arrays.copyOf(counts, length);
+            nanos = Arrays.copyOf(nanos, length);
+        }
+        counts[stage]++;
+        nanos[stage] += elapsed;
+    }
+
+    long count(int stage)
+    {
+        return stage < counts.length ? counts[stage] : 0;
+    }
+
+    long nanos(int stage)
+    {
+        return stage < nanos.length ? nanos[stage] : 0;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.reactive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+
+/**
+ * Subscriber that pulls batchSize elements at a time and hands them to the consumer as one list, asking for the next
+ * batch only once the consumer returned: at most one batch is ever in flight, whatever the pace of the publisher.
+ * The last batch may be shorter.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class BatchSubscriber<T> implements Subscriber<T>
+{
+    private final int batchSize;
+
+    private final Consumer<? super List<T>> consumer;
+
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+
+    private Subscription subscription;
+
+    private List<T> batch;
+
+    private long batches;
+
+    public BatchSubscriber(int batchSize, Consumer<? super List<T>> consumer)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        this.consumer = Objects.requireNonNull(consumer);
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Completes with the number of batches consumed, or exceptionally with the failure of the publisher or of the
+     * consumer.
+     */
+    public CompletableFuture<Long> completion()
+    {
+        return completion;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription)
+    {
+        if (this.subscription != null)
+        {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(batchSize);
+    }
+
+    @Override
+    public void onNext(T item)
+    {
+        if (completion.isDone())
+        {
+            return;
+        }
+        batch.add(item);
+        if (batch.size() == batchSize && deliver())
+        {
+            subscription.request(batchSize);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable)
+    {
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete()
+    {
+        if (batch.isEmpty() || deliver())
+        {
+            completion.complete(batches);
+        }
+    }
+
+    /**
+     * Stops after the current batch.
+     */
+    public void cancel()
+    {
+        if (subscription != null)
+        {
+            subscription.cancel();
+        }
+        completion.complete(batches);
+    }
+
+    private boolean deliver()
+    {
+        List<T> full = batch;
+        batch = new ArrayList<>(batchSize);
+        try
+        {
+            consumer.accept(full);
+            batches++;
+            return true;
+        }
+        catch (RuntimeException e)
+        {
+            subscription.cancel();
+            completion.completeExceptionally(e);
+            return false;
+        }
+    }
+}
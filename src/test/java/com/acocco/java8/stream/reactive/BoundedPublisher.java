@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.reactive;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Hot Publisher fed by a push producer through a bounded buffer: put blocks the producer while the buffer is full, so
+ * a bursty producer is slowed down to the pace of the subscriber demand and the memory held never exceeds the
+ * capacity.
+ *
+ * There is a single subscriber; elements put before it subscribes wait in the buffer. Once the subscription is
+ * cancelled the buffer is cleared and the elements put afterwards are dropped.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class BoundedPublisher<T> implements Publisher<T>
+{
+    private final ArrayBlockingQueue<T> buffer;
+
+    private final Executor executor;
+
+    private volatile boolean completed;
+
+    private volatile Throwable error;
+
+    private volatile DemandSubscription<T> subscription;
+
+    public BoundedPublisher(int capacity, Executor executor)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public synchronized void subscribe(Subscriber<? super T> subscriber)
+    {
+        Objects.requireNonNull(subscriber);
+        if (subscription != null)
+        {
+            DemandSubscription<T> rejected = new DemandSubscription<>(subscriber, new FailedSource<>(
+                new IllegalStateException("BoundedPublisher allows a single subscriber")), executor);
+            subscriber.onSubscribe(rejected);
+            rejected.signal();
+            return;
+        }
+        subscription = new DemandSubscription<>(subscriber, new BufferSource(), executor);
+        subscriber.onSubscribe(subscription);
+        subscription.signal();
+    }
+
+    /**
+     * Adds an element, waiting while the buffer is full.
+     */
+    public void put(T item) throws InterruptedException
+    {
+        checkOpen(item);
+        while (!buffer.offer(item, 10, TimeUnit.MILLISECONDS))
+        {
+            if (isCancelled())
+            {
+                return;
+            }
+        }
+        signal();
+    }
+
+    /**
+     * Adds an element if the buffer has room, false when it is full.
+     */
+    public boolean offer(T item)
+    {
+        checkOpen(item);
+        if (isCancelled())
+        {
+            return true;
+        }
+        if (!buffer.offer(item))
+        {
+            return false;
+        }
+        signal();
+        return true;
+    }
+
+    /**
+     * No more elements: the subscriber completes once the buffer is drained.
+     */
+    public void complete()
+    {
+        completed = true;
+        signal();
+    }
+
+    /**
+     * No more elements: the subscriber fails with error once the buffer is drained.
+     */
+    public void fail(Throwable error)
+    {
+        this.error = Objects.requireNonNull(error);
+        completed = true;
+        signal();
+    }
+
+    /**
+     * Elements waiting for demand.
+     */
+    public int buffered()
+    {
+        return buffer.size();
+    }
+
+    public int capacity()
+    {
+        return buffer.size() + buffer.remainingCapacity();
+    }
+
+    private void checkOpen(T item)
+    {
+        Objects.requireNonNull(item);
+        if (completed)
+        {
+            throw new IllegalStateException("publisher already completed");
+        }
+    }
+
+    private boolean isCancelled()
+    {
+        DemandSubscription<T> current = subscription;
+        if (current != null && current.isCancelled())
+        {
+            buffer.clear();
+            return true;
+        }
+        return false;
+    }
+
+    private void signal()
+    {
+        DemandSubscription<T> current = subscription;
+        if (current != null)
+        {
+            current.signal();
+        }
+    }
+
+    private final class BufferSource implements DemandSubscription.Source<T>
+    {
+        @Override
+        public T poll()
+        {
+            return buffer.poll();
+        }
+
+        @Override
+        public boolean isExhausted()
+        {
+            return completed && buffer.isEmpty();
+        }
+
+        @Override
+        public Throwable error()
+        {
+            return error;
+        }
+
+        @Override
+        public void release()
+        {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Source of a rejected subscriber, fails as soon as it is drained.
+     */
+    private static final class FailedSource<T> implements DemandSubscription.Source<T>
+    {
+        private final Throwable error;
+
+        FailedSource(Throwable error)
+        {
+            this.error = error;
+        }
+
+        @Override
+        public T poll()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean isExhausted()
+        {
+            return true;
+        }
+
+        @Override
+        public Throwable error()
+        {
+            return error;
+        }
+
+        @Override
+        public void release()
+        {
+        }
+    }
+}
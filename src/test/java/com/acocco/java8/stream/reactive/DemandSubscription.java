@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.reactive;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Subscription that drains a Source into its Subscriber as far as the demand allows.
+ *
+ * request and signal schedule a drain on the executor; the work in progress counter guarantees that a single drain
+ * runs at a time, which serializes the signals, and that a signal arriving during a drain makes it loop once more
+ * instead of being lost.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+final class DemandSubscription<T> implements Subscription
+{
+    /**
+     * Where the elements come from.
+     */
+    interface Source<T>
+    {
+        /**
+         * The next element, null when none is available now.
+         */
+        T poll() throws Exception;
+
+        /**
+         * True when poll will never return an element again.
+         */
+        boolean isExhausted() throws Exception;
+
+        /**
+         * The failure of the source once exhausted, null when it completed normally.
+         */
+        Throwable error();
+
+        /**
+         * Called once when the subscription is cancelled or terminated.
+         */
+        void release();
+    }
+
+    private final Subscriber<? super T> subscriber;
+
+    private final Source<T> source;
+
+    private final Executor executor;
+
+    private final AtomicLong requested = new AtomicLong();
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean done;
+
+    private volatile Throwable invalidRequest;
+
+    DemandSubscription(Subscriber<? super T> subscriber, Source<T> source, Executor executor)
+    {
+        this.subscriber = subscriber;
+        this.source = source;
+        this.executor = executor;
+    }
+
+    @Override
+    public void request(long n)
+    {
+        if (n <= 0)
+        {
+            invalidRequest = new IllegalArgumentException("request must be positive: " + n);
+        }
+        else
+        {
+            requested.accumulateAndGet(n, (current, add) ->
+            {
+                long sum = current + add;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            });
+        }
+        signal();
+    }
+
+    @Override
+    public void cancel()
+    {
+        if (!done)
+        {
+            done = true;
+            signal();
+        }
+    }
+
+    boolean isCancelled()
+    {
+        return done;
+    }
+
+    /**
+     * Schedules a drain, to call when the source may have new elements or has ended.
+     */
+    void signal()
+    {
+        if (wip.getAndIncrement() == 0)
+        {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain()
+    {
+        int missed = 1;
+        while (true)
+        {
+            if (done)
+            {
+                source.release();
+                return;
+            }
+            if (invalidRequest != null)
+            {
+                terminate(invalidRequest);
+                return;
+            }
+
+            long demand = requested.get();
+            long emitted = 0;
+            try
+            {
+                while (emitted != demand && !done)
+                {
+                    T item = source.poll();
+                    if (item == null)
+                    {
+                        break;
+                    }
+                    subscriber.onNext(item);
+                    emitted++;
+                }
+                if (!done && source.isExhausted())
+                {
+                    terminate(source.error());
+                    return;
+                }
+            }
+            catch (Throwable e)
+            {
+                terminate(e);
+                return;
+            }
+
+            if (emitted != 0 && demand != Long.MAX_VALUE)
+            {
+                requested.addAndGet(-emitted);
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0)
+            {
+                return;
+            }
+        }
+    }
+
+    private void terminate(Throwable error)
+    {
+        done = true;
+        source.release();
+        if (error == null)
+        {
+            subscriber.onComplete();
+        }
+        else
+        {
+            subscriber.onError(error);
+        }
+    }
+}
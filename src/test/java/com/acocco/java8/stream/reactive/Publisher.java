@@ -0,0 +1,20 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.reactive;
+
+/**
+ * A producer of elements sent to its Subscriber only as far as the subscriber asked for them.
+ *
+ * Java 8 has no java.util.concurrent.Flow: Publisher, Subscriber and Subscription have the same shape as the Flow
+ * interfaces of Java 9 and of the Reactive Streams specification, and follow the same rules (signals serialized,
+ * onSubscribe first, at most one onComplete or onError, never more onNext than requested).
+ *
+ * @author acocco
+ * @version $Id$
+ */
+@FunctionalInterface
+public interface Publisher<T>
+{
+    void subscribe(Subscriber<? super T> subscriber);
+}
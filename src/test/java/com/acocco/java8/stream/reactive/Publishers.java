@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.reactive;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.acocco.java8.stream.pipeline.Pipeline;
+
+
+/**
+ * Bridges between streams, pipelines and publishers.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class Publishers
+{
+    private Publishers()
+    {
+    }
+
+    /**
+     * Publisher pulling a new stream from the supplier for each subscriber.
+     */
+    public static <T> Publisher<T> fromStream(Supplier<? extends Stream<? extends T>> streams, Executor executor)
+    {
+        return new StreamPublisher<>(streams, executor);
+    }
+
+    /**
+     * Publisher running the pipeline over the source for each subscriber, one element per unit of demand.
+     */
+    public static <S, T> Publisher<T> fromPipeline(Pipeline<S, T> pipeline, Collection<? extends S> source,
+        Executor executor)
+    {
+        return new StreamPublisher<>(() -> pipeline.stream(source), executor);
+    }
+
+    /**
+     * Subscribes to the publisher and returns its elements as a blocking, sequential stream of batches of batchSize
+     * elements. The next batch is requested only when the current one has been taken, so at most batchSize
+     * elements wait between publisher and stream; closing the stream cancels the subscription.
+     */
+    public static <T> Stream<List<T>> batches(Publisher<T> publisher, int batchSize)
+    {
+        BatchIterator<T> iterator = new BatchIterator<>(batchSize);
+        publisher.subscribe(iterator);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+            Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(iterator::cancel);
+    }
+
+    private static final class BatchIterator<T> implements Subscriber<T>, Iterator<List<T>>
+    {
+        private static final Object TERMINAL = new Object();
+
+        private final int batchSize;
+
+        /**
+         * One batch at most plus the terminal signal.
+         */
+        private final BlockingQueue<Object> queue;
+
+        private volatile Subscription subscription;
+
+        private volatile Throwable error;
+
+        private List<T> next;
+
+        private boolean finished;
+
+        BatchIterator(int batchSize)
+        {
+            if (batchSize <= 0)
+            {
+                throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            this.queue = new ArrayBlockingQueue<>(batchSize + 1);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription)
+        {
+            this.subscription = subscription;
+            subscription.request(batchSize);
+        }
+
+        @Override
+        public void onNext(T item)
+        {
+            queue.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            error = throwable;
+            queue.add(TERMINAL);
+        }
+
+        @Override
+        public void onComplete()
+        {
+            queue.add(TERMINAL);
+        }
+
+        void cancel()
+        {
+            Subscription current = subscription;
+            if (current != null)
+            {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (next != null)
+            {
+                return true;
+            }
+            if (finished)
+            {
+                return rethrow();
+            }
+            List<T> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize)
+            {
+                Object item = take();
+                if (item == TERMINAL)
+                {
+                    finished = true;
+                    break;
+                }
+                @SuppressWarnings("unchecked")
+                T t = (T) item;
+                batch.add(t);
+            }
+            if (!finished)
+            {
+                subscription.request(batchSize);
+            }
+            else if (batch.isEmpty())
+            {
+                return rethrow();
+            }
+            next = batch;
+            return true;
+        }
+
+        /**
+         * Once the batches before it are taken, the failure of the publisher is thrown by hasNext, a single time.
+         */
+        private boolean rethrow()
+        {
+            Throwable failure = error;
+            if (failure == null)
+            {
+                return false;
+            }
+            error = null;
+            throw failure instanceof RuntimeException ? (RuntimeException) failure : new CompletionException(failure);
+        }
+
+        @Override
+        public List<T> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            List<T> batch = next;
+            next = null;
+            return batch;
+        }
+
+        private Object take()
+        {
+            try
+            {
+                return queue.take();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new CompletionException(e);
+            }
+        }
+    }
+}
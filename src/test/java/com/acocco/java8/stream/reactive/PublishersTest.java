@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.reactive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.acocco.java8.stream.pipeline.Pipeline;
+
+
+/**
+ * Backpressure: a stream or a bursty producer is consumed in batches without running ahead of the demand.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class PublishersTest
+{
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testStreamPublisher_PullsOnlyWhatIsRequested() throws Exception
+    {
+        AtomicInteger pulled = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        Publisher<Integer> publisher = Publishers.fromStream(
+            () -> IntStream.range(0, 1_000).boxed().peek(i ->
+            {
+                int ahead = pulled.incrementAndGet() - consumed.get();
+                maxAhead.accumulateAndGet(ahead, Math::max);
+            }), executor);
+
+        List<Integer> sizes = new ArrayList<>();
+        BatchSubscriber<Integer> subscriber = new BatchSubscriber<>(64, batch ->
+        {
+            sizes.add(batch.size());
+            consumed.addAndGet(batch.size());
+        });
+        publisher.subscribe(subscriber);
+
+        Assert.assertEquals(subscriber.completion().get(10, TimeUnit.SECONDS).longValue(), 16L);
+        Assert.assertEquals(consumed.get(), 1_000);
+        Assert.assertEquals(sizes.get(0).intValue(), 64);
+        Assert.assertEquals(sizes.get(15).intValue(), 1_000 - 15 * 64);
+        // one batch, plus the element the iterator looks ahead to detect the end of the stream
+        Assert.assertTrue(maxAhead.get() <= 65, "ahead " + maxAhead.get());
+    }
+
+    @Test
+    public void testFromPipeline_Batches()
+    {
+        Pipeline<String, Integer> lengths = Pipeline.<String> of().filter(s -> !s.isEmpty()).map(String::length);
+        Publisher<Integer> publisher = Publishers.fromPipeline(lengths,
+            Arrays.asList("a", "", "bb", "ccc", "", "dddd", "eeeee"), executor);
+
+        try (Stream<List<Integer>> batches = Publishers.batches(publisher, 2))
+        {
+            Assert.assertEquals(batches.collect(Collectors.toList()),
+                Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4), Arrays.asList(5)));
+        }
+    }
+
+    @Test
+    public void testBoundedPublisher_BurstyProducerStaysBounded() throws Exception
+    {
+        BoundedPublisher<Integer> publisher = new BoundedPublisher<>(16, executor);
+        AtomicInteger maxBuffered = new AtomicInteger();
+        Thread producer = new Thread(() ->
+        {
+            try
+            {
+                for (int burst = 0; burst < 100; burst++)
+                {
+                    for (int i = 0; i < 100; i++)
+                    {
+                        publisher.put(burst * 100 + i);
+                        maxBuffered.accumulateAndGet(publisher.buffered(), Math::max);
+                    }
+                }
+                publisher.complete();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        long sum = 0;
+        int expected = 0;
+        try (Stream<List<Integer>> batches = Publishers.batches(publisher, 8))
+        {
+            for (List<Integer> batch : (Iterable<List<Integer>>) batches::iterator)
+            {
+                Assert.assertTrue(batch.size() <= 8);
+                for (Integer i : batch)
+                {
+                    Assert.assertEquals(i.intValue(), expected++);
+                    sum += i;
+                }
+            }
+        }
+        producer.join();
+
+        Assert.assertEquals(expected, 10_000);
+        Assert.assertEquals(sum, 10_000L * 9_999 / 2);
+        Assert.assertTrue(maxBuffered.get() <= publisher.capacity());
+    }
+
+    @Test
+    public void testBoundedPublisher_ErrorAfterBuffer() throws Exception
+    {
+        BoundedPublisher<String> publisher = new BoundedPublisher<>(4, executor);
+        publisher.put("a");
+        publisher.put("b");
+        publisher.fail(new IllegalStateException("source broken"));
+        try
+        {
+            publisher.offer("c");
+            Assert.fail("completed publisher");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+
+        Stream<List<String>> batches = Publishers.batches(publisher, 10);
+        try
+        {
+            batches.forEach(batch -> Assert.assertEquals(batch, Arrays.asList("a", "b")));
+            Assert.fail("expected the publisher failure");
+        }
+        catch (IllegalStateException e)
+        {
+            Assert.assertEquals(e.getMessage(), "source broken");
+        }
+
+        BatchSubscriber<String> second = new BatchSubscriber<>(1, batch -> Assert.fail());
+        publisher.subscribe(second);
+        try
+        {
+            second.completion().get(10, TimeUnit.SECONDS);
+            Assert.fail("a second subscriber is rejected");
+        }
+        catch (ExecutionException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testCancel_ClosesTheStream() throws Exception
+    {
+        AtomicInteger closed = new AtomicInteger();
+        Publisher<Integer> publisher = Publishers.fromStream(
+            () -> IntStream.iterate(0, i -> i + 1).boxed().onClose(closed::incrementAndGet), executor);
+
+        try (Stream<List<Integer>> batches = Publishers.batches(publisher, 10))
+        {
+            Assert.assertEquals(batches.limit(3).mapToInt(List::size).sum(), 30);
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (closed.get() == 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(closed.get(), 1);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.reactive;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+
+/**
+ * Cold Publisher over a Stream: every subscriber gets a fresh stream from the supplier and pulls it through its
+ * iterator only as far as it requested, so a lazy pipeline over a slow source (a file, a script engine) does no more
+ * work than the consumer can take. The stream is pulled on the executor and closed when the subscription ends.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class StreamPublisher<T> implements Publisher<T>
+{
+    private final Supplier<? extends Stream<? extends T>> streams;
+
+    private final Executor executor;
+
+    public StreamPublisher(Supplier<? extends Stream<? extends T>> streams, Executor executor)
+    {
+        this.streams = Objects.requireNonNull(streams);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber)
+    {
+        Objects.requireNonNull(subscriber);
+        DemandSubscription<T> subscription = new DemandSubscription<>(subscriber, new StreamSource<>(streams),
+            executor);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Opens the stream at the first poll, on the executor rather than on the subscribing thread.
+     */
+    private static final class StreamSource<T> implements DemandSubscription.Source<T>
+    {
+        private final Supplier<? extends Stream<? extends T>> streams;
+
+        private Stream<? extends T> stream;
+
+        private Iterator<? extends T> iterator;
+
+        StreamSource(Supplier<? extends Stream<? extends T>> streams)
+        {
+            this.streams = streams;
+        }
+
+        private Iterator<? extends T> iterator()
+        {
+            if (iterator == null)
+            {
+                stream = streams.get();
+                iterator = stream.iterator();
+            }
+            return iterator;
+        }
+
+        @Override
+        public T poll()
+        {
+            Iterator<? extends T> it = iterator();
+            return it.hasNext() ? Objects.requireNonNull(it.next(), "stream element") : null;
+        }
+
+        @Override
+        public boolean isExhausted()
+        {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        public Throwable error()
+        {
+            return null;
+        }
+
+        @Override
+        public void release()
+        {
+            if (stream != null)
+            {
+                stream.close();
+            }
+        }
+    }
+}
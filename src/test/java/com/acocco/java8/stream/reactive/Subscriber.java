@@ -0,0 +1,24 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.reactive;
+
+/**
+ * Receiver of the elements of a Publisher, see Publisher.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public interface Subscriber<T>
+{
+    /**
+     * First signal, nothing is sent before the subscriber calls subscription.request(n).
+     */
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T item);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+}
@@ -0,0 +1,23 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.reactive;
+
+/**
+ * The link between a Publisher and its Subscriber, carries the demand.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public interface Subscription
+{
+    /**
+     * Adds n to the demand. A non positive n fails the subscription with an IllegalArgumentException.
+     */
+    void request(long n);
+
+    /**
+     * Stops the flow of elements, the publisher may still send signals already in progress.
+     */
+    void cancel();
+}
@@ -0,0 +1,449 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Sorts streams larger than the heap: the sorted mode of values.stream().sorted() that spills to disk.
+ *
+ * The input is read into buffers of at most memoryBudget / (parallelism + 1) bytes, as estimated by the weigher.
+ * Every full buffer is sorted and written to a temporary run file by a task of the pool while the next buffer is
+ * being filled; at most parallelism buffers are in flight, so the heap used stays around the budget. The runs are
+ * then merged with a k-way merge over buffered readers (in several passes beyond 128 runs) into a lazily consumed
+ * sorted stream. An input that fits in the first buffer is sorted in memory and never touches the disk.
+ *
+ * The sort is stable. The run files are deleted as soon as they are merged or the stream is closed: close the
+ * returned stream (try with resources) when it is not fully consumed.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class ExternalSorter<T>
+{
+    /** Runs merged at once, beyond this the merge is done in several passes */
+    static final int MAX_FAN_IN = 128;
+
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final Comparator<? super T> comparator;
+
+    private final RecordCodec<T> codec;
+
+    private final long memoryBudget;
+
+    private final ToLongFunction<? super T> weigher;
+
+    private final Path tempDirectory;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param memoryBudget
+     *            bytes of heap the buffers may use
+     * @param weigher
+     *            estimate in bytes of the heap used by a record
+     * @param tempDirectory
+     *            where the runs are spilled
+     * @param pool
+     *            the pool sorting and writing the runs
+     */
+    public ExternalSorter(
+        Comparator<? super T> comparator,
+        RecordCodec<T> codec,
+        long memoryBudget,
+        ToLongFunction<? super T> weigher,
+        Path tempDirectory,
+        ForkJoinPool pool)
+    {
+        if (memoryBudget <= 0)
+        {
+            throw new IllegalArgumentException("memoryBudget must be positive: " + memoryBudget);
+        }
+        this.comparator = comparator;
+        this.codec = codec;
+        this.memoryBudget = memoryBudget;
+        this.weigher = weigher;
+        this.tempDirectory = tempDirectory;
+        this.pool = pool;
+    }
+
+    /**
+     * Sorter of strings in natural order, spilling to the default temporary directory, runs sorted on the common pool.
+     */
+    public static ExternalSorter<String> forStrings(long memoryBudget)
+    {
+        return new ExternalSorter<>(
+            Comparator.naturalOrder(),
+            RecordCodec.strings(),
+            memoryBudget,
+            // header + array header + 2 bytes per char, rounded
+            s -> 56 + 2L * s.length(),
+            Paths.get(System.getProperty("java.io.tmpdir")),
+            ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns the elements of the input, sorted. Closing the returned stream closes the input.
+     */
+    public Stream<T> sort(Stream<? extends T> input)
+    {
+        return sort(input.iterator()).onClose(input::close);
+    }
+
+    public Stream<T> sort(Iterator<? extends T> input)
+    {
+        long bufferBudget = Math.max(1, memoryBudget / (pool.getParallelism() + 1));
+        Semaphore inFlight = new Semaphore(pool.getParallelism());
+        List<CompletableFuture<Path>> spills = new ArrayList<>();
+
+        List<T> buffer = new ArrayList<>();
+        long used = 0;
+        try
+        {
+            while (input.hasNext())
+            {
+                T record = input.next();
+                buffer.add(record);
+                used += weigher.applyAsLong(record);
+                if (used >= bufferBudget)
+                {
+                    spills.add(spill(buffer, inFlight));
+                    buffer = new ArrayList<>();
+                    used = 0;
+                }
+            }
+
+            if (spills.isEmpty())
+            {
+                buffer.sort(comparator);
+                return buffer.stream();
+            }
+            if (!buffer.isEmpty())
+            {
+                spills.add(spill(buffer, inFlight));
+            }
+
+            List<Path> runs = join(spills);
+            while (runs.size() > MAX_FAN_IN)
+            {
+                runs = mergePass(runs);
+            }
+            MergeIterator merge = new MergeIterator(runs);
+            return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(merge, Spliterator.ORDERED), false)
+                .onClose(merge::close);
+        }
+        catch (RuntimeException e)
+        {
+            spills.forEach(spill -> spill.thenAccept(ExternalSorter::delete));
+            throw e;
+        }
+    }
+
+    /**
+     * Sorts and writes the buffer in the pool, waits while parallelism buffers are already being spilled.
+     */
+    private CompletableFuture<Path> spill(List<T> buffer, Semaphore inFlight)
+    {
+        acquire(inFlight);
+        return CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                buffer.sort(comparator);
+                return writeRun(buffer.iterator());
+            }
+            finally
+            {
+                inFlight.release();
+            }
+        }, pool);
+    }
+
+    /**
+     * Takes a permit as a ForkJoinPool.ManagedBlocker: when sort runs on a worker of the pool, the pool starts a spare
+     * worker while this one waits, otherwise the only worker could wait for spills that no thread runs.
+     */
+    private static void acquire(Semaphore semaphore)
+    {
+        ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker()
+        {
+            private boolean acquired;
+
+            @Override
+            public boolean block()
+            {
+                if (!acquired)
+                {
+                    semaphore.acquireUninterruptibly();
+                    acquired = true;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable()
+            {
+                return acquired || (acquired = semaphore.tryAcquire());
+            }
+        };
+        try
+        {
+            ForkJoinPool.managedBlock(blocker);
+        }
+        catch (InterruptedException e)
+        {
+            // block does not throw it
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Merges groups of MAX_FAN_IN runs into bigger runs, in parallel.
+     */
+    private List<Path> mergePass(List<Path> runs)
+    {
+        List<CompletableFuture<Path>> merged = new ArrayList<>();
+        for (int from = 0; from < runs.size(); from += MAX_FAN_IN)
+        {
+            List<Path> group = new ArrayList<>(runs.subList(from, Math.min(runs.size(), from + MAX_FAN_IN)));
+            merged.add(CompletableFuture.supplyAsync(() ->
+            {
+                try (MergeIterator merge = new MergeIterator(group))
+                {
+                    return writeRun(merge);
+                }
+            }, pool));
+        }
+        return join(merged);
+    }
+
+    private Path writeRun(Iterator<? extends T> records)
+    {
+        Path run = null;
+        try
+        {
+            run = Files.createTempFile(tempDirectory, "run-", ".bin");
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_SIZE)))
+            {
+                while (records.hasNext())
+                {
+                    out.writeBoolean(true);
+                    codec.write(out, records.next());
+                }
+                out.writeBoolean(false);
+            }
+            return run;
+        }
+        catch (IOException e)
+        {
+            delete(run);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Path> join(List<CompletableFuture<Path>> futures)
+    {
+        List<Path> paths = new ArrayList<>(futures.size());
+        RuntimeException failure = null;
+        for (CompletableFuture<Path> future : futures)
+        {
+            try
+            {
+                paths.add(future.join());
+            }
+            catch (CompletionException e)
+            {
+                failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        if (failure != null)
+        {
+            paths.forEach(ExternalSorter::delete);
+            throw failure;
+        }
+        return paths;
+    }
+
+    private static void delete(Path path)
+    {
+        if (path == null)
+        {
+            return;
+        }
+        try
+        {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * K-way merge of sorted runs. The head of each run sits in a priority queue, equal heads come out in run order,
+     * which keeps the sort stable. A run file is deleted as soon as it is exhausted.
+     */
+    private final class MergeIterator implements Iterator<T>, Closeable
+    {
+        private final PriorityQueue<RunReader> heads;
+
+        private final List<RunReader> readers = new ArrayList<>();
+
+        MergeIterator(List<Path> runs)
+        {
+            heads = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) ->
+            {
+                int result = comparator.compare(a.head, b.head);
+                return result != 0 ? result : Integer.compare(a.index, b.index);
+            });
+            try
+            {
+                for (int i = 0; i < runs.size(); i++)
+                {
+                    RunReader reader = new RunReader(runs.get(i), i);
+                    readers.add(reader);
+                    if (reader.advance())
+                    {
+                        heads.add(reader);
+                    }
+                }
+            }
+            catch (RuntimeException e)
+            {
+                runs.forEach(ExternalSorter::delete);
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public T next()
+        {
+            RunReader reader = heads.poll();
+            if (reader == null)
+            {
+                throw new NoSuchElementException();
+            }
+            T result = reader.head;
+            if (reader.advance())
+            {
+                heads.add(reader);
+            }
+            return result;
+        }
+
+        @Override
+        public void close()
+        {
+            readers.forEach(RunReader::close);
+            heads.clear();
+        }
+    }
+
+    private final class RunReader
+    {
+        private final Path path;
+
+        private final int index;
+
+        private final DataInputStream in;
+
+        private boolean closed;
+
+        T head;
+
+        RunReader(Path path, int index)
+        {
+            this.path = path;
+            this.index = index;
+            try
+            {
+                this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), IO_BUFFER_SIZE));
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Reads the next record into head, closes and deletes the run at its end.
+         */
+        boolean advance()
+        {
+            try
+            {
+                if (in.readBoolean())
+                {
+                    head = codec.read(in);
+                    return true;
+                }
+            }
+            catch (IOException e)
+            {
+                close();
+                throw new UncheckedIOException(e);
+            }
+            close();
+            return false;
+        }
+
+        void close()
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            head = null;
+            try
+            {
+                in.close();
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            finally
+            {
+                delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.sort;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.acocco.java8.stream.data.DatasetGenerator;
+
+
+/**
+ * values.stream().sorted() with a memory budget: the runs that do not fit are spilled to temporary files and merged.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class ExternalSorterTest
+{
+    @Test
+    public void testSort_InMemory()
+    {
+        List<String> values = new DatasetGenerator(1).uuidStrings(1000);
+        List<String> sorted = ExternalSorter.forStrings(1L << 30).sort(values.stream()).collect(Collectors.toList());
+
+        Assert.assertEquals(sorted, values.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSort_SpillsAndMergesInSeveralPasses() throws IOException
+    {
+        List<String> values = new DatasetGenerator(2).uuidStrings(200000);
+        Path directory = Files.createTempDirectory("external-sort-test");
+
+        // runs of ~1000 strings: 200 runs, more than the fan in
+        ForkJoinPool pool = new ForkJoinPool(2);
+        ExternalSorter<String> sorter = new ExternalSorter<>(
+            Comparator.naturalOrder(),
+            RecordCodec.strings(),
+            3 * 128 * 1000,
+            s -> 128,
+            directory,
+            pool);
+
+        List<String> sorted;
+        try (Stream<String> stream = sorter.sort(values.stream()))
+        {
+            sorted = stream.collect(Collectors.toList());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        Assert.assertEquals(sorted, values.stream().sorted().collect(Collectors.toList()));
+        try (Stream<Path> files = Files.list(directory))
+        {
+            Assert.assertEquals(files.count(), 0);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testSort_CloseDeletesRuns() throws IOException
+    {
+        List<UUID> values = new DatasetGenerator(3).uuids(50000).stream().collect(Collectors.toList());
+        Path directory = Files.createTempDirectory("external-sort-test");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        ExternalSorter<UUID> sorter = new ExternalSorter<>(
+            Comparator.naturalOrder(),
+            RecordCodec.uuids(),
+            100000,
+            u -> 32,
+            directory,
+            pool);
+
+        try (Stream<UUID> stream = sorter.sort(values.stream()))
+        {
+            Assert.assertEquals(stream.limit(10).collect(Collectors.toList()),
+                values.stream().sorted().limit(10).collect(Collectors.toList()));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        try (Stream<Path> files = Files.list(directory))
+        {
+            Assert.assertEquals(files.count(), 0);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testSort_FromAWorkerOfThePool() throws Exception
+    {
+        List<String> values = new DatasetGenerator(4).uuidStrings(20000);
+        Path directory = Files.createTempDirectory("external-sort-test");
+
+        // one worker: it sorts, and would wait forever for the spills queued behind it without a spare worker
+        ForkJoinPool pool = new ForkJoinPool(1);
+        ExternalSorter<String> sorter = new ExternalSorter<>(
+            Comparator.naturalOrder(),
+            RecordCodec.strings(),
+            2 * 128 * 1000,
+            s -> 128,
+            directory,
+            pool);
+        try
+        {
+            List<String> sorted = pool.submit(() ->
+            {
+                try (Stream<String> stream = sorter.sort(values.stream()))
+                {
+                    return stream.collect(Collectors.toList());
+                }
+            }).get(60, TimeUnit.SECONDS);
+            Assert.assertEquals(sorted, values.stream().sorted().collect(Collectors.toList()));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.sort;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+
+/**
+ * Writes and reads the records spilled to disk by ExternalSorter.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public interface RecordCodec<T>
+{
+    void write(DataOutput out, T record) throws IOException;
+
+    T read(DataInput in) throws IOException;
+
+    /**
+     * Strings as length prefixed UTF-8, without the 64K limit of writeUTF.
+     */
+    static RecordCodec<String> strings()
+    {
+        return new RecordCodec<String>()
+        {
+            @Override
+            public void write(DataOutput out, String record) throws IOException
+            {
+                byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            @Override
+            public String read(DataInput in) throws IOException
+            {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * UUIDs as their two longs, 16 bytes instead of 36 chars.
+     */
+    static RecordCodec<UUID> uuids()
+    {
+        return new RecordCodec<UUID>()
+        {
+            @Override
+            public void write(DataOutput out, UUID record) throws IOException
+            {
+                out.writeLong(record.getMostSignificantBits());
+                out.writeLong(record.getLeastSignificantBits());
+            }
+
+            @Override
+            public UUID read(DataInput in) throws IOException
+            {
+                return new UUID(in.readLong(), in.readLong());
+            }
+        };
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Most significant digit radix sort of 128 bit keys held in two parallel long arrays.
+ *
+ * The key is read one unsigned byte at a time, starting from the highest byte of the most significant long: this is
+ * exactly the order of the hex digits printed by UUID.toString(), so the result matches a String sort of the UUIDs.
+ *
+ * The parallel version computes the histogram of the first byte and scatters the elements chunk by chunk on all the
+ * workers, then every one of the 256 buckets is sorted by its own task.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public final class UuidRadixSort
+{
+    private static final int RADIX = 256;
+
+    private static final int KEY_BYTES = 16;
+
+    /** Below this size a bucket is sorted by insertion */
+    private static final int INSERTION_THRESHOLD = 32;
+
+    /** Below this size parallelSort falls back to the sequential sort */
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private UuidRadixSort()
+    {
+    }
+
+    /**
+     * Sorts msb[from, to) and lsb[from, to) together.
+     */
+    public static void sort(long[] msb, long[] lsb, int from, int to)
+    {
+        checkRange(msb, lsb, from, to);
+        int length = to - from;
+        if (length < 2)
+        {
+            return;
+        }
+        sort(msb, lsb, from, to, 0, new long[length], new long[length], from);
+    }
+
+    /**
+     * Sorts msb[from, to) and lsb[from, to) together using the workers of the given pool.
+     */
+    public static void parallelSort(long[] msb, long[] lsb, int from, int to, ForkJoinPool pool)
+    {
+        checkRange(msb, lsb, from, to);
+        int length = to - from;
+        if (length < PARALLEL_THRESHOLD || pool.getParallelism() == 1)
+        {
+            sort(msb, lsb, from, to);
+            return;
+        }
+        pool.invoke(new TopLevelSort(msb, lsb, from, to, pool.getParallelism()));
+    }
+
+    /**
+     * Unsigned comparison of two 128 bit keys.
+     */
+    public static int compare(long msb1, long lsb1, long msb2, long lsb2)
+    {
+        int result = Long.compareUnsigned(msb1, msb2);
+        return result != 0 ? result : Long.compareUnsigned(lsb1, lsb2);
+    }
+
+    static int digit(long msb, long lsb, int digit)
+    {
+        return digit < 8
+            ? (int) (msb >>> (56 - (digit << 3))) & 0xFF
+            : (int) (lsb >>> (56 - ((digit - 8) << 3))) & 0xFF;
+    }
+
+    /**
+     * Sorts [from, to) on the digits d and following. auxMsb and auxLsb are scratch arrays, whose index 0 maps to
+     * auxBase in the keys arrays.
+     */
+    private static void sort(long[] msb, long[] lsb, int from, int to, int d, long[] auxMsb, long[] auxLsb, int auxBase)
+    {
+        if (to - from < INSERTION_THRESHOLD)
+        {
+            insertionSort(msb, lsb, from, to);
+            return;
+        }
+
+        int[] count = new int[RADIX + 1];
+        for (int i = from; i < to; i++)
+        {
+            count[digit(msb[i], lsb[i], d) + 1]++;
+        }
+        if (count[digit(msb[from], lsb[from], d) + 1] == to - from)
+        {
+            // every key shares this digit, nothing to move
+            if (d + 1 < KEY_BYTES)
+            {
+                sort(msb, lsb, from, to, d + 1, auxMsb, auxLsb, auxBase);
+            }
+            return;
+        }
+        for (int r = 0; r < RADIX; r++)
+        {
+            count[r + 1] += count[r];
+        }
+
+        int[] next = count.clone();
+        int base = from - auxBase;
+        for (int i = from; i < to; i++)
+        {
+            int slot = base + next[digit(msb[i], lsb[i], d)]++;
+            auxMsb[slot] = msb[i];
+            auxLsb[slot] = lsb[i];
+        }
+        System.arraycopy(auxMsb, base, msb, from, to - from);
+        System.arraycopy(auxLsb, base, lsb, from, to - from);
+
+        if (d + 1 < KEY_BYTES)
+        {
+            for (int r = 0; r < RADIX; r++)
+            {
+                if (count[r + 1] - count[r] > 1)
+                {
+                    sort(msb, lsb, from + count[r], from + count[r + 1], d + 1, auxMsb, auxLsb, auxBase);
+                }
+            }
+        }
+    }
+
+    private static void insertionSort(long[] msb, long[] lsb, int from, int to)
+    {
+        for (int i = from + 1; i < to; i++)
+        {
+            long m = msb[i];
+            long l = lsb[i];
+            int j = i - 1;
+            while (j >= from && compare(msb[j], lsb[j], m, l) > 0)
+            {
+                msb[j + 1] = msb[j];
+                lsb[j + 1] = lsb[j];
+                j--;
+            }
+            msb[j + 1] = m;
+            lsb[j + 1] = l;
+        }
+    }
+
+    private static void checkRange(long[] msb, long[] lsb, int from, int to)
+    {
+        if (msb.length != lsb.length)
+        {
+            throw new IllegalArgumentException("msb and lsb must have the same length");
+        }
+        if (from < 0 || from > to || to > msb.length)
+        {
+            throw new ArrayIndexOutOfBoundsException("Range [" + from + ", " + to + ") out of [0, " + msb.length + ")");
+        }
+    }
+
+    /**
+     * Parallel first pass on digit 0: chunked histogram, chunked scatter into the scratch arrays, then one task per
+     * bucket that copies its slice back and sorts it on the remaining digits.
+     */
+    private static final class TopLevelSort extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] msb;
+
+        private final long[] lsb;
+
+        private final int from;
+
+        private final int to;
+
+        private final int chunks;
+
+        TopLevelSort(long[] msb, long[] lsb, int from, int to, int parallelism)
+        {
+            this.msb = msb;
+            this.lsb = lsb;
+            this.from = from;
+            this.to = to;
+            this.chunks = parallelism * 4;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int length = to - from;
+            int chunkSize = (length + chunks - 1) / chunks;
+            int[][] histograms = new int[chunks][];
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+            for (int c = 0; c < chunks; c++)
+            {
+                int chunk = c;
+                int lo = Math.min(to, from + c * chunkSize);
+                int hi = Math.min(to, lo + chunkSize);
+                tasks.add(ForkJoinTask.adapt(() ->
+                {
+                    int[] histogram = new int[RADIX];
+                    for (int i = lo; i < hi; i++)
+                    {
+                        histogram[digit(msb[i], lsb[i], 0)]++;
+                    }
+                    histograms[chunk] = histogram;
+                }));
+            }
+            invokeAll(tasks);
+
+            // bucketStart[r] is where bucket r begins, offsets[c][r] where chunk c writes its first key of bucket r
+            int[] bucketStart = new int[RADIX + 1];
+            int[][] offsets = new int[chunks][RADIX];
+            int position = 0;
+            for (int r = 0; r < RADIX; r++)
+            {
+                bucketStart[r] = position;
+                for (int c = 0; c < chunks; c++)
+                {
+                    offsets[c][r] = position;
+                    position += histograms[c][r];
+                }
+            }
+            bucketStart[RADIX] = position;
+
+            long[] auxMsb = new long[length];
+            long[] auxLsb = new long[length];
+
+            tasks.clear();
+            for (int c = 0; c < chunks; c++)
+            {
+                int[] next = offsets[c];
+                int lo = Math.min(to, from + c * chunkSize);
+                int hi = Math.min(to, lo + chunkSize);
+                tasks.add(ForkJoinTask.adapt(() ->
+                {
+                    for (int i = lo; i < hi; i++)
+                    {
+                        int slot = next[digit(msb[i], lsb[i], 0)]++;
+                        auxMsb[slot] = msb[i];
+                        auxLsb[slot] = lsb[i];
+                    }
+                }));
+            }
+            invokeAll(tasks);
+
+            tasks.clear();
+            for (int r = 0; r < RADIX; r++)
+            {
+                int lo = bucketStart[r];
+                int hi = bucketStart[r + 1];
+                if (lo == hi)
+                {
+                    continue;
+                }
+                tasks.add(ForkJoinTask.adapt(() ->
+                {
+                    System.arraycopy(auxMsb, lo, msb, from + lo, hi - lo);
+                    System.arraycopy(auxLsb, lo, lsb, from + lo, hi - lo);
+                    if (hi - lo > 1)
+                    {
+                        // the scratch slice of the bucket is free again, reuse it for the sub sort
+                        sort(msb, lsb, from + lo, from + hi, 1, auxMsb, auxLsb, from);
+                    }
+                }));
+            }
+            invokeAll(tasks);
+        }
+    }
+}
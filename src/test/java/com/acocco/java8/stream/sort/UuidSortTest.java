@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) Energeya LLC.  All rights reserved. http://www.energeya.com
+ */
+package com.acocco.java8.stream.sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * UuidArray keeps the UUIDs as pairs of longs and sorts them with a radix sort in the same order as the String sort
+ * of StreamTest.testDifferencesBetweenSequentialAndParallelalStream.
+ *
+ * @author acocco
+ * @version $Id$
+ */
+public class UuidSortTest
+{
+    @Test
+    public void testSort_SameOrderAsStringSort()
+    {
+        List<String> values = randomUuids(10000, 1L);
+
+        UuidArray uuids = UuidArray.fromStrings(values);
+        uuids.sort();
+
+        List<String> expected = values.stream().sorted().collect(Collectors.toList());
+        List<String> actual = uuids.stream().map(UUID::toString).collect(Collectors.toList());
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testParallelSort_SameOrderAsStringSort()
+    {
+        List<String> values = randomUuids(200000, 2L);
+
+        // duplicates and a shared prefix exercise the deeper digits
+        values.add(values.get(0));
+        values.add(values.get(0));
+        for (int i = 0; i < 100; i++)
+        {
+            values.add(new UUID(0x1234567800000000L, i).toString());
+        }
+
+        UuidArray uuids = UuidArray.fromStrings(values);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            uuids.parallelSort(pool);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        List<String> expected = values.parallelStream().sorted().collect(Collectors.toList());
+        List<String> actual = uuids.stream().map(UUID::toString).collect(Collectors.toList());
+        Assert.assertEquals(actual, expected);
+    }
+
+    /**
+     * UUID.compareTo compares signed longs: a UUID starting with 'f' is smaller than one starting with '0'.
+     */
+    @Test
+    public void testSort_UnsignedOrder()
+    {
+        UuidArray uuids = new UuidArray();
+        uuids.add(UUID.fromString("ffffffff-0000-0000-0000-000000000000"));
+        uuids.add(UUID.fromString("00000000-0000-0000-0000-000000000000"));
+        uuids.sort();
+
+        Assert.assertTrue(uuids.get(1).compareTo(uuids.get(0)) < 0);
+        Assert.assertEquals(uuids.get(0).toString(), "00000000-0000-0000-0000-000000000000");
+    }
+
+    private List<String> randomUuids(int size, long seed)
+    {
+        Random random = new Random(seed);
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            values.add(new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+        return values;
+    }
+}